@@ -103,6 +103,32 @@ dependencies {
     }
 }
 
+// The name index of built-in models is compiled to Java code at build time: the codegen source set evaluates the
+// built-in models registry (main classes) and generates the modelsMatcher source set, packaged with main classes,
+// and a test which verifies the generated matcher against the interpreted one. The codegen source set also writes
+// the built-in models registry to a binary resource of the modelsMatcher source set, read at startup.
+val generatedModelsMatcherDir = layout.buildDirectory.dir("generated/sources/modelsMatcher/java")
+val generatedModelsMatcherTestDir = layout.buildDirectory.dir("generated/sources/modelsMatcherTest/java")
+val generatedModelsRegistryDir = layout.buildDirectory.dir("generated/resources/modelsRegistry")
+
+sourceSets {
+    val main by getting
+    val codegen by creating {
+        compileClasspath += main.output + main.compileClasspath
+        runtimeClasspath += main.output + main.compileClasspath + main.runtimeClasspath
+    }
+    val modelsMatcher by creating {
+        java.srcDir(generatedModelsMatcherDir)
+        resources.srcDir(generatedModelsRegistryDir)
+        compileClasspath += main.output + main.compileClasspath
+    }
+    test {
+        java.srcDir(generatedModelsMatcherTestDir)
+        compileClasspath += modelsMatcher.output
+        runtimeClasspath += modelsMatcher.output
+    }
+}
+
 intellijPlatform {
     pluginConfiguration {
         name = "Extra Icons OSS"
@@ -148,6 +174,38 @@ tasks {
             }
         }
     }
+    val generateModelsMatcher by registering(JavaExec::class) {
+        description = "Generates the Java code of the built-in models name index, and its test."
+        group = "build"
+        classpath = sourceSets["codegen"].runtimeClasspath
+        mainClass = "lermitage.intellij.extra.icons.ModelMatcherGenerator"
+        jvmArgs("-Djava.awt.headless=true")
+        args(generatedModelsMatcherDir.get().asFile, generatedModelsMatcherTestDir.get().asFile)
+        inputs.files(sourceSets["main"].output)
+        outputs.dirs(generatedModelsMatcherDir, generatedModelsMatcherTestDir)
+    }
+    val generateModelsRegistry by registering(JavaExec::class) {
+        description = "Generates the binary built-in models registry."
+        group = "build"
+        classpath = sourceSets["codegen"].runtimeClasspath
+        mainClass = "lermitage.intellij.extra.icons.ModelRegistryGenerator"
+        jvmArgs("-Djava.awt.headless=true")
+        args(generatedModelsRegistryDir.get().asFile)
+        inputs.files(sourceSets["main"].output)
+        outputs.dir(generatedModelsRegistryDir)
+    }
+    named("compileModelsMatcherJava") {
+        dependsOn(generateModelsMatcher)
+    }
+    named("processModelsMatcherResources") {
+        dependsOn(generateModelsRegistry)
+    }
+    compileTestJava {
+        dependsOn(generateModelsMatcher)
+    }
+    jar {
+        from(sourceSets["modelsMatcher"].output)
+    }
     withType<JavaCompile> {
         sourceCompatibility = pluginJavaVersion
         targetCompatibility = pluginJavaVersion
@@ -0,0 +1,256 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Generate the {@link CompiledModelMatcher} of the built-in models, and the test which verifies it against the
+ * interpreted {@link ModelMatcher}. Run by the {@code generateModelsMatcher} Gradle task.
+ * <p>
+ * Arguments: the output folder of the generated matcher, and the output folder of the generated test.
+ */
+public final class ModelMatcherGenerator {
+
+    private static final String PACKAGE_NAME = "lermitage.intellij.extra.icons";
+    private static final String MATCHER_SIMPLE_NAME = "GeneratedBuiltInModelsMatcher";
+    private static final String TEST_SIMPLE_NAME = "GeneratedBuiltInModelsMatcherTest";
+
+    /**
+     * Number of methods the {@code eq} switch is split into, to stay far from the JVM method size limit.
+     */
+    private static final int EQ_BUCKETS = 32;
+
+    private final Map<String, BitSet> eqIndex = new TreeMap<>();
+    private final Map<Character, Map<String, BitSet>> prefixIndex = new TreeMap<>();
+    private final Map<Character, Map<String, BitSet>> suffixIndex = new TreeMap<>();
+    private final BitSet alwaysCandidates = new BitSet();
+
+    private ModelMatcherGenerator(@NotNull List<Model> models) {
+        for (Model model : models) {
+            int ordinal = model.getOrdinal();
+            for (ModelCondition condition : model.getConditions()) {
+                // same indexing as the ModelMatcher constructor
+                if (!condition.isEnabled() || ModelMatcher.isResidual(condition)) {
+                    continue;
+                }
+                if (condition.hasEq()) {
+                    for (String name : condition.getNames()) {
+                        if (condition.hasEnd()) {
+                            for (String ext : condition.getExtensions()) {
+                                this.eqIndex.computeIfAbsent(name + ext, k -> new BitSet()).set(ordinal);
+                            }
+                        } else if (condition.hasMayEnd()) {
+                            this.eqIndex.computeIfAbsent(name, k -> new BitSet()).set(ordinal);
+                            for (String ext : condition.getExtensions()) {
+                                this.eqIndex.computeIfAbsent(name + ext, k -> new BitSet()).set(ordinal);
+                            }
+                        } else {
+                            this.eqIndex.computeIfAbsent(name, k -> new BitSet()).set(ordinal);
+                        }
+                    }
+                }
+                if (condition.hasStart()) {
+                    for (String name : condition.getNames()) {
+                        addAffix(this.prefixIndex, name, name.isEmpty() ? 0 : name.charAt(0), ordinal);
+                    }
+                }
+                if (condition.hasEnd() && !condition.hasEq() && !condition.hasStart()) {
+                    for (String ext : condition.getExtensions()) {
+                        addAffix(this.suffixIndex, ext, ext.isEmpty() ? 0 : ext.charAt(ext.length() - 1), ordinal);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addAffix(Map<Character, Map<String, BitSet>> index, String affix, char firstChar, int ordinal) {
+        if (affix.isEmpty()) {
+            this.alwaysCandidates.set(ordinal);
+        } else {
+            index.computeIfAbsent(firstChar, c -> new TreeMap<>()).computeIfAbsent(affix, k -> new BitSet()).set(ordinal);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: ModelMatcherGenerator <matcher output folder> <test output folder>");
+        }
+        List<Model> models = ExtraIconProvider.allModels();
+        long fingerprint = CompiledModelMatcher.fingerprint(models);
+        ModelMatcherGenerator generator = new ModelMatcherGenerator(models);
+        write(Path.of(args[0]), MATCHER_SIMPLE_NAME, generator.generateMatcher(fingerprint));
+        write(Path.of(args[1]), TEST_SIMPLE_NAME, generateTest(fingerprint));
+    }
+
+    private static void write(Path outputFolder, String simpleName, String source) throws IOException {
+        Path file = outputFolder.resolve(PACKAGE_NAME.replace('.', '/')).resolve(simpleName + ".java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source, StandardCharsets.UTF_8);
+    }
+
+    private String generateMatcher(long fingerprint) {
+        StringBuilder src = new StringBuilder();
+        src.append("// SPDX-License-Identifier: MIT\n")
+            .append("// Generated by ModelMatcherGenerator from ExtraIconProvider.allModels(), do not edit.\n\n")
+            .append("package ").append(PACKAGE_NAME).append(";\n\n")
+            .append("import org.jetbrains.annotations.NotNull;\n\n")
+            .append("import java.util.BitSet;\n\n")
+            .append("@SuppressWarnings({\"DuplicateBranchesInSwitch\", \"SpellCheckingInspection\"})\n")
+            .append("public final class ").append(MATCHER_SIMPLE_NAME).append(" implements CompiledModelMatcher {\n\n")
+            .append("    @Override\n")
+            .append("    public long fingerprint() {\n")
+            .append("        return ").append(fingerprint).append("L;\n")
+            .append("    }\n\n")
+            .append("    @Override\n")
+            .append("    public void collectCandidates(@NotNull NormalizedPath path, @NotNull BitSet ordinals) {\n");
+        appendSets(src, "        ", this.alwaysCandidates);
+        // the name is hashed and compared in place, without extracting it
+        src.append("        int hash = path.nameHashCode();\n")
+            .append("        switch ((hash ^ (hash >>> 16)) & ").append(EQ_BUCKETS - 1).append(") {\n");
+        for (int bucket = 0; bucket < EQ_BUCKETS; bucket++) {
+            src.append("            case ").append(bucket).append(" -> eq").append(bucket).append("(path, hash, ordinals);\n");
+        }
+        src.append("            default -> {\n")
+            .append("            }\n")
+            .append("        }\n")
+            .append("        if (path.nameLength() == 0) {\n")
+            .append("            return;\n")
+            .append("        }\n")
+            .append("        String source = path.getNameSource();\n");
+        appendAffixDispatch(src, "source.charAt(path.getNameStart())", "prefix", this.prefixIndex);
+        appendAffixDispatch(src, "source.charAt(path.getNameEnd() - 1)", "suffix", this.suffixIndex);
+        src.append("    }\n");
+
+        Map<Integer, Map<Integer, Map<String, BitSet>>> eqIndexByBucketAndHash = new TreeMap<>();
+        for (Map.Entry<String, BitSet> entry : this.eqIndex.entrySet()) {
+            int hash = entry.getKey().hashCode();
+            eqIndexByBucketAndHash.computeIfAbsent((hash ^ (hash >>> 16)) & (EQ_BUCKETS - 1), b -> new TreeMap<>())
+                .computeIfAbsent(hash, h -> new TreeMap<>())
+                .put(entry.getKey(), entry.getValue());
+        }
+        for (int bucket = 0; bucket < EQ_BUCKETS; bucket++) {
+            src.append("\n    private static void eq").append(bucket).append("(NormalizedPath path, int hash, BitSet ordinals) {\n")
+                .append("        switch (hash) {\n");
+            for (Map.Entry<Integer, Map<String, BitSet>> hashEntry : eqIndexByBucketAndHash.getOrDefault(bucket, Map.of()).entrySet()) {
+                src.append("            case ").append(hashEntry.getKey()).append(" -> {\n");
+                // names sharing a hash code are told apart by comparing the name region
+                for (Map.Entry<String, BitSet> entry : hashEntry.getValue().entrySet()) {
+                    src.append("                if (path.nameEquals(").append(stringLiteral(entry.getKey())).append(")) {\n");
+                    appendSets(src, "                    ", entry.getValue());
+                    src.append("                }\n");
+                }
+                src.append("            }\n");
+            }
+            src.append("            default -> {\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("    }\n");
+        }
+        appendAffixMethods(src, "prefix", "nameStartsWith", this.prefixIndex);
+        appendAffixMethods(src, "suffix", "nameEndsWith", this.suffixIndex);
+        src.append("}\n");
+        return src.toString();
+    }
+
+    private static void appendAffixDispatch(StringBuilder src, String charExpression, String methodPrefix,
+                                            Map<Character, Map<String, BitSet>> index) {
+        src.append("        switch (").append(charExpression).append(") {\n");
+        int methodIdx = 0;
+        for (Character c : index.keySet()) {
+            src.append("            case ").append(charLiteral(c)).append(" -> ")
+                .append(methodPrefix).append(methodIdx++).append("(path, ordinals);\n");
+        }
+        src.append("            default -> {\n")
+            .append("            }\n")
+            .append("        }\n");
+    }
+
+    private static void appendAffixMethods(StringBuilder src, String methodPrefix, String checkMethod,
+                                           Map<Character, Map<String, BitSet>> index) {
+        int methodIdx = 0;
+        for (Map<String, BitSet> affixes : index.values()) {
+            src.append("\n    private static void ").append(methodPrefix).append(methodIdx++)
+                .append("(NormalizedPath path, BitSet ordinals) {\n");
+            for (Map.Entry<String, BitSet> entry : affixes.entrySet()) {
+                src.append("        if (path.").append(checkMethod).append("(").append(stringLiteral(entry.getKey())).append(")) {\n");
+                appendSets(src, "            ", entry.getValue());
+                src.append("        }\n");
+            }
+            src.append("    }\n");
+        }
+    }
+
+    private static void appendSets(StringBuilder src, String indent, BitSet ordinals) {
+        for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+            src.append(indent).append("ordinals.set(").append(ordinal).append(");\n");
+        }
+    }
+
+    private static String generateTest(long fingerprint) {
+        return "// SPDX-License-Identifier: MIT\n" +
+            "// Generated by ModelMatcherGenerator from ExtraIconProvider.allModels(), do not edit.\n\n" +
+            "package " + PACKAGE_NAME + ";\n\n" +
+            "import org.junit.Test;\n\n" +
+            "import java.util.List;\n\n" +
+            "import static org.junit.Assert.assertEquals;\n\n" +
+            "public class " + TEST_SIMPLE_NAME + " {\n\n" +
+            "    @Test\n" +
+            "    public void generated_matcher_should_be_up_to_date() {\n" +
+            "        assertEquals(" + fingerprint + "L, CompiledModelMatcher.fingerprint(ExtraIconProvider.allModels()));\n" +
+            "        assertEquals(" + fingerprint + "L, new " + MATCHER_SIMPLE_NAME + "().fingerprint());\n" +
+            "    }\n\n" +
+            "    @Test\n" +
+            "    public void generated_matcher_should_find_the_same_candidates_as_the_interpreted_one() {\n" +
+            "        for (ModelType modelType : List.of(ModelType.FILE, ModelType.DIR)) {\n" +
+            "            List<Model> models = ExtraIconProvider.allModels().stream()\n" +
+            "                .filter(model -> model.getModelType() == modelType)\n" +
+            "                .toList();\n" +
+            "            ModelMatcher interpreted = new ModelMatcher(models, null);\n" +
+            "            ModelMatcher compiled = new ModelMatcher(models, new " + MATCHER_SIMPLE_NAME + "());\n" +
+            "            for (String fileName : ModelMatcherTest.goldenFileNames(models)) {\n" +
+            "                NormalizedPath path = NormalizedPath.ofFullPath(\"/home/user/project/\" + fileName);\n" +
+            "                assertEquals(modelType + \" \" + fileName, interpreted.findCandidates(path), compiled.findCandidates(path));\n" +
+            "            }\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+    }
+
+    private static String stringLiteral(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            literal.append(escape(value.charAt(i), '"'));
+        }
+        return literal.append('"').toString();
+    }
+
+    private static String charLiteral(char c) {
+        return "'" + escape(c, '\'') + "'";
+    }
+
+    private static String escape(char c, char quote) {
+        if (c == quote || c == '\\') {
+            return "\\" + c;
+        }
+        if (c == '\n') {
+            return "\\n";
+        }
+        if (c == '\r') {
+            return "\\r";
+        }
+        if (c < 0x20 || c > 0x7e) {
+            return String.format("\\u%04x", (int) c);
+        }
+        return String.valueOf(c);
+    }
+}
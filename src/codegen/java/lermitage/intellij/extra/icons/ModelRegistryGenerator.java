@@ -0,0 +1,25 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Write the binary built-in models registry read by {@link ModelRegistry} at startup, from the built-in models
+ * declarations. Run by the {@code generateModelsRegistry} Gradle task.
+ * <p>
+ * Arguments: the output resources folder.
+ */
+public final class ModelRegistryGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ModelRegistryGenerator <resources output folder>");
+        }
+        Path file = Path.of(args[0], ModelRegistryCodec.RESOURCE_PATH.substring(1));
+        Files.createDirectories(file.getParent());
+        Files.write(file, ModelRegistryCodec.write(ExtraIconProvider.createBaseModels()));
+    }
+}
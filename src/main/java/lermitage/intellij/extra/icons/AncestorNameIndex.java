@@ -0,0 +1,75 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The folder names checked by the ancestor conditions of enabled models, each one mapped to a bit. The ancestors of a
+ * folder are summed up as the bits of its tracked ancestor names (itself included): these bits are computed once per
+ * folder from the ones of its parent, and memoized by the {@code AncestorNamesService}, so checking an ancestor
+ * condition doesn't walk the path.
+ */
+public final class AncestorNameIndex {
+
+    public static final BitSet NO_ANCESTORS = new BitSet(0);
+
+    private final Map<String, Integer> bitByName = new HashMap<>();
+
+    /**
+     * @param names tracked folder names, lowercase.
+     */
+    public AncestorNameIndex(@NotNull Collection<String> names) {
+        for (String name : names) {
+            this.bitByName.putIfAbsent(name, this.bitByName.size());
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.bitByName.isEmpty();
+    }
+
+    /**
+     * Get the bit of given folder name, or -1 if no ancestor condition checks it.
+     * @param name folder name, lowercase.
+     */
+    public int bitOf(@NotNull String name) {
+        Integer bit = this.bitByName.get(name);
+        return bit == null ? -1 : bit;
+    }
+
+    /**
+     * Get the ancestor bits of a folder, given the ones of its parent folder. The parent's bits are returned as-is if
+     * the folder's name is not tracked, so most folders share their bits. Bits are never modified once computed.
+     * @param parentBits bits of the parent folder, or {@link #NO_ANCESTORS} for a root folder.
+     * @param name folder name, lowercase.
+     */
+    public @NotNull BitSet childBits(@NotNull BitSet parentBits, @NotNull String name) {
+        int bit = bitOf(name);
+        if (bit < 0 || parentBits.get(bit)) {
+            return parentBits;
+        }
+        BitSet bits = (BitSet) parentBits.clone();
+        bits.set(bit);
+        return bits;
+    }
+
+    /**
+     * Indicates if one of given folder names is set in given ancestor bits.
+     */
+    public boolean containsAny(@NotNull BitSet ancestorBits, @NotNull Set<String> names) {
+        for (String name : names) {
+            int bit = bitOf(name);
+            if (bit >= 0 && ancestorBits.get(bit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
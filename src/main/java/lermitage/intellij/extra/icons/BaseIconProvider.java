@@ -10,6 +10,7 @@ import com.intellij.ide.projectView.ProjectViewNodeDecorator;
 import com.intellij.openapi.diagnostic.ControlFlowException;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElement;
@@ -21,6 +22,7 @@ import lermitage.intellij.extra.icons.cfg.services.SettingsIDEService;
 import lermitage.intellij.extra.icons.cfg.services.SettingsProjectService;
 import lermitage.intellij.extra.icons.cfg.services.SettingsService;
 import lermitage.intellij.extra.icons.services.FacetsFinderService;
+import lermitage.intellij.extra.icons.services.ModelCacheService;
 import lermitage.intellij.extra.icons.utils.I18nUtils;
 import lermitage.intellij.extra.icons.utils.IconUtils;
 import lermitage.intellij.extra.icons.utils.ProjectUtils;
@@ -29,14 +31,15 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.io.File;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.MissingResourceException;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 /**
@@ -51,11 +54,18 @@ public abstract class BaseIconProvider
 
     private static final @NonNls Logger LOGGER = Logger.getInstance(BaseIconProvider.class);
 
-    private final List<Model> models;
+    /**
+     * Shared by the icon provider instances (one per extension point) as they all manage the same built-in models.
+     */
+    private static final Key<ModelSnapshot> MODEL_SNAPSHOT_KEY = Key.create("ExtraIcons.ModelSnapshot"); //NON-NLS
+
+    private final List<Model> builtInModels;
 
     private long nbGetIcon = 0;
     private long checks_done = 0;
     private long checks_saved = 0;
+    private long lookups_done = 0;
+    private long lookups_rejected = 0;
     private final UITypeIconsPreference uiTypeIconsPreference;
 
     protected BaseIconProvider() {
@@ -64,8 +74,7 @@ public abstract class BaseIconProvider
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Detected UI Type: " + uiType);
         }
-        this.models = getAllModels().stream()
-            .filter(model -> model.getModelType() == ModelType.FILE || model.getModelType() == ModelType.DIR)
+        this.builtInModels = getAllModels().stream()
             .filter(model -> model.getUiType() == null || model.getUiType() == uiType)
             .toList();
         this.uiTypeIconsPreference = SettingsIDEService.getInstance().getUiTypeIconsPreference();
@@ -81,18 +90,15 @@ public abstract class BaseIconProvider
     protected abstract List<Model> getAllModels();
 
     private static Model extractAltModel(Model model, int altIconIdx) {
-        String altDescription;
         String altId;
+        Supplier<String> altDescription;
         if (altIconIdx < 1) {
-            if (model.getAltIcons().length == 1) {
-                altDescription = MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.desc.alternative"), model.getDescription());
-            } else {
-                altDescription = MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.desc.alternative.first"), model.getDescription());
-            }
+            String descriptionKey = model.getAltIcons().length == 1 ? "model.desc.alternative" : "model.desc.alternative.first";
+            altDescription = () -> MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString(descriptionKey), model.getDescription());
             altId = model.getId() + "_alt"; //NON-NLS
         } else {
-            altDescription = MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.desc.alternative.other"), model.getDescription(),
-                    altIconIdx + 1);
+            altDescription = () -> MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.desc.alternative.other"),
+                model.getDescription(), altIconIdx + 1);
             altId = model.getId() + "_alt" + (altIconIdx + 1); //NON-NLS
         }
         return Model.createAltModel(model, altId, model.getIdeIcon(), model.getAltIcons()[altIconIdx], altDescription);
@@ -110,10 +116,6 @@ public abstract class BaseIconProvider
         return models.stream();
     }
 
-    private String parent(@NotNull File file) {
-        return file.getParent() == null ? null : file.getParentFile().getName().toLowerCase();
-    }
-
     private void logError(@NotNull Throwable e) {
         if (e instanceof ControlFlowException) {
             // Control-flow exceptions should never be logged.
@@ -158,13 +160,11 @@ public abstract class BaseIconProvider
                 //  (error: Light files should have PSI only in one project)
                 return null;
             }
-            return getIcon(new File(file.getPath()),
-                file.isDirectory() ? FileType.FOLDER : FileType.FILE,
-                project);
+            return getIcon(file, project);
         } catch (Throwable e) {
             logError(e);
         } finally {
-            logCacheHitStats();
+            logCacheHitStats(project);
         }
         return null;
     }
@@ -186,18 +186,15 @@ public abstract class BaseIconProvider
             if (currentPsiFileItem == null) {
                 return null;
             }
-            String fullPath = getFullPath(currentPsiFileItem);
-            if (fullPath == null) {
+            VirtualFile virtualFile = currentPsiFileItem.getVirtualFile();
+            if (virtualFile == null) {
                 return null;
             }
-            File file = new File(fullPath);
-            return getIcon(file,
-                psiElement instanceof PsiDirectory ? FileType.FOLDER : FileType.FILE,
-                psiElement.getProject());
+            return getIcon(virtualFile, psiElement.getProject());
         } catch (Throwable e) {
             logError(e);
         } finally {
-            logCacheHitStats();
+            logCacheHitStats(null);
         }
         return null;
     }
@@ -210,10 +207,7 @@ public abstract class BaseIconProvider
                 LOGGER.debug("ProjectViewNodeDecorator->" + (virtualFile == null ? null : virtualFile.getPath()));
             }
             if (virtualFile != null) {
-                File file = new File(virtualFile.getPath());
-                FileType fileType = file.isDirectory() ? FileType.FOLDER : FileType.FILE;
-                Project project = node.getProject();
-                Icon icon = getIcon(file, fileType, project);
+                Icon icon = getIcon(virtualFile, node.getProject());
                 if (icon != null) {
                     node.setIcon(icon);
                     if (data != null) {
@@ -226,56 +220,94 @@ public abstract class BaseIconProvider
         }
     }
 
-    private @Nullable Icon getIcon(@NotNull File file, @NotNull FileType fileType, @Nullable Project project) {
+    private @Nullable Icon getIcon(@NotNull VirtualFile virtualFile, @Nullable Project project) {
         this.nbGetIcon++;
         try {
             if (!ProjectUtils.isProjectAlive(project)) {
                 return null;
             }
-            ModelType currentModelType;
-            if (fileType == FileType.FOLDER) {
-                if (isPatternIgnored(project, file)) {
-                    return null;
-                }
-                currentModelType = ModelType.DIR;
-            } else {
-                if (isPatternIgnored(project, file)) {
-                    return null;
-                }
-                currentModelType = ModelType.FILE;
-            }
-            String parentName = parent(file);
-            String normalizedFileName = getSanitizeFilePath(file.getName());
-            String normalizedFileAbsPath = getSanitizeFilePath(file.getAbsolutePath());
             assert project != null;
-            Set<String> facets = FacetsFinderService.getInstance(project).facets;
-            Double additionalUIScale = SettingsIDEService.getInstance().getAdditionalUIScale2();
-            SettingsService settingsService = getBestSettingsService(project);
-            Object parentModelIdWhoseCheckFailed = null;
-            for (final Model model : getModelsIncludingUserModels(project)) {
-                if (model.getModelType() == currentModelType && model.isEnabled() && !settingsService.getDisabledModelIds().contains(model.getId())) {
-                    if (model.getParentId() != null && parentModelIdWhoseCheckFailed == model.getParentId()) {
-                        // check already returned false for this model (parent or alt), don't need to check again
-                        this.checks_saved++;
-                        continue;
-                    }
-                    this.checks_done++;
-                    if (model.check(parentName, normalizedFileName, normalizedFileAbsPath, facets, project)) {
-                        return IconUtils.getIcon(model, additionalUIScale, this.uiTypeIconsPreference);
-                    } else {
-                        parentModelIdWhoseCheckFailed = model.getParentId() == null ? model.getId() : model.getParentId();
-                    }
-                }
+            ModelCacheService.Entry cachedEntry = ModelCacheService.getInstance(project).get(virtualFile);
+            Model model = cachedEntry != null ? cachedEntry.getModel() : resolveModel(virtualFile, project);
+            if (model != null) {
+                return IconUtils.getIcon(model, SettingsIDEService.getInstance().getAdditionalUIScale2(), this.uiTypeIconsPreference);
             }
         } catch (Throwable e) {
             logError(e);
         } finally {
-            logCacheHitStats();
+            logCacheHitStats(project);
         }
         return null;
     }
 
-    private void logCacheHitStats() {
+    /**
+     * Resolve the model of given file or folder with current settings and Icon Enablers, ignoring the cached one,
+     * then cache it. Returns null if no model matched. If a content condition was checked before the file's content
+     * was read, the model is cached as outdated, to be resolved again once the content is known. If a content condition
+     * was checked at all, the model is cached as content dependent, to be resolved again once the file is modified.
+     */
+    public @Nullable Model resolveModel(@NotNull VirtualFile virtualFile, @NotNull Project project) {
+        ModelCacheService modelCacheService = ModelCacheService.getInstance(project);
+        long generation = modelCacheService.currentGeneration();
+        NormalizedPath path = NormalizedPath.of(virtualFile);
+        Model model = findModel(path, virtualFile.isDirectory() ? ModelType.DIR : ModelType.FILE, project);
+        modelCacheService.put(virtualFile, path.isContentPending() ? ModelCacheService.OUTDATED_GENERATION : generation, model,
+            path.isContentChecked());
+        return model;
+    }
+
+    /**
+     * Find the first model matching given file or folder, or null if the file or folder is ignored or if no model matched.
+     * Errors are not caught: an error must not be cached as a "no match" result.
+     */
+    private @Nullable Model findModel(@NotNull NormalizedPath path, @NotNull ModelType currentModelType, @NotNull Project project) {
+        if (isPatternIgnored(project, path)) {
+            return null;
+        }
+        Set<String> facets = FacetsFinderService.getInstance(project).facets;
+        ModelSnapshot modelSnapshot = getModelSnapshot(project);
+        path.attachRegexAutomaton(modelSnapshot.getRegexAutomaton());
+        path.attachAncestorNameIndex(modelSnapshot.getAncestorNameIndex());
+        this.lookups_done++;
+        ModelRejectFilter rejectFilter = modelSnapshot.getRejectFilter(currentModelType);
+        if (!rejectFilter.mightMatch(path)) {
+            // no name-based condition can match, only models with regex or enabler-only conditions may match
+            this.lookups_rejected++;
+            for (final Model model : rejectFilter.getConservativeModels()) {
+                this.checks_done++;
+                if (model.check(path, facets, project)) {
+                    return model;
+                }
+            }
+            return null;
+        }
+        for (final Model model : modelSnapshot.getUserModels(currentModelType)) {
+            this.checks_done++;
+            if (model.check(path, facets, project)) {
+                return model;
+            }
+        }
+        ModelMatcher matcher = modelSnapshot.getBuiltInModelsMatcher(currentModelType);
+        BitSet candidates = matcher.findCandidates(path);
+        Object parentModelIdWhoseCheckFailed = null;
+        for (int idx = candidates.nextSetBit(0); idx >= 0; idx = candidates.nextSetBit(idx + 1)) {
+            Model model = matcher.getModel(idx);
+            if (model.getParentId() != null && parentModelIdWhoseCheckFailed == model.getParentId()) {
+                // check already returned false for this model (parent or alt), don't need to check again
+                this.checks_saved++;
+                continue;
+            }
+            this.checks_done++;
+            if (model.check(path, facets, project)) {
+                return model;
+            } else {
+                parentModelIdWhoseCheckFailed = model.getParentId() == null ? model.getId() : model.getParentId();
+            }
+        }
+        return null;
+    }
+
+    private void logCacheHitStats(@Nullable Project project) {
         if (LOGGER.isDebugEnabled() && this.nbGetIcon > 0 && this.checks_done > 0 && (
                 this.nbGetIcon < 5 || this.nbGetIcon < 100 ? this.nbGetIcon % 20 == 0 :
                 this.nbGetIcon % 100 == 0)) {
@@ -283,55 +315,37 @@ public abstract class BaseIconProvider
             LOGGER.debug("[" + Thread.currentThread().getId() + "] " +
                          "getIcon: " + this.nbGetIcon + ", " +
                          "checks_done: " + this.checks_done + ", " +
-                         "checks_saved: " + this.checks_saved + " (" + (this.checks_saved * 100 / this.checks_done) + "%)");
-        }
-    }
-
-    private @Nullable String getFullPath(@NotNull PsiFileSystemItem file) {
-        if (file.getVirtualFile() != null) {
-            return file.getVirtualFile().getPath().toLowerCase();
+                         "checks_saved: " + this.checks_saved + " (" + (this.checks_saved * 100 / this.checks_done) + "%), " +
+                         "lookups_rejected: " + this.lookups_rejected + "/" + this.lookups_done +
+                         " (" + (this.lookups_done == 0 ? 0 : this.lookups_rejected * 100 / this.lookups_done) + "%)" +
+                         (ProjectUtils.isProjectAlive(project) ? ", " + ModelCacheService.getInstance(project).statsDescription() : ""));
         }
-        return null;
-    }
-
-    private String getSanitizeFilePath(String path) {
-        return path.toLowerCase().replaceAll("\\\\", "/");
     }
 
     /**
-     * Depending on whether the checkbox in the settings is checked, this method appends
-     * the user added models to the model list.
+     * Get the effective models of given project: user models (IDE and/or project ones, depending on whether the
+     * checkbox in the settings is checked) then built-in models, ordered by priority, without disabled models.
+     * The snapshot is stored in project's user data and rebuilt only when models settings changed.
      */
-    private List<Model> getModelsIncludingUserModels(@Nullable Project project) {
-        Stream<Model> customModelsStream = null;
-
-        if (project != null) {
-            SettingsProjectService settingsProjectService = SettingsProjectService.getInstance(project);
-            if (settingsProjectService.isOverrideIDESettings()) {
-                if (settingsProjectService.isAddToIDEUserIcons()) {
-                    customModelsStream = Stream.concat(SettingsIDEService.getInstance().getCustomModels().stream(),
-                        settingsProjectService.getCustomModels().stream());
-                } else {
-                    customModelsStream = settingsProjectService.getCustomModels().stream();
-                }
-            }
-        }
-        if (customModelsStream == null) {
-            customModelsStream = SettingsIDEService.getInstance().getCustomModels().stream();
+    private @NotNull ModelSnapshot getModelSnapshot(@NotNull Project project) {
+        ModelSnapshot modelSnapshot = project.getUserData(MODEL_SNAPSHOT_KEY);
+        if (modelSnapshot == null || !modelSnapshot.isUpToDate()) {
+            modelSnapshot = ModelSnapshot.create(project, this.builtInModels);
+            project.putUserData(MODEL_SNAPSHOT_KEY, modelSnapshot);
         }
-
-        return Stream.concat(customModelsStream, this.models.stream()).collect(Collectors.toList());//
+        return modelSnapshot;
     }
 
     /**
      * Indicates if given file/folder should be ignored.
      * @param project project.
-     * @param file current file or folder.
+     * @param path current file or folder.
      */
-    private boolean isPatternIgnored(Project project, File file) {
+    private boolean isPatternIgnored(Project project, NormalizedPath path) {
         try {
             SettingsService service = getBestSettingsService(project);
-            if (service.getIgnoredPatternObj() == null || service.getIgnoredPattern() == null || service.getIgnoredPattern().isEmpty()) {
+            Pattern ignoredPattern = service.getIgnoredPatternObj();
+            if (ignoredPattern == null || service.getIgnoredPattern() == null || service.getIgnoredPattern().isEmpty()) {
                 return false;
             }
             String projectBasePath;
@@ -343,14 +357,14 @@ public abstract class BaseIconProvider
             } else {
                 return false;
             }
-            String normalizedFileAbsPath = file.getAbsolutePath().toLowerCase().replaceAll("\\\\", "/");
-            String normalizedProjectPath = projectBasePath.toLowerCase().replaceAll("\\\\", "/");
-            if (!normalizedFileAbsPath.startsWith(normalizedProjectPath) || normalizedFileAbsPath.length() <= normalizedProjectPath.length()) {
+            String fullPath = path.getFullPath();
+            int relativePathStart = path.relativePathStart(projectBasePath);
+            if (fullPath == null || relativePathStart < 0) {
                 return false;
             }
-            return service.getIgnoredPatternObj().matcher(normalizedFileAbsPath.substring(normalizedProjectPath.length() + 1)).matches();
+            return ignoredPattern.matcher(fullPath).region(relativePathStart, fullPath.length()).matches();
         } catch (Exception e) {
-            LOGGER.warn(file.getAbsolutePath() + ", " + project.getBasePath());
+            LOGGER.warn(path + ", " + project.getBasePath());
             logError(e);
             return false;
         }
@@ -369,8 +383,4 @@ public abstract class BaseIconProvider
         }
         return SettingsIDEService.getInstance();
     }
-
-    private enum FileType {
-        FILE, FOLDER
-    }
 }
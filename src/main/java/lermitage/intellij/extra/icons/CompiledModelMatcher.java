@@ -0,0 +1,85 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Name-based index of the built-in models, compiled to Java code at build time (see the
+ * {@code generateModelsMatcher} Gradle task). It finds the same candidates as the name indexes of
+ * {@link ModelMatcher}, but with {@code switch} statements on names and straight-line prefix and suffix checks.
+ * Models are identified by their {@link Model#getOrdinal() ordinal}.
+ */
+public interface CompiledModelMatcher {
+
+    /**
+     * Fully qualified name of the generated implementation.
+     */
+    String GENERATED_CLASS_NAME = "lermitage.intellij.extra.icons.GeneratedBuiltInModelsMatcher"; //NON-NLS
+
+    /**
+     * The {@link #fingerprint(List) fingerprint} of the built-in models this matcher was generated from.
+     */
+    long fingerprint();
+
+    /**
+     * Set the ordinals of the models which have a non-residual condition (see {@link ModelMatcher}) that may match
+     * the file name of given path.
+     */
+    void collectCandidates(@NotNull NormalizedPath path, @NotNull BitSet ordinals);
+
+    /**
+     * Load the generated matcher, or return null if it's missing (e.g. when running from sources without the
+     * generated classes), if it was generated from other built-in models, or if it's disabled by the
+     * {@code extra-icons.compiled.matcher} system property.
+     * @param builtInModels all built-in models, in ordinal order.
+     */
+    static @Nullable CompiledModelMatcher load(@NotNull List<Model> builtInModels) {
+        if (!Boolean.parseBoolean(System.getProperty("extra-icons.compiled.matcher", "true"))) {
+            return null;
+        }
+        try {
+            CompiledModelMatcher matcher = (CompiledModelMatcher) Class.forName(GENERATED_CLASS_NAME)
+                .getDeclaredConstructor()
+                .newInstance();
+            return matcher.fingerprint() == fingerprint(builtInModels) ? matcher : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute a 64-bit FNV-1a hash of what the name indexes depend on: models order, IDs and types, and the
+     * name-based parts of their conditions.
+     */
+    static long fingerprint(@NotNull List<Model> models) {
+        long hash = 0xcbf29ce484222325L;
+        for (Model model : models) {
+            hash = fingerprint(hash, model.getId());
+            hash = fingerprint(hash, String.valueOf(model.getModelType()));
+            for (ModelCondition condition : model.getConditions()) {
+                hash = fingerprint(hash, condition.isEnabled() + "," + ModelMatcher.isResidual(condition) + "," +
+                    condition.hasStart() + "," + condition.hasEq() + "," + condition.hasMayEnd() + "," + condition.hasEnd());
+                for (String name : condition.getNames()) {
+                    hash = fingerprint(hash, name);
+                }
+                hash = fingerprint(hash, "|");
+                for (String extension : condition.getExtensions()) {
+                    hash = fingerprint(hash, extension);
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static long fingerprint(long hash, @NotNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xff) * 0x100000001b3L; // separator
+    }
+}
@@ -21,7 +21,27 @@ public class ExtraIconProvider extends BaseIconProvider implements DumbAware {
     private static final String[] CFG = {".xml", ".yml", ".yaml", ".properties", ".json", ".cfg", ".conf", ".ini", ".txt"};
     private static final String[] YML = {".yaml", ".yml"};
 
+    /**
+     * Get the built-in models, from the {@link ModelRegistry}. The list is unmodifiable and its models are shared.
+     */
     public static @NotNull List<Model> allModels() { // TODO move to SequencedCollection once migrated to jdk21?
+        return ModelRegistry.getInstance().getModels();
+    }
+
+    /**
+     * Evaluate the built-in models declarations: base models, then their alt models.
+     */
+    static @NotNull List<Model> createAllModels() {
+        return createBaseModels().stream()
+            .flatMap(ExtraIconProvider::modelList)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Evaluate the built-in models declarations, without their alt models. This is the source of truth of the
+     * built-in models registry, also written to a binary resource at build time.
+     */
+    static @NotNull List<Model> createBaseModels() {
         return Stream.of(
 
                 //<editor-fold desc="IDE icon (lowest priority)">
@@ -1384,7 +1404,6 @@ public class ExtraIconProvider extends BaseIconProvider implements DumbAware {
                     .tags(ModelTag.DOCKER)
                 //</editor-fold>
             )
-            .flatMap(ExtraIconProvider::modelList)
             //.filter(Model::isInFreemium) // TODO prepare a potential freemium mode. Free mode may include a limited set of bundled icons, allow user to define personal icons, and download icon packs
             .collect(Collectors.toList());
     }
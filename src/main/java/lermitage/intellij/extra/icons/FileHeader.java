@@ -0,0 +1,246 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What content conditions know about the first bytes of a file: its magic number, the interpreter of its shebang
+ * line, and the root element of an XML document. It's parsed from a bounded read of the file, and is bound to the
+ * modification stamp of the file it was read from.
+ * <p>
+ * Content conditions are lists of signatures, lowercase: {@code #!python} matches a shebang interpreter (the version
+ * and the {@code env} indirection are ignored), {@code <project} matches an XML root element (the namespace prefix
+ * is ignored), and {@code 0x7f454c46} matches the first bytes of a file.
+ */
+public final class FileHeader {
+
+    public static final String SHEBANG_PREFIX = "#!"; //NON-NLS
+    public static final String XML_ROOT_PREFIX = "<"; //NON-NLS
+    public static final String MAGIC_PREFIX = "0x"; //NON-NLS
+
+    /** Number of leading bytes kept to match magic numbers. */
+    static final int MAGIC_LENGTH = 16;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final long modificationStamp;
+    private final @NotNull String magicHex;
+    private final @Nullable String interpreter;
+    private final @Nullable String xmlRoot;
+
+    private FileHeader(long modificationStamp, @NotNull String magicHex, @Nullable String interpreter, @Nullable String xmlRoot) {
+        this.modificationStamp = modificationStamp;
+        this.magicHex = magicHex;
+        this.interpreter = interpreter;
+        this.xmlRoot = xmlRoot;
+    }
+
+    /**
+     * Parse the first bytes of a file.
+     * @param bytes buffer holding the first bytes of the file.
+     * @param length number of bytes read in the buffer.
+     * @param modificationStamp modification stamp of the file when it was read.
+     */
+    public static @NotNull FileHeader parse(byte[] bytes, int length, long modificationStamp) {
+        StringBuilder magicHex = new StringBuilder(MAGIC_LENGTH * 2);
+        for (int i = 0; i < Math.min(length, MAGIC_LENGTH); i++) {
+            magicHex.append(HEX_DIGITS[(bytes[i] >> 4) & 0xF]).append(HEX_DIGITS[bytes[i] & 0xF]);
+        }
+        return new FileHeader(modificationStamp, magicHex.toString(), parseInterpreter(bytes, length), parseXmlRoot(bytes, length));
+    }
+
+    /**
+     * Header of a file which can't be read: it matches no signature.
+     */
+    public static @NotNull FileHeader unreadable(long modificationStamp) {
+        return new FileHeader(modificationStamp, "", null, null);
+    }
+
+    public long getModificationStamp() {
+        return this.modificationStamp;
+    }
+
+    public @Nullable String getInterpreter() {
+        return this.interpreter;
+    }
+
+    public @Nullable String getXmlRoot() {
+        return this.xmlRoot;
+    }
+
+    /**
+     * Indicates if this header matches given lowercase signature.
+     */
+    public boolean matches(@NotNull String signature) {
+        if (signature.startsWith(SHEBANG_PREFIX)) {
+            return regionEquals(signature, SHEBANG_PREFIX.length(), this.interpreter);
+        }
+        if (signature.startsWith(MAGIC_PREFIX)) {
+            int hexLength = signature.length() - MAGIC_PREFIX.length();
+            return hexLength > 0 && this.magicHex.regionMatches(0, signature, MAGIC_PREFIX.length(), hexLength);
+        }
+        if (signature.startsWith(XML_ROOT_PREFIX)) {
+            return regionEquals(signature, XML_ROOT_PREFIX.length(), this.xmlRoot);
+        }
+        return false;
+    }
+
+    /**
+     * Indicates if given signature is well-formed: a shebang interpreter, an XML root element, or an even number of
+     * hexadecimal digits, up to {@value #MAGIC_LENGTH} bytes.
+     */
+    public static boolean isValidSignature(@NotNull String signature) {
+        if (signature.startsWith(SHEBANG_PREFIX)) {
+            return signature.length() > SHEBANG_PREFIX.length();
+        }
+        if (signature.startsWith(MAGIC_PREFIX)) {
+            int hexLength = signature.length() - MAGIC_PREFIX.length();
+            if (hexLength == 0 || hexLength % 2 != 0 || hexLength > MAGIC_LENGTH * 2) {
+                return false;
+            }
+            for (int i = MAGIC_PREFIX.length(); i < signature.length(); i++) {
+                if (Character.digit(signature.charAt(i), 16) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (signature.startsWith(XML_ROOT_PREFIX)) {
+            return signature.length() > XML_ROOT_PREFIX.length();
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(@NotNull String signature, int offset, @Nullable String value) {
+        return value != null && signature.length() - offset == value.length() && signature.startsWith(value, offset);
+    }
+
+    /**
+     * Get the interpreter of a {@code #!} line, lowercase and without version (e.g. {@code python} for
+     * {@code #!/usr/bin/env -S python3.12 -u}), or null.
+     */
+    private static @Nullable String parseInterpreter(byte[] bytes, int length) {
+        if (length < 2 || bytes[0] != '#' || bytes[1] != '!') {
+            return null;
+        }
+        int lineEnd = 2;
+        while (lineEnd < length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+            lineEnd++;
+        }
+        String[] tokens = new String(bytes, 2, lineEnd - 2, StandardCharsets.ISO_8859_1).trim().split("\\s+");
+        if (tokens.length == 0 || tokens[0].isEmpty()) {
+            return null;
+        }
+        String program = baseName(tokens[0]);
+        if (program.equals("env")) { //NON-NLS
+            program = null;
+            for (int i = 1; i < tokens.length && program == null; i++) {
+                if (!tokens[i].startsWith("-") && !tokens[i].contains("=")) {
+                    program = baseName(tokens[i]);
+                }
+            }
+            if (program == null) {
+                return null;
+            }
+        }
+        int end = program.length();
+        while (end > 0 && (Character.isDigit(program.charAt(end - 1)) || program.charAt(end - 1) == '.')) {
+            end--;
+        }
+        return end == 0 ? null : program.substring(0, end).toLowerCase();
+    }
+
+    private static @NotNull String baseName(@NotNull String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Get the local name of the root element of an XML document, lowercase, or null if the bytes don't start like
+     * an XML document or if the root element is beyond them. The prolog (declaration, processing instructions,
+     * comments and doctype) is skipped.
+     */
+    private static @Nullable String parseXmlRoot(byte[] bytes, int length) {
+        int i = 0;
+        if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            i = 3; // UTF-8 BOM
+        }
+        while (true) {
+            while (i < length && isXmlWhitespace(bytes[i])) {
+                i++;
+            }
+            if (i + 1 >= length || bytes[i] != '<') {
+                return null;
+            }
+            byte next = bytes[i + 1];
+            if (next == '?') {
+                i = indexAfter(bytes, length, i + 2, "?>");
+            } else if (next == '!' && startsWith(bytes, length, i + 2, "--")) {
+                i = indexAfter(bytes, length, i + 4, "-->");
+            } else if (next == '!') {
+                i = skipDeclaration(bytes, length, i + 2);
+            } else {
+                int nameStart = i + 1;
+                int nameEnd = nameStart;
+                while (nameEnd < length && !isXmlWhitespace(bytes[nameEnd]) && bytes[nameEnd] != '/' && bytes[nameEnd] != '>') {
+                    if (bytes[nameEnd] == ':') {
+                        nameStart = nameEnd + 1; // namespace prefix
+                    }
+                    nameEnd++;
+                }
+                if (nameEnd == length || nameEnd == nameStart) {
+                    return null; // truncated or malformed
+                }
+                return new String(bytes, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8).toLowerCase();
+            }
+            if (i < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Skip a {@code <!DOCTYPE ...>} declaration, which may have an internal subset between brackets.
+     */
+    private static int skipDeclaration(byte[] bytes, int length, int from) {
+        int depth = 0;
+        for (int i = from; i < length; i++) {
+            if (bytes[i] == '[') {
+                depth++;
+            } else if (bytes[i] == ']') {
+                depth--;
+            } else if (bytes[i] == '>' && depth <= 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexAfter(byte[] bytes, int length, int from, String terminator) {
+        for (int i = from; i + terminator.length() <= length; i++) {
+            if (startsWith(bytes, length, i, terminator)) {
+                return i + terminator.length();
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, int from, String prefix) {
+        if (from + prefix.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isXmlWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,351 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled glob condition, matched folder by folder against the full path of a file. It's a cheap alternative to the
+ * regexes users write for the usual "file X in folder Y" conditions.
+ * <p>
+ * Syntax, lowercase: {@code *} matches any characters of a file or folder name, {@code ?} matches one character,
+ * {@code **} matches any number of folders, and {@code {a,b}} matches one of the alternatives. A glob which starts
+ * with {@code /} is matched from the root of the file system, otherwise it is matched against the end of the path:
+ * {@code charts/*}{@code /values*.yaml} is the same as {@code **}{@code /charts/*}{@code /values*.yaml}.
+ * <p>
+ * As the last segment of a glob matches the file name, it's indexed like name conditions (see {@link #getIndexKeys()}).
+ */
+public final class GlobMatcher {
+
+    /** A glob which never matches, used in place of an invalid glob. */
+    static final GlobMatcher NONE = new GlobMatcher(new Alternative[0]);
+
+    private static final String ANY_FOLDERS = "**"; //NON-NLS
+    private static final int MAX_ALTERNATIVES = 64;
+
+    enum IndexKind {EQ, PREFIX, SUFFIX}
+
+    /**
+     * A name-based key which every file name matched by a glob satisfies: the file name is equal to, starts with or
+     * ends with the value.
+     */
+    record IndexKey(@NotNull IndexKind kind, @NotNull String value) {
+    }
+
+    /**
+     * One of the globs a glob with {@code {a,b}} alternatives is expanded to. Segments are the folder and file name
+     * patterns, {@link #ANY_FOLDERS} standing for any number of folders. Globs matched against the end of the path
+     * start with {@link #ANY_FOLDERS}.
+     */
+    private record Alternative(@NotNull String[] segments, int fixedTailStart) {
+    }
+
+    private final Alternative[] alternatives;
+
+    private GlobMatcher(Alternative[] alternatives) {
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Compile given glob.
+     * @throws IllegalArgumentException if the glob is empty or if its {@code {a,b}} alternatives are malformed.
+     */
+    public static @NotNull GlobMatcher compile(@NotNull String glob) {
+        String normalizedGlob = glob.trim().replace('\\', '/').toLowerCase();
+        if (normalizedGlob.isEmpty()) {
+            throw new IllegalArgumentException("Empty glob"); //NON-NLS
+        }
+        List<String> expandedGlobs = new ArrayList<>();
+        expand(normalizedGlob, expandedGlobs);
+        Alternative[] alternatives = new Alternative[expandedGlobs.size()];
+        for (int i = 0; i < alternatives.length; i++) {
+            alternatives[i] = compileAlternative(expandedGlobs.get(i));
+        }
+        return new GlobMatcher(alternatives);
+    }
+
+    public static boolean isValid(@NotNull String glob) {
+        try {
+            compile(glob);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Expand the first {@code {a,b}} group of given glob, recursively.
+     */
+    private static void expand(@NotNull String glob, @NotNull List<String> out) {
+        int open = glob.indexOf('{');
+        int close = glob.indexOf('}');
+        if (open < 0 && close < 0) {
+            if (out.size() == MAX_ALTERNATIVES) {
+                throw new IllegalArgumentException("Too many alternatives"); //NON-NLS
+            }
+            out.add(glob);
+            return;
+        }
+        if (open < 0 || close < open || glob.indexOf('{', open + 1) >= 0 && glob.indexOf('{', open + 1) < close) {
+            throw new IllegalArgumentException("Unbalanced or nested braces"); //NON-NLS
+        }
+        String prefix = glob.substring(0, open);
+        String suffix = glob.substring(close + 1);
+        for (String choice : glob.substring(open + 1, close).split(",", -1)) {
+            if (choice.contains("/")) {
+                throw new IllegalArgumentException("Alternatives can't contain folders"); //NON-NLS
+            }
+            expand(prefix + choice + suffix, out);
+        }
+    }
+
+    private static @NotNull Alternative compileAlternative(@NotNull String glob) {
+        List<String> segments = new ArrayList<>();
+        if (!glob.startsWith("/")) {
+            segments.add(ANY_FOLDERS);
+        }
+        for (String segment : glob.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals(ANY_FOLDERS)) {
+                if (segments.isEmpty() || !segments.get(segments.size() - 1).equals(ANY_FOLDERS)) {
+                    segments.add(ANY_FOLDERS);
+                }
+            } else {
+                while (segment.contains("**")) {
+                    segment = segment.replace("**", "*"); // within a name, same as *
+                }
+                segments.add(segment);
+            }
+        }
+        if (segments.isEmpty() || segments.size() == 1 && segments.get(0).equals(ANY_FOLDERS) && !glob.contains(ANY_FOLDERS)) {
+            throw new IllegalArgumentException("Glob matches no file name"); //NON-NLS
+        }
+        // when only the first segment is **, the other segments match the end of the path: no need to backtrack
+        int fixedTailStart = segments.lastIndexOf(ANY_FOLDERS) == 0 ? 1 : -1;
+        return new Alternative(segments.toArray(new String[0]), fixedTailStart);
+    }
+
+    /**
+     * Indicates if the full path of given path matches this glob. Paths without full path never match.
+     */
+    public boolean matches(@NotNull NormalizedPath path) {
+        int[] bounds = path.getSegmentBounds();
+        if (bounds == null) {
+            return false;
+        }
+        String fullPath = path.getFullPath();
+        int nbPathSegments = bounds.length / 2;
+        for (Alternative alternative : this.alternatives) {
+            String[] segments = alternative.segments();
+            if (alternative.fixedTailStart() > 0) {
+                int firstPathSegment = nbPathSegments - (segments.length - alternative.fixedTailStart());
+                if (firstPathSegment >= 0 && matches(segments, alternative.fixedTailStart(), fullPath, bounds, firstPathSegment)) {
+                    return true;
+                }
+            } else if (matches(segments, 0, fullPath, bounds, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match glob segments from {@code segmentIdx} against path segments from {@code pathSegmentIdx}.
+     */
+    private static boolean matches(String[] segments, int segmentIdx, String path, int[] bounds, int pathSegmentIdx) {
+        int nbPathSegments = bounds.length / 2;
+        while (segmentIdx < segments.length) {
+            String segment = segments[segmentIdx];
+            if (segment.equals(ANY_FOLDERS)) {
+                if (segmentIdx == segments.length - 1) {
+                    return pathSegmentIdx < nbPathSegments; // a trailing ** matches the files of a folder, not the folder
+                }
+                for (int i = pathSegmentIdx; i < nbPathSegments; i++) {
+                    if (matches(segments, segmentIdx + 1, path, bounds, i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (pathSegmentIdx == nbPathSegments
+                || !matchesName(segment, path, bounds[pathSegmentIdx * 2], bounds[pathSegmentIdx * 2 + 1])) {
+                return false;
+            }
+            segmentIdx++;
+            pathSegmentIdx++;
+        }
+        return pathSegmentIdx == nbPathSegments;
+    }
+
+    /**
+     * Match a file or folder name pattern against a region of the path, backtracking on the last {@code *} only.
+     */
+    private static boolean matchesName(String pattern, String text, int start, int end) {
+        int p = 0;
+        int t = start;
+        int starP = -1;
+        int starT = start;
+        while (t < end) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starP = p++;
+                starT = t;
+            } else if (starP >= 0) {
+                p = starP + 1;
+                t = ++starT;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * Get the name-based keys which file names matched by this glob satisfy, one per alternative, or null if some
+     * alternative may match any file name (like {@code foo/*} or {@code foo/**}).
+     */
+    @Nullable List<IndexKey> getIndexKeys() {
+        List<IndexKey> keys = new ArrayList<>(this.alternatives.length);
+        for (Alternative alternative : this.alternatives) {
+            String name = alternative.segments()[alternative.segments().length - 1];
+            if (name.equals(ANY_FOLDERS)) {
+                return null;
+            }
+            int firstWildcard = indexOfWildcard(name, true);
+            if (firstWildcard < 0) {
+                keys.add(new IndexKey(IndexKind.EQ, name));
+            } else if (firstWildcard > 0) {
+                keys.add(new IndexKey(IndexKind.PREFIX, name.substring(0, firstWildcard)));
+            } else {
+                int lastWildcard = indexOfWildcard(name, false);
+                if (lastWildcard == name.length() - 1) {
+                    return null;
+                }
+                keys.add(new IndexKey(IndexKind.SUFFIX, name.substring(lastWildcard + 1)));
+            }
+        }
+        return keys;
+    }
+
+    private static int indexOfWildcard(@NotNull String name, boolean first) {
+        int star = first ? name.indexOf('*') : name.lastIndexOf('*');
+        int question = first ? name.indexOf('?') : name.lastIndexOf('?');
+        if (star < 0 || question < 0) {
+            return Math.max(star, question);
+        }
+        return first ? Math.min(star, question) : Math.max(star, question);
+    }
+
+    /**
+     * Rewrite a regex of the common shapes users write (like {@code .*}{@code /charts/[^/]+/values[^/]*\.yaml}) to an
+     * equivalent glob (like {@code charts/?*}{@code /values*.yaml}), or return null if the regex uses other constructs,
+     * like {@code .*} in the middle of a name, which may span folders. The only difference is that
+     * {@code /**}{@code /} also matches no folder at all, where {@code /.*}{@code /} needs at least one folder.
+     */
+    public static @Nullable String suggestFromRegex(@NotNull String regex) {
+        String source = regex;
+        if (source.startsWith("^")) {
+            source = source.substring(1);
+        }
+        if (source.endsWith("$") && !source.endsWith("\\$")) {
+            source = source.substring(0, source.length() - 1);
+        }
+        StringBuilder glob = new StringBuilder();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (source.startsWith(".*", i)) {
+                boolean folderBefore = glob.length() == 0 || glob.charAt(glob.length() - 1) == '/';
+                boolean folderAfter = i + 2 == source.length() || source.charAt(i + 2) == '/';
+                if (folderBefore && folderAfter) {
+                    glob.append(ANY_FOLDERS);
+                } else if (folderBefore) {
+                    glob.append("**/*"); //NON-NLS
+                } else if (folderAfter) {
+                    glob.append("*/**"); //NON-NLS
+                } else {
+                    return null; // may span folders in the middle of a name
+                }
+                i += 2;
+            } else if (source.startsWith("[^/]*", i)) {
+                glob.append('*');
+                i += 5;
+            } else if (source.startsWith("[^/]+", i)) {
+                glob.append("?*"); //NON-NLS
+                i += 5;
+            } else if (source.startsWith("[^/]", i)) {
+                glob.append('?');
+                i += 4;
+            } else if (c == '(') {
+                int groupStart = source.startsWith("(?:", i) ? i + 3 : i + 1;
+                int groupEnd = source.indexOf(')', groupStart);
+                if (groupEnd < 0 || groupEnd + 1 < source.length() && "*+?{".indexOf(source.charAt(groupEnd + 1)) >= 0) {
+                    return null;
+                }
+                List<String> choices = new ArrayList<>();
+                for (String choice : source.substring(groupStart, groupEnd).split("\\|", -1)) {
+                    String literal = unescapeLiteral(choice);
+                    if (literal == null || literal.contains("/")) {
+                        return null;
+                    }
+                    choices.add(literal);
+                }
+                glob.append('{').append(String.join(",", choices)).append('}');
+                i = groupEnd + 1;
+            } else {
+                int next = c == '\\' ? i + 2 : i + 1;
+                if (next > source.length() || next < source.length() && "*+?{".indexOf(source.charAt(next)) >= 0) {
+                    return null; // quantified character
+                }
+                String literal = unescapeLiteral(source.substring(i, next));
+                if (literal == null) {
+                    return null;
+                }
+                glob.append(literal);
+                i = next;
+            }
+        }
+        String suggestion = glob.toString();
+        if (suggestion.startsWith("**/")) {
+            suggestion = suggestion.substring(3); // globs are matched against the end of the path
+        } else if (!suggestion.startsWith("/")) {
+            return null; // the regex is matched against the whole path, which is absolute
+        }
+        return isValid(suggestion) ? suggestion : null;
+    }
+
+    /**
+     * Unescape a regex made of literal characters only, or return null if it has other constructs or glob special
+     * characters.
+     */
+    private static @Nullable String unescapeLiteral(@NotNull String regex) {
+        StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (++i == regex.length() || Character.isLetterOrDigit(regex.charAt(i))) {
+                    return null; // \d, \w, \Q...
+                }
+                c = regex.charAt(i);
+            } else if (".[]()|^$*+?{}".indexOf(c) >= 0) {
+                return null;
+            }
+            if ("*?{},".indexOf(c) >= 0) {
+                return null;
+            }
+            literal.append(c);
+        }
+        return literal.toString();
+    }
+}
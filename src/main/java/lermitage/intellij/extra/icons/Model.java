@@ -18,6 +18,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class Model {
@@ -59,6 +60,12 @@ public class Model {
     /** For a model representing an alternative icon, the ID of the base model, otherwise null. */
     private transient Object parentId = null; // transient because computed dynamically
 
+    /** For a built-in alt model, computes its description on first use, then is cleared. */
+    private transient volatile Supplier<String> descriptionSupplier = null; // transient because computed dynamically
+
+    /** For a built-in model, its dense index in the models registry, otherwise -1. Used to store models state in bit sets. */
+    private transient int ordinal = -1; // transient because computed dynamically
+
     private boolean autoLoadNewUIIconVariant = false;
 
     private boolean inFreemium = false;
@@ -154,11 +161,22 @@ public class Model {
     @Contract("_, _, _, _, _ -> new")
     public static Model createAltModel(Model baseModel, String altId, String altIdeIcon,
                                        String altIcon, String altDescription) {
+        Model altModel = createAltModel(baseModel, altId, altIdeIcon, altIcon, (Supplier<String>) null);
+        altModel.description = altDescription;
+        return altModel;
+    }
+
+    /**
+     * Same as {@link #createAltModel(Model, String, String, String, String)}, but the description is computed
+     * on first use.
+     */
+    public static Model createAltModel(Model baseModel, String altId, String altIdeIcon,
+                                       String altIcon, Supplier<String> altDescriptionSupplier) {
         Model altModel = new Model();
         altModel.id = altId;
         altModel.ideIcon = altIdeIcon;
         altModel.icon = altIcon;
-        altModel.description = altDescription;
+        altModel.descriptionSupplier = altDescriptionSupplier;
         altModel.modelType = baseModel.getModelType();
         altModel.iconType = baseModel.getIconType();
         altModel.enabled = baseModel.isEnabled();
@@ -176,6 +194,11 @@ public class Model {
     }
 
     public String getDescription() {
+        Supplier<String> supplier = this.descriptionSupplier;
+        if (supplier != null) {
+            this.description = supplier.get(); // racy but safe: the supplier always gives the same description
+            this.descriptionSupplier = null;
+        }
         return description;
     }
 
@@ -200,6 +223,61 @@ public class Model {
         return parentId;
     }
 
+    /**
+     * Get the index of this built-in model in the models registry, or -1 for a user model.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Restore a built-in model of the binary models registry, see {@link ModelRegistryCodec}.
+     */
+    static @NotNull Model restore(String id, @Nullable String ideIcon, String icon, String description, ModelType modelType,
+                                  IconType iconType, @Nullable UIType uiType, boolean autoLoadNewUIIconVariant, boolean inFreemium,
+                                  @Nullable String[] altIcons, @Nullable List<ModelTag> tags, List<ModelCondition> conditions) {
+        Model model = new Model();
+        model.id = id;
+        model.ideIcon = ideIcon;
+        model.icon = icon;
+        model.description = description;
+        model.modelType = modelType;
+        model.iconType = iconType;
+        model.uiType = uiType;
+        model.autoLoadNewUIIconVariant = autoLoadNewUIIconVariant;
+        model.inFreemium = inFreemium;
+        model.altIcons = altIcons;
+        model.tags = tags;
+        model.conditions = conditions;
+        return model;
+    }
+
+    /**
+     * Assign dense ordinals to the models of a freshly built registry.
+     */
+    static void assignOrdinals(@NotNull List<Model> registeredModels) {
+        for (int i = 0; i < registeredModels.size(); i++) {
+            registeredModels.get(i).ordinal = i;
+        }
+    }
+
+    /**
+     * Share the strings, arrays and conditions of this model with the other models processed by given interner.
+     * The description of an alt model is interned only if already computed.
+     */
+    void intern(@NotNull ModelInterner interner) {
+        this.id = interner.intern(this.id);
+        this.ideIcon = interner.intern(this.ideIcon);
+        this.icon = interner.intern(this.icon);
+        if (this.descriptionSupplier == null) {
+            this.description = interner.intern(this.description);
+        }
+        this.iconPack = interner.intern(this.iconPack);
+        this.altIcons = interner.intern(this.altIcons);
+        this.tags = interner.internTags(this.tags);
+        this.conditions = interner.internConditions(this.conditions);
+    }
+
     @Nullable
     public String getIconPack() {
         return iconPack;
@@ -214,6 +292,15 @@ public class Model {
         return this;
     }
 
+    /**
+     * Condition: is located, at any depth, in a directory having one of given names, like 'migrations'.
+     * @param ancestors one or multiple possible directories, lowercase.
+     */
+    public Model ancestors(@NotNull String... ancestors) {
+        getCurrentCondition().setAncestors(ancestors);
+        return this;
+    }
+
     /**
      * Condition: file or folder (does not apply to {@link ModelType#ICON} model types) is located in the project folder, not in any subfolder.
      */
@@ -276,6 +363,46 @@ public class Model {
         return this;
     }
 
+    /**
+     * Condition: file/folder <b>absolute path</b> ends with given glob, like 'charts/*&#47;values*.yaml'. Prefer it
+     * to a regex: it's cheaper to match and it's indexed by file name. See {@link GlobMatcher} for the syntax.
+     * @param glob glob.
+     */
+    public Model glob(@NotNull String glob) {
+        getCurrentCondition().setGlob(glob);
+        return this;
+    }
+
+    /**
+     * Condition: file starts with a shebang line running one of given interpreters, like 'python' for
+     * '#!/usr/bin/env python3'. Combine it with a name condition when possible: a content-only condition
+     * makes Extra Icons read the first bytes of every file which doesn't match a previous model.
+     * @param interpreters interpreter name(s), lowercase and without version.
+     */
+    public Model shebang(@NotNull String... interpreters) {
+        getCurrentCondition().addContentSignatures(Arrays.stream(interpreters).map(i -> FileHeader.SHEBANG_PREFIX + i).toArray(String[]::new));
+        return this;
+    }
+
+    /**
+     * Condition: file is an XML document whose root element has one of given local names.
+     * See {@link #shebang(String...)} about content conditions.
+     * @param rootElements root element name(s), without namespace prefix.
+     */
+    public Model xmlRoot(@NotNull String... rootElements) {
+        getCurrentCondition().addContentSignatures(Arrays.stream(rootElements).map(e -> FileHeader.XML_ROOT_PREFIX + e).toArray(String[]::new));
+        return this;
+    }
+
+    /**
+     * Condition: file starts with one of given magic numbers. See {@link #shebang(String...)} about content conditions.
+     * @param hexBytes magic number(s), as hexadecimal digits, like '7f454c46'.
+     */
+    public Model magic(@NotNull String... hexBytes) {
+        getCurrentCondition().addContentSignatures(Arrays.stream(hexBytes).map(h -> FileHeader.MAGIC_PREFIX + h).toArray(String[]::new));
+        return this;
+    }
+
     /**
      * Condition: project has given facet, like 'andoid', 'kotlin', 'python', 'spring' etc. You
      * can see and add facets in Project Structure / Project Settings / Facets.
@@ -358,8 +485,12 @@ public class Model {
     }
 
     public boolean check(String parentName, String fileName, @Nullable String fullPath, Set<String> facets, Project project) {
+        return check(NormalizedPath.of(parentName, fileName, fullPath), facets, project);
+    }
+
+    public boolean check(NormalizedPath path, Set<String> facets, Project project) {
         for (ModelCondition condition : conditions) {
-            if (condition.check(parentName, fileName, fullPath, facets, project)) {
+            if (condition.check(path, facets, project)) {
                 return true;
             }
         }
@@ -404,7 +535,7 @@ public class Model {
             Objects.equals(ideIcon, model.ideIcon) &&
             Objects.equals(icon, model.icon) &&
             Objects.equals(iconPack, model.iconPack) &&
-            description.equals(model.description) &&
+            getDescription().equals(model.getDescription()) &&
             modelType == model.modelType &&
             uiType == model.uiType &&
             iconType == model.iconType &&
@@ -413,6 +544,6 @@ public class Model {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, ideIcon, icon, iconPack, description, modelType, uiType, iconType, enabled, conditions);
+        return Objects.hash(id, ideIcon, icon, iconPack, getDescription(), modelType, uiType, iconType, enabled, conditions);
     }
 }
@@ -4,12 +4,16 @@ package lermitage.intellij.extra.icons;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.xmlb.annotations.OptionTag;
 import com.intellij.util.xmlb.annotations.Tag;
 import lermitage.intellij.extra.icons.enablers.IconEnabler;
 import lermitage.intellij.extra.icons.enablers.IconEnablerProvider;
 import lermitage.intellij.extra.icons.enablers.IconEnablerType;
+import lermitage.intellij.extra.icons.services.AncestorNamesService;
+import lermitage.intellij.extra.icons.services.FileHeaderService;
 import lermitage.intellij.extra.icons.utils.I18nUtils;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.text.MessageFormat;
@@ -46,28 +50,132 @@ public class ModelCondition {
     private boolean hasIconEnabler = false;
     @OptionTag
     private boolean isInProjectRootFolder = false;
+    @OptionTag
+    private boolean checkContent = false;
+    @OptionTag
+    private boolean hasGlob = false;
+    @OptionTag
+    private boolean checkAncestors = false;
 
     @OptionTag
     private String[] names = new String[0];
     @OptionTag
     private Set<String> parentNames = Collections.emptySet();
     @OptionTag
+    private Set<String> ancestorNames = Collections.emptySet();
+    @OptionTag
     private String[] extensions = new String[0];
     @OptionTag
     private String regex;
     @OptionTag
+    private String glob;
+    @OptionTag
     private String[] facets = new String[0];
+    @OptionTag
+    private String[] contentSignatures = new String[0];
 
     // transient fields are excluded from IconPack items
 
     private Pattern pattern; // transient because computed dynamically
+    private GlobMatcher globMatcher; // transient because computed dynamically
     private IconEnablerType iconEnablerType; // transient because not exposed to user models
 
+    // flags of the binary models registry, see ModelRegistryCodec
+    static final int FLAG_START = 1;
+    static final int FLAG_EQ = 1 << 1;
+    static final int FLAG_MAY_END = 1 << 2;
+    static final int FLAG_END = 1 << 3;
+    static final int FLAG_NO_DOT = 1 << 4;
+    static final int FLAG_CHECK_PARENT = 1 << 5;
+    static final int FLAG_HAS_REGEX = 1 << 6;
+    static final int FLAG_ENABLED = 1 << 7;
+    static final int FLAG_CHECK_FACETS = 1 << 8;
+    static final int FLAG_HAS_ICON_ENABLER = 1 << 9;
+    static final int FLAG_IN_PROJECT_ROOT_FOLDER = 1 << 10;
+    static final int FLAG_CHECK_CONTENT = 1 << 11;
+    static final int FLAG_HAS_GLOB = 1 << 12;
+    static final int FLAG_CHECK_ANCESTORS = 1 << 13;
+
+    public ModelCondition() {
+    }
+
+    /**
+     * Restore a condition of the binary models registry. Names, extensions, parents, ancestors, facets and content
+     * signatures are already lowercase, and the regex and the glob are compiled on first use.
+     */
+    ModelCondition(int flags, String[] names, Set<String> parentNames, Set<String> ancestorNames, String[] extensions,
+                   @Nullable String regex, @Nullable String glob, String[] facets, String[] contentSignatures,
+                   @Nullable IconEnablerType iconEnablerType) {
+        this.start = (flags & FLAG_START) != 0;
+        this.eq = (flags & FLAG_EQ) != 0;
+        this.mayEnd = (flags & FLAG_MAY_END) != 0;
+        this.end = (flags & FLAG_END) != 0;
+        this.noDot = (flags & FLAG_NO_DOT) != 0;
+        this.checkParent = (flags & FLAG_CHECK_PARENT) != 0;
+        this.hasRegex = (flags & FLAG_HAS_REGEX) != 0;
+        this.enabled = (flags & FLAG_ENABLED) != 0;
+        this.checkFacets = (flags & FLAG_CHECK_FACETS) != 0;
+        this.hasIconEnabler = (flags & FLAG_HAS_ICON_ENABLER) != 0;
+        this.isInProjectRootFolder = (flags & FLAG_IN_PROJECT_ROOT_FOLDER) != 0;
+        this.checkContent = (flags & FLAG_CHECK_CONTENT) != 0;
+        this.hasGlob = (flags & FLAG_HAS_GLOB) != 0;
+        this.checkAncestors = (flags & FLAG_CHECK_ANCESTORS) != 0;
+        this.names = names;
+        this.parentNames = parentNames;
+        this.ancestorNames = ancestorNames;
+        this.extensions = extensions;
+        this.regex = regex;
+        this.glob = glob;
+        this.facets = facets;
+        this.contentSignatures = contentSignatures;
+        this.iconEnablerType = iconEnablerType;
+    }
+
+    int getFlags() {
+        return (this.start ? FLAG_START : 0) |
+               (this.eq ? FLAG_EQ : 0) |
+               (this.mayEnd ? FLAG_MAY_END : 0) |
+               (this.end ? FLAG_END : 0) |
+               (this.noDot ? FLAG_NO_DOT : 0) |
+               (this.checkParent ? FLAG_CHECK_PARENT : 0) |
+               (this.hasRegex ? FLAG_HAS_REGEX : 0) |
+               (this.enabled ? FLAG_ENABLED : 0) |
+               (this.checkFacets ? FLAG_CHECK_FACETS : 0) |
+               (this.hasIconEnabler ? FLAG_HAS_ICON_ENABLER : 0) |
+               (this.isInProjectRootFolder ? FLAG_IN_PROJECT_ROOT_FOLDER : 0) |
+               (this.checkContent ? FLAG_CHECK_CONTENT : 0) |
+               (this.hasGlob ? FLAG_HAS_GLOB : 0) |
+               (this.checkAncestors ? FLAG_CHECK_ANCESTORS : 0);
+    }
+
+    /**
+     * Share the strings and arrays of this condition with the other conditions processed by given interner.
+     */
+    void intern(ModelInterner interner) {
+        this.names = interner.intern(this.names);
+        this.parentNames = interner.intern(this.parentNames);
+        this.ancestorNames = interner.intern(this.ancestorNames);
+        this.extensions = interner.intern(this.extensions);
+        this.regex = interner.intern(this.regex);
+        this.glob = interner.intern(this.glob);
+        this.facets = interner.intern(this.facets);
+        this.contentSignatures = interner.intern(this.contentSignatures);
+    }
+
     public void setParents(String... parents) {
         this.checkParent = true;
         this.parentNames = toLowerCaseSet(parents);
     }
 
+    /**
+     * Check that one of the folders containing the file, at any depth, has one of given names. Combined with other
+     * conditions, it's a precondition. Alone, it matches everything located in these folders.
+     */
+    public void setAncestors(String... ancestors) {
+        this.checkAncestors = true;
+        this.ancestorNames = toLowerCaseSet(ancestors);
+    }
+
     public void setStart(String... base) {
         this.start = true;
         this.names = toLowerCaseArray(base);
@@ -95,7 +203,17 @@ public class ModelCondition {
     public void setRegex(String regex) {
         this.hasRegex = true;
         this.regex = regex;
-        this.pattern = Pattern.compile(regex);
+        this.pattern = null; // compiled on first use, most regexes are matched by the path's automaton
+    }
+
+    /**
+     * Match the full path with a glob, see {@link GlobMatcher} for the syntax. Cheaper than a regex, and indexed by
+     * file name.
+     */
+    public void setGlob(String glob) {
+        this.hasGlob = true;
+        this.glob = glob.toLowerCase();
+        this.globMatcher = null;
     }
 
     public void setFacets(String[] facets) {
@@ -112,16 +230,84 @@ public class ModelCondition {
         this.isInProjectRootFolder = true;
     }
 
+    /**
+     * Check the first bytes of the file, see {@link FileHeader} for the signatures syntax.
+     */
+    public void setContentSignatures(String... signatures) {
+        this.checkContent = true;
+        this.contentSignatures = toLowerCaseArray(signatures);
+    }
+
+    public void addContentSignatures(String... signatures) {
+        String[] lowerCaseSignatures = toLowerCaseArray(signatures);
+        String[] newSignatures = Arrays.copyOf(this.contentSignatures, this.contentSignatures.length + lowerCaseSignatures.length);
+        System.arraycopy(lowerCaseSignatures, 0, newSignatures, this.contentSignatures.length, lowerCaseSignatures.length);
+        this.checkContent = true;
+        this.contentSignatures = newSignatures;
+    }
+
     public boolean check(String parentName, String fileName, @Nullable String fullPath, Set<String> prjFacets, Project project) {
+        return check(NormalizedPath.of(parentName, fileName, fullPath), prjFacets, project);
+    }
+
+    /**
+     * Check the condition against given path. Checks are ordered by cost: cheap preconditions (facets, parent folder,
+     * memoized ancestor folders, project root folder) first, then name, extension and glob tests, then the regex, then
+     * the Icon Enabler, which may have to scan many folders, and finally the file content, which may have to be read.
+     * As every check is a side-effect free predicate, the result is the same as the declaration order. Icon Enablers
+     * which terminate condition evaluation are the exception: they skip the other checks when verified, so these
+     * conditions are checked in declaration order.
+     */
+    public boolean check(NormalizedPath path, Set<String> prjFacets, Project project) {
         if (!this.enabled) {
             return false;
         }
+        if (this.hasIconEnabler && (this.iconEnablerType == null || this.iconEnablerType.getTerminatesConditionEvaluation())) {
+            return checkInDeclarationOrder(path, prjFacets, project);
+        }
 
-        if (this.isInProjectRootFolder) {
-            if (fullPath == null || !fullPath.equalsIgnoreCase(project.getBasePath() + "/" + fileName)) {
+        String fullPath = path.getFullPath();
+
+        if (!checkFacets(prjFacets)) {
+            return false;
+        }
+        boolean matchedByParent = false;
+        if (this.checkParent) {
+            boolean parentFound = path.isParentIn(this.parentNames);
+            if (hasNameCondition()) {
+                if (!parentFound) {
+                    return false;
+                }
+            } else {
+                matchedByParent = parentFound;
+            }
+        }
+        if (this.checkAncestors && !checkAncestors(path, project)) {
+            return false;
+        }
+        if (this.isInProjectRootFolder && !checkProjectRootFolder(path, fullPath, project)) {
+            return false;
+        }
+
+        if (!matchedByParent && !isNameIndependent() && !checkName(path) && !checkGlob(path) && !checkRegex(path, fullPath)) {
+            return false;
+        }
+
+        if (this.hasIconEnabler && fullPath != null) {
+            IconEnabler iconEnabler = IconEnablerProvider.getIconEnabler(project, this.iconEnablerType);
+            if (iconEnabler != null && !iconEnabler.verify(project, fullPath)) {
                 return false;
             }
         }
+        return !this.checkContent || checkContent(path, project);
+    }
+
+    private boolean checkInDeclarationOrder(NormalizedPath path, Set<String> prjFacets, Project project) {
+        String fullPath = path.getFullPath();
+
+        if (this.isInProjectRootFolder && !checkProjectRootFolder(path, fullPath, project)) {
+            return false;
+        }
 
         if (this.hasIconEnabler && fullPath != null) {
             IconEnabler iconEnabler = IconEnablerProvider.getIconEnabler(project, this.iconEnablerType);
@@ -135,64 +321,156 @@ public class ModelCondition {
             }
         }
 
-        // facet is a pre-condition, should always be associated with other conditions
-        if (this.checkFacets && this.facets != null) {
-            boolean facetChecked = false;
-            for (String modelFacet : this.facets) {
-                if (prjFacets.contains(modelFacet)) {
-                    facetChecked = true;
-                    break;
-                }
-            }
-            if (!facetChecked) {
-                return false;
-            }
+        if (!checkFacets(prjFacets)) {
+            return false;
+        }
+
+        if (this.checkAncestors && !checkAncestors(path, project)) {
+            return false;
         }
 
         if (this.checkParent) {
-            if (!(this.start || this.eq || this.end || this.mayEnd)) {
-                if (this.parentNames.contains(parentName)) {
-                    return true; // To style all files in a subdirectory
+            if (!hasNameCondition()) {
+                if (path.isParentIn(this.parentNames)) {
+                    return !this.checkContent || checkContent(path, project); // To style all files in a subdirectory
                 }
             } else {
-                if (!this.parentNames.contains(parentName)) {
+                if (!path.isParentIn(this.parentNames)) {
                     return false;
                 }
             }
         }
 
-        if (this.hasRegex && fullPath != null) {
-            if (this.pattern == null) {
-                this.pattern = Pattern.compile(this.regex);
-            }
-            if (this.pattern.matcher(fullPath).matches()) {
+        if (!isNameIndependent() && !checkRegex(path, fullPath) && !checkGlob(path) && !checkName(path)) {
+            return false;
+        }
+        return !this.checkContent || checkContent(path, project);
+    }
+
+    private boolean hasNameCondition() {
+        return this.start || this.eq || this.end || this.mayEnd;
+    }
+
+    /**
+     * Indicates if the file content or the ancestor folders are the only things checked, whatever the file and parent
+     * names are.
+     */
+    private boolean isNameIndependent() {
+        return (this.checkContent || this.checkAncestors) && !this.hasRegex && !this.hasGlob && !this.checkParent && !hasNameCondition();
+    }
+
+    /**
+     * Check the names of the folders containing the file. When the path holds its file and the models snapshot's
+     * {@link AncestorNameIndex}, the memoized ancestors of the parent folder are used, otherwise the full path is
+     * scanned.
+     */
+    private boolean checkAncestors(NormalizedPath path, Project project) {
+        AncestorNameIndex ancestorNameIndex = path.getAncestorNameIndex();
+        VirtualFile file = path.getFile();
+        if (ancestorNameIndex == null || file == null) {
+            return path.isAncestorIn(this.ancestorNames);
+        }
+        VirtualFile parent = file.getParent();
+        return parent != null && ancestorNameIndex.containsAny(
+            AncestorNamesService.getInstance(project).getAncestorBits(parent, ancestorNameIndex), this.ancestorNames);
+    }
+
+    /**
+     * Check the first bytes of the file. They are read in background the first time (and each time the file is
+     * modified): meanwhile, the condition doesn't match and the path is marked as {@link NormalizedPath#isContentPending()
+     * pending}.
+     */
+    private boolean checkContent(NormalizedPath path, Project project) {
+        VirtualFile file = path.getFile();
+        if (file == null || file.isDirectory()) {
+            return false;
+        }
+        path.markContentChecked();
+        FileHeader header = FileHeaderService.getInstance(project).getHeader(file);
+        if (header == null) {
+            path.markContentPending();
+            return false;
+        }
+        for (String signature : this.contentSignatures) {
+            if (header.matches(signature)) {
                 return true;
             }
         }
+        return false;
+    }
+
+    private boolean checkProjectRootFolder(NormalizedPath path, @Nullable String fullPath, Project project) {
+        String projectBasePath = project.getBasePath();
+        return fullPath != null && projectBasePath != null && path.isDirectlyIn(projectBasePath);
+    }
 
+    /**
+     * Facet is a pre-condition, should always be associated with other conditions.
+     */
+    private boolean checkFacets(Set<String> prjFacets) {
+        if (this.checkFacets && this.facets != null) {
+            for (String modelFacet : this.facets) {
+                if (prjFacets.contains(modelFacet)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkRegex(NormalizedPath path, @Nullable String fullPath) {
+        if (this.hasRegex && fullPath != null) {
+            Boolean regexMatches = path.matchesRegex(this.regex);
+            if (regexMatches == null) { // regex not supported by the path's automaton
+                if (this.pattern == null) {
+                    this.pattern = Pattern.compile(this.regex);
+                }
+                regexMatches = this.pattern.matcher(fullPath).matches();
+            }
+            return regexMatches;
+        }
+        return false;
+    }
+
+    private boolean checkGlob(NormalizedPath path) {
+        return this.hasGlob && getGlobMatcher().matches(path);
+    }
+
+    /**
+     * Get the compiled glob. An invalid glob (only possible in a hand-edited configuration) matches nothing.
+     */
+    @NotNull GlobMatcher getGlobMatcher() {
+        if (this.globMatcher == null) {
+            this.globMatcher = this.glob != null && GlobMatcher.isValid(this.glob) ? GlobMatcher.compile(this.glob) : GlobMatcher.NONE;
+        }
+        return this.globMatcher;
+    }
+
+    private boolean checkName(NormalizedPath path) {
         if (this.eq) {
             if (this.end) {
                 for (String n : this.names) {
                     for (String e : this.extensions) {
-                        if (fileName.equals(n + e)) {
+                        if (path.nameEquals(n, e)) {
                             return true;
                         }
                     }
                 }
             } else if (this.mayEnd) {
                 for (String n : this.names) {
-                    if (fileName.equals(n)) {
+                    if (path.nameEquals(n)) {
                         return true;
                     }
                     for (String e : this.extensions) {
-                        if (fileName.equals(n + e)) {
+                        if (path.nameEquals(n, e)) {
                             return true;
                         }
                     }
                 }
             } else {
                 for (String n : this.names) {
-                    if (fileName.equals(n)) {
+                    if (path.nameEquals(n)) {
                         return true;
                     }
                 }
@@ -203,31 +481,31 @@ public class ModelCondition {
             if (this.end) {
                 for (String n : this.names) {
                     for (String e : this.extensions) {
-                        if (fileName.startsWith(n) && fileName.endsWith(e)) {
+                        if (path.nameStartsWith(n) && path.nameEndsWith(e)) {
                             return true;
                         }
                     }
                 }
             } else if (this.mayEnd) {
                 for (String n : this.names) {
-                    if (fileName.startsWith(n)) {
+                    if (path.nameStartsWith(n)) {
                         return true;
                     }
                     for (String e : this.extensions) {
-                        if (fileName.startsWith(n) && fileName.endsWith(e)) {
+                        if (path.nameStartsWith(n) && path.nameEndsWith(e)) {
                             return true;
                         }
                     }
                 }
             } else if (this.noDot) {
                 for (String n : this.names) {
-                    if (fileName.startsWith(n) && !fileName.contains(".")) {
+                    if (path.nameStartsWith(n) && !path.nameContains('.')) {
                         return true;
                     }
                 }
             } else {
                 for (String n : this.names) {
-                    if (fileName.startsWith(n)) {
+                    if (path.nameStartsWith(n)) {
                         return true;
                     }
                 }
@@ -236,7 +514,7 @@ public class ModelCondition {
 
         if (this.end & !this.eq & !this.start) {
             for (String e : this.extensions) {
-                if (fileName.endsWith(e)) {
+                if (path.nameEndsWith(e)) {
                     return true;
                 }
             }
@@ -269,20 +547,40 @@ public class ModelCondition {
         return this.checkParent;
     }
 
+    public boolean hasCheckAncestors() {
+        return this.checkAncestors;
+    }
+
     public boolean hasRegex() {
         return this.hasRegex;
     }
 
+    public boolean hasGlob() {
+        return this.hasGlob;
+    }
+
     public boolean hasFacets() {
         return this.checkFacets;
     }
 
+    public boolean hasIconEnabler() {
+        return this.hasIconEnabler;
+    }
+
+    public boolean isInProjectRootFolder() {
+        return this.isInProjectRootFolder;
+    }
+
+    public boolean hasContent() {
+        return this.checkContent;
+    }
+
     public boolean isEnabled() {
         return this.enabled;
     }
 
     public boolean isValid() {
-        return this.hasRegex || this.checkParent || this.start || this.eq || this.end || this.mayEnd;
+        return this.hasRegex || this.hasGlob || this.checkParent || this.checkAncestors || this.start || this.eq || this.end || this.mayEnd || this.checkContent;
     }
 
     public String[] getNames() {
@@ -297,14 +595,31 @@ public class ModelCondition {
         return this.parentNames;
     }
 
+    public Set<String> getAncestors() {
+        return this.ancestorNames;
+    }
+
     public String getRegex() {
         return this.regex;
     }
 
+    public String getGlob() {
+        return this.glob;
+    }
+
     public String[] getFacets() {
         return this.facets;
     }
 
+    public String[] getContentSignatures() {
+        return this.contentSignatures;
+    }
+
+    @Nullable
+    public IconEnablerType getIconEnablerType() {
+        return this.iconEnablerType;
+    }
+
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
@@ -315,10 +630,18 @@ public class ModelCondition {
             parameters.add(MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.regex"), this.regex));
         }
 
+        if (this.hasGlob) {
+            parameters.add(MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.glob"), this.glob));
+        }
+
         if (this.checkParent) {
             parameters.add(MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.check.parents"), String.join(delimiter, this.parentNames)));
         }
 
+        if (this.checkAncestors) {
+            parameters.add(MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.check.ancestors"), String.join(delimiter, this.ancestorNames)));
+        }
+
         if (this.start || this.eq) {
             String names = String.join(delimiter, this.names);
             if (this.start) {
@@ -346,6 +669,10 @@ public class ModelCondition {
             parameters.add(MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.facets"), Arrays.toString(this.facets)));
         }
 
+        if (this.checkContent) {
+            parameters.add(MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.content"), String.join(delimiter, this.contentSignatures)));
+        }
+
         return StringUtil.capitalize(String.join(", ", parameters));
     }
 
@@ -362,19 +689,26 @@ public class ModelCondition {
                this.checkParent == that.checkParent &&
                this.hasRegex == that.hasRegex &&
                this.enabled == that.enabled &&
+               this.checkContent == that.checkContent &&
+               this.hasGlob == that.hasGlob &&
+               this.checkAncestors == that.checkAncestors &&
                Arrays.equals(this.names, that.names) &&
                this.parentNames.equals(that.parentNames) &&
+               this.ancestorNames.equals(that.ancestorNames) &&
                Arrays.equals(this.extensions, that.extensions) &&
                Objects.equals(this.regex, that.regex) &&
-               Arrays.equals(this.facets, that.facets);
+               Objects.equals(this.glob, that.glob) &&
+               Arrays.equals(this.facets, that.facets) &&
+               Arrays.equals(this.contentSignatures, that.contentSignatures);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(this.start, this.eq, this.mayEnd, this.end, this.noDot, this.checkParent, this.hasRegex, this.enabled, this.parentNames, this.regex);
+        int result = Objects.hash(this.start, this.eq, this.mayEnd, this.end, this.noDot, this.checkParent, this.hasRegex, this.enabled, this.checkContent, this.hasGlob, this.checkAncestors, this.parentNames, this.ancestorNames, this.regex, this.glob);
         result = 31 * result + Arrays.hashCode(this.names);
         result = 31 * result + Arrays.hashCode(this.extensions);
         result = 31 * result + Arrays.hashCode(this.facets);
+        result = 31 * result + Arrays.hashCode(this.contentSignatures);
         return result;
     }
 
@@ -0,0 +1,165 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import lermitage.intellij.extra.icons.enablers.IconEnablerType;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Share the equal strings, string arrays, parents sets and tags lists of a set of models, to reduce the retained heap
+ * of the models graph. The built-in registry also shares identical conditions (and lists of conditions) between
+ * models: it's safe because built-in models are never modified. User models (like Icon Pack models) can be edited
+ * in place by the settings dialogs, so only their immutable parts are shared.
+ * <p>
+ * An interner is meant to process a batch of models, then be dropped: its tables don't outlive the batch.
+ */
+public final class ModelInterner {
+
+    private static final String[] EMPTY_STRINGS = new String[0];
+
+    private final boolean shareConditions;
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<List<String>, String[]> stringArrays = new HashMap<>();
+    private final Map<Set<String>, Set<String>> stringSets = new HashMap<>();
+    private final Map<List<ModelTag>, List<ModelTag>> tagLists = new HashMap<>();
+    private final Map<ConditionKey, ModelCondition> conditions = new HashMap<>();
+    private final Map<List<ModelCondition>, List<ModelCondition>> internedConditionLists = new IdentityHashMap<>();
+
+    private ModelInterner(boolean shareConditions) {
+        this.shareConditions = shareConditions;
+    }
+
+    /**
+     * Create an interner for the built-in models registry, which also shares identical conditions.
+     */
+    static @NotNull ModelInterner forRegistry() {
+        return new ModelInterner(true);
+    }
+
+    /**
+     * Create an interner for user models, which doesn't share conditions as they may be edited.
+     */
+    static @NotNull ModelInterner forUserModels() {
+        return new ModelInterner(false);
+    }
+
+    /**
+     * Intern given user models (like the models of an imported Icon Pack).
+     */
+    public static void internUserModels(@NotNull List<Model> models) {
+        ModelInterner interner = forUserModels();
+        for (Model model : models) {
+            model.intern(interner);
+        }
+    }
+
+    @Contract("null -> null; !null -> !null")
+    @Nullable String intern(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        String interned = this.strings.putIfAbsent(value, value);
+        return interned == null ? value : interned;
+    }
+
+    @Contract("null -> null; !null -> !null")
+    @Nullable String[] intern(@Nullable String[] values) {
+        if (values == null) {
+            return null;
+        }
+        if (values.length == 0) {
+            return EMPTY_STRINGS;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = intern(values[i]);
+        }
+        String[] interned = this.stringArrays.putIfAbsent(Arrays.asList(values), values);
+        return interned == null ? values : interned;
+    }
+
+    @Contract("null -> null; !null -> !null")
+    @Nullable Set<String> intern(@Nullable Set<String> values) {
+        if (values == null) {
+            return null;
+        }
+        if (values.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> interned = this.stringSets.get(values);
+        if (interned == null) {
+            if (values.size() == 1) {
+                interned = Collections.singleton(intern(values.iterator().next()));
+            } else {
+                interned = new HashSet<>(values.size() * 2);
+                for (String value : values) {
+                    interned.add(intern(value));
+                }
+            }
+            this.stringSets.put(interned, interned);
+        }
+        return interned;
+    }
+
+    @Nullable List<ModelTag> internTags(@Nullable List<ModelTag> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return tags;
+        }
+        return this.tagLists.computeIfAbsent(tags, List::copyOf);
+    }
+
+    /**
+     * Intern the strings of given conditions and, for the built-in registry, replace identical conditions (and
+     * lists of conditions) with a shared instance. Lists already processed (the lists of alt models are the lists
+     * of their base models) are returned as is.
+     */
+    @NotNull List<ModelCondition> internConditions(@NotNull List<ModelCondition> conditionList) {
+        List<ModelCondition> interned = this.internedConditionLists.get(conditionList);
+        if (interned != null) {
+            return interned;
+        }
+        if (this.shareConditions) {
+            List<ModelCondition> sharedConditions = new ArrayList<>(conditionList.size());
+            for (ModelCondition condition : conditionList) {
+                condition.intern(this);
+                sharedConditions.add(this.conditions.computeIfAbsent(ConditionKey.of(condition), key -> condition));
+            }
+            interned = Collections.unmodifiableList(sharedConditions);
+        } else {
+            for (ModelCondition condition : conditionList) {
+                condition.intern(this);
+            }
+            interned = conditionList;
+        }
+        this.internedConditionLists.put(conditionList, interned);
+        this.internedConditionLists.put(interned, interned);
+        return interned;
+    }
+
+    /**
+     * Every field of a condition ({@link ModelCondition#equals(Object)} ignores some of them). Arrays are compared by
+     * identity, which is the same as comparing their content as they are interned first.
+     */
+    private record ConditionKey(int flags, @Nullable IconEnablerType iconEnablerType, String[] names,
+                                Set<String> parentNames, Set<String> ancestorNames, String[] extensions,
+                                @Nullable String regex, @Nullable String glob, @Nullable String[] facets,
+                                String[] contentSignatures) {
+
+        static ConditionKey of(ModelCondition condition) {
+            return new ConditionKey(condition.getFlags(), condition.getIconEnablerType(), condition.getNames(),
+                condition.getParents(), condition.getAncestors(), condition.getExtensions(), condition.getRegex(),
+                condition.getGlob(), condition.getFacets(), condition.getContentSignatures());
+        }
+    }
+}
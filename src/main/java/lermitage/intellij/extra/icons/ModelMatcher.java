@@ -0,0 +1,313 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import lermitage.intellij.extra.icons.enablers.IconEnablerType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiled view of an ordered list of models, used to find the models a file may match without
+ * checking every model. Name-based conditions are indexed: a hash index for {@code eq} names, a prefix
+ * trie for {@code start} names and a reversed-suffix trie for {@code end} extensions. Globs are indexed the same way,
+ * by the literal name, prefix or suffix of their last segment (see {@link GlobMatcher#getIndexKeys()}). Conditions that
+ * can match whatever the file name is (regex, parent-only, ancestor-only and content-only conditions, and Icon
+ * Enablers which terminate condition evaluation) are kept in a residual list and are always candidates.
+ * <p>
+ * Candidates are a superset of the models whose {@link Model#check} can succeed, and they are returned
+ * in the original model order: the first candidate passing {@link Model#check} is the same winner as
+ * the one found by an ordered scan of the whole list.
+ * <p>
+ * For built-in models, the name indexes are replaced by the {@link CompiledModelMatcher} generated at build time,
+ * if available. It doesn't know globs, so glob conditions are residual then.
+ */
+public final class ModelMatcher {
+
+    private final Model[] models;
+    private final String[] eqKeys;
+    private final int[][] eqValues;
+    private final CharTrie prefixTrie;
+    private final CharTrie suffixTrie;
+    private final int[] residual;
+    private final @Nullable CompiledModelMatcher compiledMatcher;
+    private final @Nullable int[] indexByOrdinal;
+
+    public ModelMatcher(@NotNull List<Model> models) {
+        this(models, CompiledMatcherHolder.INSTANCE);
+    }
+
+    /**
+     * @param compiledMatcher the generated name index of built-in models, or null to use the interpreted one. It's
+     *                        ignored if some of given models are not built-in models.
+     */
+    ModelMatcher(@NotNull List<Model> models, @Nullable CompiledModelMatcher compiledMatcher) {
+        this.models = models.toArray(new Model[0]);
+        this.indexByOrdinal = compiledMatcher == null ? null : indexByOrdinal(this.models);
+        this.compiledMatcher = this.indexByOrdinal == null ? null : compiledMatcher;
+
+        Map<String, BitSet> eqBuilder = new HashMap<>();
+        CharTrie.Builder prefixBuilder = new CharTrie.Builder();
+        CharTrie.Builder suffixBuilder = new CharTrie.Builder();
+        BitSet residualBuilder = new BitSet();
+
+        for (int idx = 0; idx < this.models.length; idx++) {
+            for (ModelCondition condition : this.models[idx].getConditions()) {
+                if (!condition.isEnabled()) {
+                    continue; // a disabled condition never matches
+                }
+                if (isResidual(condition)) {
+                    residualBuilder.set(idx);
+                    continue;
+                }
+                if (condition.hasEq()) {
+                    for (String name : condition.getNames()) {
+                        if (condition.hasEnd()) {
+                            for (String ext : condition.getExtensions()) {
+                                eqBuilder.computeIfAbsent(name + ext, k -> new BitSet()).set(idx);
+                            }
+                        } else if (condition.hasMayEnd()) {
+                            eqBuilder.computeIfAbsent(name, k -> new BitSet()).set(idx);
+                            for (String ext : condition.getExtensions()) {
+                                eqBuilder.computeIfAbsent(name + ext, k -> new BitSet()).set(idx);
+                            }
+                        } else {
+                            eqBuilder.computeIfAbsent(name, k -> new BitSet()).set(idx);
+                        }
+                    }
+                }
+                if (condition.hasStart()) {
+                    // whatever the end/mayEnd/noDot flags are, the name has to start with one of the names
+                    for (String name : condition.getNames()) {
+                        prefixBuilder.add(name, idx);
+                    }
+                }
+                if (condition.hasEnd() && !condition.hasEq() && !condition.hasStart()) {
+                    for (String ext : condition.getExtensions()) {
+                        suffixBuilder.add(new StringBuilder(ext).reverse().toString(), idx);
+                    }
+                }
+                if (condition.hasGlob()) {
+                    List<GlobMatcher.IndexKey> globKeys = this.compiledMatcher == null ? condition.getGlobMatcher().getIndexKeys() : null;
+                    if (globKeys == null) {
+                        residualBuilder.set(idx);
+                        continue;
+                    }
+                    for (GlobMatcher.IndexKey globKey : globKeys) {
+                        switch (globKey.kind()) {
+                            case EQ -> eqBuilder.computeIfAbsent(globKey.value(), k -> new BitSet()).set(idx);
+                            case PREFIX -> prefixBuilder.add(globKey.value(), idx);
+                            case SUFFIX -> suffixBuilder.add(new StringBuilder(globKey.value()).reverse().toString(), idx);
+                        }
+                    }
+                }
+            }
+        }
+
+        // open addressing hash table, so file names can be looked up from a region of the full path
+        int capacity = Integer.highestOneBit(Math.max(eqBuilder.size(), 1) * 2) * 2;
+        this.eqKeys = new String[capacity];
+        this.eqValues = new int[capacity][];
+        eqBuilder.forEach((name, indexes) -> {
+            int slot = hash(name, 0, name.length()) & (capacity - 1);
+            while (this.eqKeys[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            this.eqKeys[slot] = name;
+            this.eqValues[slot] = indexes.stream().toArray();
+        });
+        this.prefixTrie = prefixBuilder.build();
+        this.suffixTrie = suffixBuilder.build();
+        this.residual = residualBuilder.stream().toArray();
+    }
+
+    /**
+     * Map the ordinals of given built-in models to their index, or return null if some models are not built-in ones.
+     */
+    private static @Nullable int[] indexByOrdinal(@NotNull Model[] models) {
+        int maxOrdinal = -1;
+        for (Model model : models) {
+            if (model.getOrdinal() < 0) {
+                return null;
+            }
+            maxOrdinal = Math.max(maxOrdinal, model.getOrdinal());
+        }
+        int[] indexByOrdinal = new int[maxOrdinal + 1];
+        Arrays.fill(indexByOrdinal, -1);
+        for (int idx = 0; idx < models.length; idx++) {
+            indexByOrdinal[models[idx].getOrdinal()] = idx;
+        }
+        return indexByOrdinal;
+    }
+
+    /**
+     * Indicates if given condition may match whatever the file name is, so it can't be indexed by name.
+     */
+    static boolean isResidual(@NotNull ModelCondition condition) {
+        if (condition.hasRegex()) {
+            return true;
+        }
+        if (condition.hasIconEnabler()) {
+            IconEnablerType iconEnablerType = condition.getIconEnablerType();
+            if (iconEnablerType == null || iconEnablerType.getTerminatesConditionEvaluation()) {
+                return true;
+            }
+        }
+        boolean hasNameCondition = condition.hasStart() || condition.hasEq() || condition.hasEnd() || condition.hasMayEnd();
+        boolean nameIndependent = (condition.hasContent() || condition.hasCheckAncestors()) && !condition.hasGlob();
+        return !hasNameCondition && (condition.hasCheckParent() || nameIndependent);
+    }
+
+    public int size() {
+        return this.models.length;
+    }
+
+    public @NotNull Model getModel(int idx) {
+        return this.models[idx];
+    }
+
+    /**
+     * Find the models which may match given file name.
+     * @param fileName file name, lowercase.
+     * @return the indexes of candidate models. Iterate with {@link BitSet#nextSetBit(int)} to respect models order.
+     */
+    public @NotNull BitSet findCandidates(@NotNull String fileName) {
+        return findCandidates(NormalizedPath.of(null, fileName, null));
+    }
+
+    /**
+     * Find the models which may match the file name of given path.
+     * @return the indexes of candidate models. Iterate with {@link BitSet#nextSetBit(int)} to respect models order.
+     */
+    public @NotNull BitSet findCandidates(@NotNull NormalizedPath path) {
+        BitSet candidates = new BitSet(this.models.length);
+        for (int idx : this.residual) {
+            candidates.set(idx);
+        }
+        if (this.compiledMatcher != null && this.indexByOrdinal != null) {
+            BitSet ordinals = new BitSet(this.indexByOrdinal.length);
+            this.compiledMatcher.collectCandidates(path, ordinals);
+            for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0 && ordinal < this.indexByOrdinal.length; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+                int idx = this.indexByOrdinal[ordinal];
+                if (idx >= 0) {
+                    candidates.set(idx);
+                }
+            }
+            return candidates;
+        }
+        String source = path.getNameSource();
+        int start = path.getNameStart();
+        int end = path.getNameEnd();
+        int[] eqCandidates = findEq(source, start, end);
+        if (eqCandidates != null) {
+            for (int idx : eqCandidates) {
+                candidates.set(idx);
+            }
+        }
+        this.prefixTrie.collect(source, start, end, false, candidates);
+        this.suffixTrie.collect(source, start, end, true, candidates);
+        return candidates;
+    }
+
+    private @Nullable int[] findEq(@NotNull String source, int start, int end) {
+        int length = end - start;
+        int mask = this.eqKeys.length - 1;
+        int slot = hash(source, start, end) & mask;
+        String key;
+        while ((key = this.eqKeys[slot]) != null) {
+            if (key.length() == length && source.startsWith(key, start)) {
+                return this.eqValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static int hash(@NotNull String source, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Lazy holder of the generated matcher, as loading it requires the built-in models registry.
+     */
+    private static final class CompiledMatcherHolder {
+        static final @Nullable CompiledModelMatcher INSTANCE = CompiledModelMatcher.load(ExtraIconProvider.allModels());
+    }
+
+    /**
+     * A minimal immutable char trie. Each node holds the indexes of the models whose key ends on this node.
+     */
+    private static final class CharTrie {
+
+        private static final int[] NO_VALUES = new int[0];
+
+        private final char[] chars;
+        private final CharTrie[] children;
+        private final int[] values;
+
+        private CharTrie(char[] chars, CharTrie[] children, int[] values) {
+            this.chars = chars;
+            this.children = children;
+            this.values = values;
+        }
+
+        /**
+         * Collect the values of all keys which are a prefix of given text region.
+         * @param reversed if true, walk the text from its end, in order to find keys which are a suffix of given text region.
+         */
+        void collect(String text, int start, int end, boolean reversed, BitSet out) {
+            CharTrie node = this;
+            int length = end - start;
+            for (int i = 0; ; i++) {
+                for (int value : node.values) {
+                    out.set(value);
+                }
+                if (i == length) {
+                    return;
+                }
+                int childIdx = Arrays.binarySearch(node.chars, text.charAt(reversed ? end - 1 - i : start + i));
+                if (childIdx < 0) {
+                    return;
+                }
+                node = node.children[childIdx];
+            }
+        }
+
+        static final class Builder {
+
+            private final TreeMap<Character, Builder> children = new TreeMap<>();
+            private final BitSet values = new BitSet();
+
+            void add(String key, int value) {
+                Builder node = this;
+                for (int i = 0; i < key.length(); i++) {
+                    node = node.children.computeIfAbsent(key.charAt(i), c -> new Builder());
+                }
+                node.values.set(value);
+            }
+
+            CharTrie build() {
+                char[] chars = new char[this.children.size()];
+                CharTrie[] builtChildren = new CharTrie[this.children.size()];
+                int i = 0;
+                for (Map.Entry<Character, Builder> child : this.children.entrySet()) {
+                    chars[i] = child.getKey();
+                    builtChildren[i] = child.getValue().build();
+                    i++;
+                }
+                int[] builtValues = this.values.isEmpty() ? NO_VALUES : this.values.stream().toArray();
+                return new CharTrie(chars, builtChildren, builtValues);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of the built-in models (and their alt models), loaded once, on first use, from the binary registry
+ * generated at build time (see {@link ModelRegistryCodec}). Models are shared by every caller, so they must not be
+ * modified. Alt models descriptions are computed on first use, and identical conditions and strings are shared
+ * between models (see {@link ModelInterner}).
+ */
+public final class ModelRegistry {
+
+    private static final @NonNls Logger LOGGER = Logger.getInstance(ModelRegistry.class);
+
+    private final List<Model> models;
+    private final Map<String, Model> modelsById;
+
+    private ModelRegistry(@NotNull List<Model> models) {
+        Model.assignOrdinals(models);
+        ModelInterner interner = ModelInterner.forRegistry();
+        for (Model model : models) {
+            model.intern(interner);
+        }
+        this.models = Collections.unmodifiableList(models);
+        this.modelsById = new HashMap<>(models.size() * 2);
+        for (Model model : models) {
+            this.modelsById.putIfAbsent(model.getId(), model);
+        }
+    }
+
+    private static final class Holder {
+        private static final ModelRegistry INSTANCE = new ModelRegistry(loadModels());
+    }
+
+    /**
+     * Load the built-in models from the binary registry generated at build time, or evaluate their declarations if
+     * it's missing, unreadable, or disabled with the {@code extra-icons.binary.registry} system property.
+     */
+    private static @NotNull List<Model> loadModels() {
+        if (Boolean.parseBoolean(System.getProperty("extra-icons.binary.registry", "true"))) {
+            try {
+                List<Model> baseModels = ModelRegistryCodec.readBundledModels();
+                if (baseModels != null) {
+                    return baseModels.stream()
+                        .flatMap(BaseIconProvider::modelList)
+                        .collect(Collectors.toList());
+                }
+                LOGGER.info("Built-in models registry not found, evaluating built-in models declarations");
+            } catch (Exception e) {
+                LOGGER.warn("Failed to load the built-in models registry, evaluating built-in models declarations", e);
+            }
+        }
+        return ExtraIconProvider.createAllModels();
+    }
+
+    public static @NotNull ModelRegistry getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Get the built-in models, ordered by priority. The list is unmodifiable.
+     */
+    public @NotNull List<Model> getModels() {
+        return this.models;
+    }
+
+    public @Nullable Model getModel(@NotNull String id) {
+        return this.modelsById.get(id);
+    }
+
+    /**
+     * Get a built-in model by its {@link Model#getOrdinal() ordinal}.
+     */
+    public @NotNull Model getModel(int ordinal) {
+        return this.models.get(ordinal);
+    }
+
+    public int size() {
+        return this.models.size();
+    }
+}
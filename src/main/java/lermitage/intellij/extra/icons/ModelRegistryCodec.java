@@ -0,0 +1,227 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import lermitage.intellij.extra.icons.enablers.IconEnablerType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of the built-in models registry, written at build time from the models declared in
+ * {@link ExtraIconProvider} (which remain the source of truth) and read at startup instead of evaluating them.
+ * <p>
+ * The resource starts with a table of the distinct strings, then every model and condition refer to strings by
+ * index. Booleans and enums of a model or a condition are packed into one int. Names, extensions, parents, ancestors,
+ * facets and content signatures are stored lowercase, and regexes and globs are compiled on first use. Only base
+ * models are stored: alt models are derived from them when the registry is loaded.
+ */
+final class ModelRegistryCodec {
+
+    static final String RESOURCE_PATH = "/lermitage/intellij/extra/icons/built-in-models.bin"; //NON-NLS
+
+    private static final int MAGIC = 0x58494D52; // "XIMR"
+    private static final int FORMAT_VERSION = 4;
+    private static final int NULL_IDX = -1;
+
+    // model flags: enums are stored as ordinal + 1 (0 means null) in 4 bits each
+    private static final int MODEL_TYPE_SHIFT = 0;
+    private static final int ICON_TYPE_SHIFT = 4;
+    private static final int UI_TYPE_SHIFT = 8;
+    private static final int AUTO_LOAD_NEW_UI_ICON_VARIANT = 1 << 12;
+    private static final int IN_FREEMIUM = 1 << 13;
+
+    // condition flags: ModelCondition flags, plus the Icon Enabler type (ordinal + 1) in the high bits
+    private static final int ICON_ENABLER_TYPE_SHIFT = 16;
+
+    private ModelRegistryCodec() {
+    }
+
+    /**
+     * Read the base models of the binary registry bundled with the plugin, or return null if it's missing.
+     */
+    static @Nullable List<Model> readBundledModels() throws IOException {
+        try (InputStream inputStream = ModelRegistryCodec.class.getResourceAsStream(RESOURCE_PATH)) {
+            if (inputStream == null) {
+                return null;
+            }
+            return read(inputStream.readAllBytes());
+        }
+    }
+
+    static @NotNull List<Model> read(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported built-in models registry format"); //NON-NLS
+        }
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        ModelType[] modelTypes = ModelType.values();
+        IconType[] iconTypes = IconType.values();
+        UIType[] uiTypes = UIType.values();
+        ModelTag[] modelTags = ModelTag.values();
+        IconEnablerType[] iconEnablerTypes = IconEnablerType.values();
+
+        int nbModels = in.readInt();
+        List<Model> models = new ArrayList<>(nbModels);
+        for (int m = 0; m < nbModels; m++) {
+            String id = strings[in.readInt()];
+            String ideIcon = readString(in, strings);
+            String icon = strings[in.readInt()];
+            String description = strings[in.readInt()];
+            int modelFlags = in.readInt();
+            String[] altIcons = readStrings(in, strings);
+            List<ModelTag> tags = null;
+            int nbTags = in.readInt();
+            if (nbTags != NULL_IDX) {
+                tags = new ArrayList<>(nbTags);
+                for (int t = 0; t < nbTags; t++) {
+                    tags.add(modelTags[in.readUnsignedByte()]);
+                }
+            }
+            int nbConditions = in.readInt();
+            List<ModelCondition> conditions = new ArrayList<>(nbConditions);
+            for (int c = 0; c < nbConditions; c++) {
+                int conditionFlags = in.readInt();
+                String[] names = readStrings(in, strings);
+                String[] parentNames = readStrings(in, strings);
+                String[] ancestorNames = readStrings(in, strings);
+                String[] extensions = readStrings(in, strings);
+                String regex = readString(in, strings);
+                String glob = readString(in, strings);
+                String[] facets = readStrings(in, strings);
+                String[] contentSignatures = readStrings(in, strings);
+                conditions.add(new ModelCondition(conditionFlags, names, new HashSet<>(List.of(parentNames)),
+                    new HashSet<>(List.of(ancestorNames)), extensions, regex, glob, facets, contentSignatures, enumValue(iconEnablerTypes, conditionFlags >>> ICON_ENABLER_TYPE_SHIFT)));
+            }
+            models.add(Model.restore(id, ideIcon, icon, description,
+                enumValue(modelTypes, (modelFlags >>> MODEL_TYPE_SHIFT) & 0xF),
+                enumValue(iconTypes, (modelFlags >>> ICON_TYPE_SHIFT) & 0xF),
+                enumValue(uiTypes, (modelFlags >>> UI_TYPE_SHIFT) & 0xF),
+                (modelFlags & AUTO_LOAD_NEW_UI_ICON_VARIANT) != 0,
+                (modelFlags & IN_FREEMIUM) != 0,
+                altIcons, tags, conditions));
+        }
+        return models;
+    }
+
+    /**
+     * Write given base models. Alt models can't be written: they are derived from base models when reading.
+     */
+    static byte[] write(@NotNull List<Model> models) throws IOException {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        ByteArrayOutputStream modelsBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(modelsBytes);
+        out.writeInt(models.size());
+        for (Model model : models) {
+            if (model.getParentId() != null || !model.isEnabled() || model.getIconPack() != null) {
+                throw new IllegalArgumentException("Only enabled built-in base models can be written: " + model.getId()); //NON-NLS
+            }
+            out.writeInt(stringIdx(stringIndex, strings, model.getId()));
+            out.writeInt(stringIdx(stringIndex, strings, model.getIdeIcon()));
+            out.writeInt(stringIdx(stringIndex, strings, model.getIcon()));
+            out.writeInt(stringIdx(stringIndex, strings, model.getDescription()));
+            out.writeInt(enumIdx(model.getModelType()) << MODEL_TYPE_SHIFT |
+                         enumIdx(model.getIconType()) << ICON_TYPE_SHIFT |
+                         enumIdx(model.getUiType()) << UI_TYPE_SHIFT |
+                         (model.isAutoLoadNewUIIconVariant() ? AUTO_LOAD_NEW_UI_ICON_VARIANT : 0) |
+                         (model.isInFreemium() ? IN_FREEMIUM : 0));
+            writeStrings(out, stringIndex, strings, model.getAltIcons() == null ? null : List.of(model.getAltIcons()));
+            if (model.getTags().isEmpty()) {
+                out.writeInt(NULL_IDX);
+            } else {
+                out.writeInt(model.getTags().size());
+                for (ModelTag tag : model.getTags()) {
+                    out.writeByte(tag.ordinal());
+                }
+            }
+            out.writeInt(model.getConditions().size());
+            for (ModelCondition condition : model.getConditions()) {
+                out.writeInt(condition.getFlags() | enumIdx(condition.getIconEnablerType()) << ICON_ENABLER_TYPE_SHIFT);
+                writeStrings(out, stringIndex, strings, List.of(condition.getNames()));
+                writeStrings(out, stringIndex, strings, condition.getParents());
+                writeStrings(out, stringIndex, strings, condition.getAncestors());
+                writeStrings(out, stringIndex, strings, List.of(condition.getExtensions()));
+                out.writeInt(stringIdx(stringIndex, strings, condition.getRegex()));
+                out.writeInt(stringIdx(stringIndex, strings, condition.getGlob()));
+                writeStrings(out, stringIndex, strings, condition.getFacets() == null ? null : List.of(condition.getFacets()));
+                writeStrings(out, stringIndex, strings, List.of(condition.getContentSignatures()));
+            }
+        }
+        out.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeInt(strings.size());
+        for (String string : strings) {
+            header.writeUTF(string);
+        }
+        header.flush();
+        modelsBytes.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static @Nullable String readString(DataInputStream in, String[] strings) throws IOException {
+        int idx = in.readInt();
+        return idx == NULL_IDX ? null : strings[idx];
+    }
+
+    private static @Nullable String[] readStrings(DataInputStream in, String[] strings) throws IOException {
+        int size = in.readInt();
+        if (size == NULL_IDX) {
+            return null;
+        }
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = strings[in.readInt()];
+        }
+        return values;
+    }
+
+    private static int stringIdx(Map<String, Integer> stringIndex, List<String> strings, @Nullable String value) {
+        if (value == null) {
+            return NULL_IDX;
+        }
+        return stringIndex.computeIfAbsent(value, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> stringIndex, List<String> strings,
+                                     @Nullable Collection<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(NULL_IDX);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(stringIdx(stringIndex, strings, value));
+        }
+    }
+
+    private static int enumIdx(@Nullable Enum<?> value) {
+        return value == null ? 0 : value.ordinal() + 1;
+    }
+
+    private static <E extends Enum<E>> @Nullable E enumValue(E[] values, int idx) {
+        return idx == 0 ? null : values[idx - 1];
+    }
+}
@@ -0,0 +1,222 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import lermitage.intellij.extra.icons.enablers.IconEnablerType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bloom filter which tells whether a file definitely matches no name-based condition of an ordered list of models,
+ * without walking the models. Keys are the {@code eq} names, the first characters of {@code start} names, the last
+ * characters of {@code end} extensions, the same keys for the last segment of globs, and the parent names of
+ * parent-only conditions. A rejected file may still match a condition which doesn't depend on the file name (regex,
+ * globs like {@code foo/*}, ancestor-only and content-only conditions, Icon Enablers which terminate condition
+ * evaluation): the models holding such conditions are kept in a {@link #getConservativeModels() conservative list},
+ * which has to be checked in place of the whole list.
+ */
+public final class ModelRejectFilter {
+
+    /**
+     * Number of leading (or trailing) characters of {@code start} names (or {@code end} extensions) stored as keys.
+     */
+    private static final int AFFIX_LENGTH = 3;
+    private static final int NB_HASHES = 4;
+    private static final int BITS_PER_KEY = 12;
+
+    private static final char EQ_TAG = '=';
+    private static final char PREFIX_TAG = '^';
+    private static final char SUFFIX_TAG = '$';
+    private static final char PARENT_TAG = '/';
+
+    private final long[] bits;
+    private final int mask;
+    private final boolean acceptsAll;
+    private final Model[] conservativeModels;
+
+    public ModelRejectFilter(@NotNull List<Model> models) {
+        List<String> keys = new ArrayList<>();
+        List<Model> conservativeModelsBuilder = new ArrayList<>();
+        boolean acceptsAllBuilder = false;
+
+        for (Model model : models) {
+            boolean conservative = false;
+            for (ModelCondition condition : model.getConditions()) {
+                if (!condition.isEnabled()) {
+                    continue; // a disabled condition never matches
+                }
+                if (isConservative(condition)) {
+                    conservative = true;
+                    continue;
+                }
+                if (condition.hasGlob() && !addGlobKeys(condition.getGlobMatcher(), keys)) {
+                    conservative = true;
+                    continue;
+                }
+                boolean hasNameCondition = condition.hasStart() || condition.hasEq() || condition.hasEnd() || condition.hasMayEnd();
+                if (condition.hasCheckParent() && !hasNameCondition) {
+                    for (String parentName : condition.getParents()) {
+                        keys.add(PARENT_TAG + parentName);
+                    }
+                }
+                if (condition.hasEq()) {
+                    for (String name : condition.getNames()) {
+                        if (!condition.hasEnd()) {
+                            keys.add(EQ_TAG + name);
+                        }
+                        if (condition.hasEnd() || condition.hasMayEnd()) {
+                            for (String ext : condition.getExtensions()) {
+                                keys.add(EQ_TAG + name + ext);
+                            }
+                        }
+                    }
+                }
+                if (condition.hasStart()) {
+                    for (String name : condition.getNames()) {
+                        if (name.isEmpty()) {
+                            acceptsAllBuilder = true;
+                        }
+                        keys.add(PREFIX_TAG + name.substring(0, Math.min(name.length(), AFFIX_LENGTH)));
+                    }
+                }
+                if (condition.hasEnd() && !condition.hasEq() && !condition.hasStart()) {
+                    for (String ext : condition.getExtensions()) {
+                        if (ext.isEmpty()) {
+                            acceptsAllBuilder = true;
+                        }
+                        String suffix = ext.substring(Math.max(0, ext.length() - AFFIX_LENGTH));
+                        keys.add(SUFFIX_TAG + new StringBuilder(suffix).reverse().toString());
+                    }
+                }
+            }
+            if (conservative) {
+                conservativeModelsBuilder.add(model);
+            }
+        }
+
+        int nbBits = Integer.highestOneBit(Math.max(keys.size() * BITS_PER_KEY, 64) - 1) << 1;
+        this.bits = new long[nbBits >>> 6];
+        this.mask = nbBits - 1;
+        for (String key : keys) {
+            add(hash(key, 1, key.length(), key.charAt(0)));
+        }
+        this.acceptsAll = acceptsAllBuilder;
+        this.conservativeModels = conservativeModelsBuilder.toArray(new Model[0]);
+    }
+
+    /**
+     * Indicates if given condition may match whatever the file and parent names are. Same as the residual
+     * conditions of {@link ModelMatcher}, except parent-only conditions, which are indexed by parent name.
+     */
+    private static boolean isConservative(@NotNull ModelCondition condition) {
+        if (condition.hasRegex()) {
+            return true;
+        }
+        if (condition.hasIconEnabler()) {
+            IconEnablerType iconEnablerType = condition.getIconEnablerType();
+            if (iconEnablerType == null || iconEnablerType.getTerminatesConditionEvaluation()) {
+                return true;
+            }
+        }
+        boolean hasNameCondition = condition.hasStart() || condition.hasEq() || condition.hasEnd() || condition.hasMayEnd();
+        return (condition.hasContent() || condition.hasCheckAncestors()) && !hasNameCondition && !condition.hasGlob()
+               && !condition.hasCheckParent();
+    }
+
+    /**
+     * Add the keys of the file names matched by given glob.
+     * @return false if the glob may match any file name.
+     */
+    private static boolean addGlobKeys(@NotNull GlobMatcher globMatcher, @NotNull List<String> keys) {
+        List<GlobMatcher.IndexKey> globKeys = globMatcher.getIndexKeys();
+        if (globKeys == null) {
+            return false;
+        }
+        for (GlobMatcher.IndexKey globKey : globKeys) {
+            String value = globKey.value();
+            switch (globKey.kind()) {
+                case EQ -> keys.add(EQ_TAG + value);
+                case PREFIX -> keys.add(PREFIX_TAG + value.substring(0, Math.min(value.length(), AFFIX_LENGTH)));
+                case SUFFIX -> {
+                    String suffix = value.substring(Math.max(0, value.length() - AFFIX_LENGTH));
+                    keys.add(SUFFIX_TAG + new StringBuilder(suffix).reverse().toString());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates if given path may match a name-based condition. If not, only the {@link #getConservativeModels()
+     * conservative models} may match this path.
+     */
+    public boolean mightMatch(@NotNull NormalizedPath path) {
+        if (this.acceptsAll) {
+            return true;
+        }
+        String source = path.getNameSource();
+        int start = path.getNameStart();
+        int end = path.getNameEnd();
+        if (contains(hash(source, start, end, EQ_TAG))) {
+            return true;
+        }
+        int prefixHash = PREFIX_TAG;
+        int suffixHash = SUFFIX_TAG;
+        for (int i = 0; i < AFFIX_LENGTH && i < end - start; i++) {
+            prefixHash = 31 * prefixHash + source.charAt(start + i);
+            suffixHash = 31 * suffixHash + source.charAt(end - 1 - i);
+            if (contains(prefixHash) || contains(suffixHash)) {
+                return true;
+            }
+        }
+        String parentSource = path.getParentSource();
+        return parentSource != null && contains(hash(parentSource, path.getParentStart(), path.getParentEnd(), PARENT_TAG));
+    }
+
+    /**
+     * Get the models, in priority order, which hold conditions that don't depend on the file name.
+     */
+    public @NotNull Model[] getConservativeModels() {
+        return this.conservativeModels;
+    }
+
+    private void add(int hash) {
+        int h1 = hash ^ (hash >>> 16);
+        int h2 = mix(hash);
+        for (int i = 0; i < NB_HASHES; i++) {
+            int bit = (h1 + i * h2) & this.mask;
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean contains(int hash) {
+        int h1 = hash ^ (hash >>> 16);
+        int h2 = mix(hash);
+        for (int i = 0; i < NB_HASHES; i++) {
+            int bit = (h1 + i * h2) & this.mask;
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash a tagged region of given text, compatible with the incremental hashes computed by {@link #mightMatch}.
+     * Suffix keys are stored reversed, so they are hashed like the file name read from its end.
+     */
+    private static int hash(@NotNull String text, int start, int end, char tag) {
+        int h = tag;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 15)) | 1; // odd, so probes don't repeat
+    }
+}
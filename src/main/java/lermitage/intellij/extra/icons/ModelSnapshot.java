@@ -0,0 +1,170 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import com.intellij.openapi.project.Project;
+import lermitage.intellij.extra.icons.cfg.services.SettingsIDEService;
+import lermitage.intellij.extra.icons.cfg.services.SettingsProjectService;
+import lermitage.intellij.extra.icons.cfg.services.SettingsService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Immutable view of the models which are effective for a project: user models first (IDE and/or project
+ * ones, depending on project settings), then built-in models. Disabled models are already removed, and
+ * models are split by {@link ModelType}. A snapshot is bound to a {@link SettingsService#getModelsVersion()
+ * models version}, so it has to be rebuilt once this version changes.
+ */
+public final class ModelSnapshot {
+
+    private static final Model[] NO_MODELS = new Model[0];
+
+    private final long version;
+    private final Model[] fileUserModels;
+    private final Model[] dirUserModels;
+    private final ModelMatcher fileModelsMatcher;
+    private final ModelMatcher dirModelsMatcher;
+    private final RegexAutomaton regexAutomaton;
+    private final AncestorNameIndex ancestorNameIndex;
+    private final ModelRejectFilter fileRejectFilter;
+    private final ModelRejectFilter dirRejectFilter;
+
+    private ModelSnapshot(long version, List<Model> userModels, List<Model> builtInModels) {
+        this.version = version;
+        this.fileUserModels = userModels.stream().filter(model -> model.getModelType() == ModelType.FILE).toArray(Model[]::new);
+        this.dirUserModels = userModels.stream().filter(model -> model.getModelType() == ModelType.DIR).toArray(Model[]::new);
+        this.fileModelsMatcher = new ModelMatcher(builtInModels.stream().filter(model -> model.getModelType() == ModelType.FILE).toList());
+        this.dirModelsMatcher = new ModelMatcher(builtInModels.stream().filter(model -> model.getModelType() == ModelType.DIR).toList());
+        this.regexAutomaton = new RegexAutomaton(Stream.concat(userModels.stream(), builtInModels.stream())
+            .flatMap(model -> model.getConditions().stream())
+            .filter(condition -> condition.isEnabled() && condition.hasRegex() && condition.getRegex() != null)
+            .map(ModelCondition::getRegex)
+            .collect(Collectors.toCollection(LinkedHashSet::new)));
+        this.ancestorNameIndex = new AncestorNameIndex(Stream.concat(userModels.stream(), builtInModels.stream())
+            .flatMap(model -> model.getConditions().stream())
+            .filter(condition -> condition.isEnabled() && condition.hasCheckAncestors())
+            .flatMap(condition -> condition.getAncestors().stream())
+            .collect(Collectors.toCollection(LinkedHashSet::new)));
+        this.fileRejectFilter = new ModelRejectFilter(Stream.concat(userModels.stream(), builtInModels.stream())
+            .filter(model -> model.getModelType() == ModelType.FILE).toList());
+        this.dirRejectFilter = new ModelRejectFilter(Stream.concat(userModels.stream(), builtInModels.stream())
+            .filter(model -> model.getModelType() == ModelType.DIR).toList());
+    }
+
+    /**
+     * Build the snapshot of effective models for given project.
+     * @param project project, or null to use IDE settings only.
+     * @param builtInModels the built-in models, in priority order. Their 'enabled' field and the disabled model
+     *                      IDs of the settings are applied by this method.
+     */
+    public static @NotNull ModelSnapshot create(@Nullable Project project, @NotNull List<Model> builtInModels) {
+        long version = SettingsService.getModelsVersion(); // read before the settings, so a concurrent change makes this snapshot outdated
+
+        SettingsService bestSettingsService = SettingsIDEService.getInstance();
+        List<Model> userModels = new ArrayList<>();
+        if (project != null) {
+            SettingsProjectService settingsProjectService = SettingsProjectService.getInstance(project);
+            if (settingsProjectService.isOverrideIDESettings()) {
+                bestSettingsService = settingsProjectService;
+                if (settingsProjectService.isAddToIDEUserIcons()) {
+                    userModels.addAll(SettingsIDEService.getInstance().getCustomModels());
+                }
+                userModels.addAll(settingsProjectService.getCustomModels());
+            }
+        }
+        if (bestSettingsService instanceof SettingsIDEService) {
+            userModels.addAll(SettingsIDEService.getInstance().getCustomModels());
+        }
+
+        Set<String> disabledModelIdsSet = new HashSet<>(bestSettingsService.getDisabledModelIds());
+        BitSet enabledOrdinals = enabledOrdinals(builtInModels, disabledModelIdsSet);
+        return new ModelSnapshot(version,
+            userModels.stream().filter(model -> isEffective(model, enabledOrdinals, disabledModelIdsSet)).toList(),
+            builtInModels.stream().filter(model -> isEffective(model, enabledOrdinals, disabledModelIdsSet)).toList());
+    }
+
+    /**
+     * Indicates if given built-in or user model is enabled.
+     * @param enabledOrdinals enabled state of built-in models, see {@link #enabledOrdinals(Collection, Collection)}.
+     * @param disabledModelIds the IDs of the models disabled in settings, used for user models only.
+     */
+    public static boolean isEffective(@NotNull Model model, @NotNull BitSet enabledOrdinals, @NotNull Set<String> disabledModelIds) {
+        if (model.getOrdinal() >= 0) {
+            return enabledOrdinals.get(model.getOrdinal());
+        }
+        return model.isEnabled() && !disabledModelIds.contains(model.getId());
+    }
+
+    /**
+     * Compute the enabled state of built-in models, indexed by {@link Model#getOrdinal() ordinal}.
+     * @param registeredModels built-in models. Models without ordinal are ignored.
+     * @param disabledModelIds the IDs of the models disabled in settings.
+     */
+    public static @NotNull BitSet enabledOrdinals(@NotNull Collection<Model> registeredModels, @NotNull Collection<String> disabledModelIds) {
+        Set<String> disabledModelIdsSet = disabledModelIds instanceof Set<String> set ? set : new HashSet<>(disabledModelIds);
+        BitSet enabledOrdinals = new BitSet(registeredModels.size());
+        for (Model model : registeredModels) {
+            if (model.getOrdinal() >= 0 && model.isEnabled() && !disabledModelIdsSet.contains(model.getId())) {
+                enabledOrdinals.set(model.getOrdinal());
+            }
+        }
+        return enabledOrdinals;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public boolean isUpToDate() {
+        return this.version == SettingsService.getModelsVersion();
+    }
+
+    /**
+     * Get the enabled user models of given type, ordered by priority.
+     */
+    public @NotNull Model[] getUserModels(@NotNull ModelType modelType) {
+        return switch (modelType) {
+            case FILE -> this.fileUserModels;
+            case DIR -> this.dirUserModels;
+            default -> NO_MODELS;
+        };
+    }
+
+    /**
+     * Get the automaton of the regular expressions used by enabled models, user and built-in ones.
+     */
+    public @NotNull RegexAutomaton getRegexAutomaton() {
+        return this.regexAutomaton;
+    }
+
+    /**
+     * Get the folder names checked by the ancestor conditions of enabled models, user and built-in ones.
+     */
+    public @NotNull AncestorNameIndex getAncestorNameIndex() {
+        return this.ancestorNameIndex;
+    }
+
+    /**
+     * Get the matcher of the enabled built-in models of given type.
+     */
+    public @NotNull ModelMatcher getBuiltInModelsMatcher(@NotNull ModelType modelType) {
+        return modelType == ModelType.DIR ? this.dirModelsMatcher : this.fileModelsMatcher;
+    }
+
+    /**
+     * Get the fast-reject filter of the enabled models of given type, user and built-in ones.
+     */
+    public @NotNull ModelRejectFilter getRejectFilter(@NotNull ModelType modelType) {
+        return modelType == ModelType.DIR ? this.dirRejectFilter : this.fileRejectFilter;
+    }
+}
@@ -0,0 +1,358 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.Set;
+
+/**
+ * Lowercase view of a file path, computed once per icon lookup. The file name and the parent folder name
+ * are regions (string and offsets) of the full path, so conditions are checked without allocating substrings.
+ * Substrings are created on demand only, by {@link #getName()} and {@link #getParentName()}.
+ */
+public final class NormalizedPath {
+
+    private final @Nullable String fullPath;
+
+    private final @NotNull String nameSource;
+    private final int nameStart;
+    private final int nameEnd;
+
+    private final @Nullable String parentSource;
+    private final int parentStart;
+    private final int parentEnd;
+
+    private String name;
+    private String parentName;
+
+    private RegexAutomaton regexAutomaton;
+    private BitSet regexMatches;
+    private boolean regexMatchesUnknown;
+    private int[] segmentBounds;
+    private AncestorNameIndex ancestorNameIndex;
+
+    private @Nullable VirtualFile file;
+    private boolean contentChecked;
+    private boolean contentPending;
+
+    private NormalizedPath(@Nullable String fullPath,
+                           @NotNull String nameSource, int nameStart, int nameEnd,
+                           @Nullable String parentSource, int parentStart, int parentEnd) {
+        this.fullPath = fullPath;
+        this.nameSource = nameSource;
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+        this.parentSource = parentSource;
+        this.parentStart = parentStart;
+        this.parentEnd = parentEnd;
+    }
+
+    /**
+     * Normalize the path of given file. VFS paths are system-independent, so lowercasing the path is the only
+     * allocation, and it is skipped if the path is already lowercase.
+     */
+    public static @NotNull NormalizedPath of(@NotNull VirtualFile file) {
+        NormalizedPath path = ofFullPath(file.getPath().toLowerCase());
+        path.file = file;
+        return path;
+    }
+
+    /**
+     * Create a path view from a lowercase and system-independent path.
+     */
+    public static @NotNull NormalizedPath ofFullPath(@NotNull String lowercaseFullPath) {
+        int lastSlash = lowercaseFullPath.lastIndexOf('/');
+        if (lastSlash < 0) {
+            return new NormalizedPath(lowercaseFullPath, lowercaseFullPath, 0, lowercaseFullPath.length(), null, 0, 0);
+        }
+        int parentStart = lowercaseFullPath.lastIndexOf('/', lastSlash - 1) + 1;
+        return new NormalizedPath(lowercaseFullPath,
+            lowercaseFullPath, lastSlash + 1, lowercaseFullPath.length(),
+            lowercaseFullPath, parentStart, lastSlash);
+    }
+
+    /**
+     * Create a path view from already split, lowercase parts.
+     * @param parentName parent folder name, or null if unknown.
+     * @param fileName file name.
+     * @param fullPath full path, or null if unknown.
+     */
+    public static @NotNull NormalizedPath of(@Nullable String parentName, @NotNull String fileName, @Nullable String fullPath) {
+        NormalizedPath path = new NormalizedPath(fullPath,
+            fileName, 0, fileName.length(),
+            parentName, 0, parentName == null ? 0 : parentName.length());
+        path.name = fileName;
+        path.parentName = parentName;
+        return path;
+    }
+
+    /**
+     * Get the full path, lowercase, or null if unknown.
+     */
+    public @Nullable String getFullPath() {
+        return this.fullPath;
+    }
+
+    /**
+     * Get the file this path was created from, or null if created from strings. Content conditions need it.
+     */
+    public @Nullable VirtualFile getFile() {
+        return this.file;
+    }
+
+    /**
+     * Remember that a content condition was checked: the result of this lookup depends on the file's content.
+     */
+    void markContentChecked() {
+        this.contentChecked = true;
+    }
+
+    public boolean isContentChecked() {
+        return this.contentChecked;
+    }
+
+    /**
+     * Remember that a content condition was checked before the file's content was read: the result of this lookup
+     * is temporary.
+     */
+    void markContentPending() {
+        this.contentPending = true;
+    }
+
+    public boolean isContentPending() {
+        return this.contentPending;
+    }
+
+    public @NotNull String getName() {
+        if (this.name == null) {
+            this.name = this.nameSource.substring(this.nameStart, this.nameEnd);
+        }
+        return this.name;
+    }
+
+    public @Nullable String getParentName() {
+        if (this.parentName == null && this.parentSource != null) {
+            this.parentName = this.parentSource.substring(this.parentStart, this.parentEnd);
+        }
+        return this.parentName;
+    }
+
+    /**
+     * The string which contains the file name, see {@link #getNameStart()} and {@link #getNameEnd()}.
+     */
+    @NotNull String getNameSource() {
+        return this.nameSource;
+    }
+
+    int getNameStart() {
+        return this.nameStart;
+    }
+
+    int getNameEnd() {
+        return this.nameEnd;
+    }
+
+    /**
+     * The string which contains the parent folder name, or null if unknown. See {@link #getParentStart()} and
+     * {@link #getParentEnd()}.
+     */
+    @Nullable String getParentSource() {
+        return this.parentSource;
+    }
+
+    int getParentStart() {
+        return this.parentStart;
+    }
+
+    int getParentEnd() {
+        return this.parentEnd;
+    }
+
+    public int nameLength() {
+        return this.nameEnd - this.nameStart;
+    }
+
+    /**
+     * Get the hash code of the file name, equal to {@code getName().hashCode()}, without extracting the name.
+     */
+    public int nameHashCode() {
+        int hash = 0;
+        for (int i = this.nameStart; i < this.nameEnd; i++) {
+            hash = 31 * hash + this.nameSource.charAt(i);
+        }
+        return hash;
+    }
+
+    public boolean nameEquals(@NotNull String name) {
+        return nameLength() == name.length() && this.nameSource.startsWith(name, this.nameStart);
+    }
+
+    /**
+     * Indicates if the file name equals {@code base + extension}.
+     */
+    public boolean nameEquals(@NotNull String base, @NotNull String extension) {
+        return nameLength() == base.length() + extension.length()
+            && this.nameSource.startsWith(base, this.nameStart)
+            && this.nameSource.startsWith(extension, this.nameStart + base.length());
+    }
+
+    public boolean nameStartsWith(@NotNull String prefix) {
+        return nameLength() >= prefix.length() && this.nameSource.startsWith(prefix, this.nameStart);
+    }
+
+    public boolean nameEndsWith(@NotNull String suffix) {
+        return nameLength() >= suffix.length() && this.nameSource.startsWith(suffix, this.nameEnd - suffix.length());
+    }
+
+    public boolean nameContains(char c) {
+        int idx = this.nameSource.indexOf(c, this.nameStart);
+        return idx >= 0 && idx < this.nameEnd;
+    }
+
+    /**
+     * Indicates if the parent folder name is one of given names.
+     */
+    public boolean isParentIn(@NotNull Set<String> names) {
+        if (this.parentSource == null) {
+            return false;
+        }
+        int parentLength = this.parentEnd - this.parentStart;
+        for (String name : names) {
+            if (name.length() == parentLength && this.parentSource.startsWith(name, this.parentStart)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates if the file is located directly in given folder, ignoring case.
+     */
+    public boolean isDirectlyIn(@NotNull String folderPath) {
+        return this.fullPath != null
+            && this.fullPath.length() == folderPath.length() + 1 + nameLength()
+            && this.fullPath.regionMatches(true, 0, folderPath, 0, folderPath.length())
+            && this.fullPath.charAt(folderPath.length()) == '/'
+            && this.fullPath.regionMatches(true, folderPath.length() + 1, this.nameSource, this.nameStart, nameLength());
+    }
+
+    /**
+     * Get the index of the path relative to given folder (ignoring case), or -1 if the file is not located in this folder.
+     */
+    public int relativePathStart(@NotNull String folderPath) {
+        int folderPathLength = folderPath.length();
+        if (this.fullPath != null
+            && this.fullPath.length() > folderPathLength + 1
+            && this.fullPath.regionMatches(true, 0, folderPath, 0, folderPathLength)
+            && this.fullPath.charAt(folderPathLength) == '/') {
+            return folderPathLength + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Indicates if one of the folders containing the file, at any depth, has one of given names. Scans the full path,
+     * or checks the parent folder only if the full path is unknown.
+     */
+    public boolean isAncestorIn(@NotNull Set<String> names) {
+        int[] bounds = getSegmentBounds();
+        if (bounds == null) {
+            return isParentIn(names);
+        }
+        for (int segment = 0; segment < bounds.length / 2 - 1; segment++) {
+            int start = bounds[segment * 2];
+            int length = bounds[segment * 2 + 1] - start;
+            for (String name : names) {
+                if (name.length() == length && this.fullPath.startsWith(name, start)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Use given index to check ancestor conditions against the memoized ancestors of the file's parent folder,
+     * instead of scanning the full path.
+     */
+    public void attachAncestorNameIndex(@Nullable AncestorNameIndex ancestorNameIndex) {
+        this.ancestorNameIndex = ancestorNameIndex;
+    }
+
+    @Nullable AncestorNameIndex getAncestorNameIndex() {
+        return this.ancestorNameIndex;
+    }
+
+    /**
+     * Use given automaton to match regular expressions against the full path, see {@link #matchesRegex(String)}.
+     */
+    public void attachRegexAutomaton(@Nullable RegexAutomaton regexAutomaton) {
+        this.regexAutomaton = regexAutomaton;
+        this.regexMatches = null;
+        this.regexMatchesUnknown = false;
+    }
+
+    /**
+     * Indicates if given regular expression fully matches the full path. The attached automaton is run once, on first
+     * call, and its result is reused for the other regular expressions.
+     * @return null if the full path is unknown or if the regular expression or the full path is not handled by the
+     * attached automaton.
+     */
+    public @Nullable Boolean matchesRegex(@NotNull String regex) {
+        if (this.regexAutomaton == null || this.fullPath == null || this.regexMatchesUnknown) {
+            return null;
+        }
+        int regexIndex = this.regexAutomaton.indexOf(regex);
+        if (regexIndex < 0) {
+            return null;
+        }
+        if (this.regexMatches == null) {
+            this.regexMatches = this.regexAutomaton.match(this.fullPath);
+            if (this.regexMatches == null) {
+                this.regexMatchesUnknown = true;
+                return null;
+            }
+        }
+        return this.regexMatches.get(regexIndex);
+    }
+
+    /**
+     * Get the start and end offsets of each folder and file name of the full path, in pairs, computed once and shared
+     * by glob conditions. Empty names (like before the leading {@code /}) are skipped.
+     * @return null if the full path is unknown.
+     */
+    @Nullable int[] getSegmentBounds() {
+        if (this.segmentBounds == null && this.fullPath != null) {
+            int nbSegments = 0;
+            for (int i = 0; i < this.fullPath.length(); i++) {
+                if (this.fullPath.charAt(i) != '/' && (i == 0 || this.fullPath.charAt(i - 1) == '/')) {
+                    nbSegments++;
+                }
+            }
+            int[] bounds = new int[nbSegments * 2];
+            int segment = 0;
+            int start = 0;
+            for (int i = 0; i <= this.fullPath.length(); i++) {
+                if (i == this.fullPath.length() || this.fullPath.charAt(i) == '/') {
+                    if (i > start) {
+                        bounds[segment * 2] = start;
+                        bounds[segment * 2 + 1] = i;
+                        segment++;
+                    }
+                    start = i + 1;
+                }
+            }
+            this.segmentBounds = bounds;
+        }
+        return this.segmentBounds;
+    }
+
+    @Override
+    public String toString() {
+        return this.fullPath == null ? getName() : this.fullPath;
+    }
+}
@@ -0,0 +1,686 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combined automaton of multiple regular expressions: a single pass over a text tells which regular
+ * expressions fully match it, with the same result as {@link java.util.regex.Matcher#matches()}.
+ * <p>
+ * Regular expressions are compiled to a single NFA, then converted lazily to a DFA: DFA states are created
+ * on first use and cached, so the cost of a match is one table lookup per character once the automaton is
+ * warmed up. Only a subset of the {@link java.util.regex.Pattern} syntax is supported: literals, escapes,
+ * character classes, {@code .}, groups, alternations, greedy and lazy quantifiers, and {@code ^}/{@code $}
+ * at the bounds of the expression. Other regular expressions are ignored by the automaton, see
+ * {@link #indexOf(String)}, and have to be checked with {@link java.util.regex.Pattern}.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class RegexAutomaton {
+
+    /** Maximum number of cached DFA states. Once reached, texts which need a new state are left to Pattern. */
+    private static final int MAX_DFA_STATES = 4096;
+    /** Maximum number of copies of an expression when expanding {@code {n,m}} quantifiers. */
+    private static final int MAX_REPETITIONS = 32;
+    private static final char ASCII_LIMIT = 128;
+
+    private final Map<String, Integer> regexIndexes = new HashMap<>();
+
+    // NFA: per state, epsilon transitions, and character transitions (char set + target)
+    private final int[][] nfaEpsilons;
+    private final CharSet[][] nfaEdgeSets;
+    private final int[][] nfaEdgeTargets;
+    private final int[] nfaAccepts; // index of the regex accepted by each state, or -1
+
+    private final Map<StateKey, DfaState> dfaStates = new HashMap<>(); // guarded by this
+    private final DfaState initialState;
+    /** Set once {@link #MAX_DFA_STATES} is reached: texts which need a new state are then left to Pattern without locking. */
+    private volatile boolean saturated;
+
+    /**
+     * Compile given regular expressions. Unsupported regular expressions are ignored.
+     */
+    public RegexAutomaton(@NotNull Collection<String> regexes) {
+        NfaBuilder builder = new NfaBuilder();
+        int nfaStart = builder.newState();
+        for (String regex : regexes) {
+            if (this.regexIndexes.containsKey(regex)) {
+                continue;
+            }
+            Node node = new Parser(regex).parse();
+            if (node == null) {
+                continue; // not supported
+            }
+            int regexIndex = this.regexIndexes.size();
+            int start = builder.newState();
+            builder.addEpsilon(nfaStart, start);
+            int end = node.compile(builder, start);
+            builder.accepts.set(end, regexIndex);
+            this.regexIndexes.put(regex, regexIndex);
+        }
+        int nbStates = builder.epsilons.size();
+        this.nfaEpsilons = new int[nbStates][];
+        this.nfaEdgeSets = new CharSet[nbStates][];
+        this.nfaEdgeTargets = new int[nbStates][];
+        this.nfaAccepts = new int[nbStates];
+        for (int state = 0; state < nbStates; state++) {
+            this.nfaEpsilons[state] = builder.epsilons.get(state).stream().mapToInt(Integer::intValue).toArray();
+            this.nfaEdgeSets[state] = builder.edgeSets.get(state).toArray(new CharSet[0]);
+            this.nfaEdgeTargets[state] = builder.edgeTargets.get(state).stream().mapToInt(Integer::intValue).toArray();
+            this.nfaAccepts[state] = builder.accepts.get(state);
+        }
+        BitSet initialNfaStates = new BitSet(nbStates);
+        initialNfaStates.set(nfaStart);
+        this.initialState = getOrCreateState(closure(initialNfaStates)); // never null, the cache is empty
+    }
+
+    /**
+     * Get the index of given regular expression in the results of {@link #match(CharSequence)}, or -1 if this
+     * regular expression is not supported by the automaton.
+     */
+    public int indexOf(@NotNull String regex) {
+        Integer regexIndex = this.regexIndexes.get(regex);
+        return regexIndex == null ? -1 : regexIndex;
+    }
+
+    /**
+     * Indicates if none of the regular expressions is supported by the automaton.
+     */
+    public boolean isEmpty() {
+        return this.regexIndexes.isEmpty();
+    }
+
+    /**
+     * Find the regular expressions which fully match given text. The automaton steps over UTF-16 chars, whereas
+     * {@link java.util.regex.Pattern} steps over code points: a text with surrogate chars is left to Pattern.
+     * Once the DFA states cache is full, a text which needs a new state is left to Pattern too, rather than
+     * simulating the NFA under the automaton's lock.
+     * @return the indexes of matching regular expressions, see {@link #indexOf(String)}, or null if the text contains
+     * surrogate chars or needs a new DFA state once the cache is full. Must not be modified.
+     */
+    public @Nullable BitSet match(@NotNull CharSequence text) {
+        DfaState state = this.initialState;
+        for (int i = 0, length = text.length(); i < length && !state.dead; i++) {
+            char c = text.charAt(i);
+            DfaState next = c < ASCII_LIMIT ? state.asciiNext[c] : null;
+            if (next == null) {
+                if (Character.isSurrogate(c) || this.saturated) {
+                    return null;
+                }
+                next = computeNext(state, c);
+                if (next == null) {
+                    return null;
+                }
+            }
+            state = next;
+        }
+        return state.accepts;
+    }
+
+    /**
+     * Get the state reached from given state with given char, computed and cached on first use.
+     * @return null if the state is new and the cache is full.
+     */
+    private synchronized @Nullable DfaState computeNext(@NotNull DfaState state, char c) {
+        if (c < ASCII_LIMIT && state.asciiNext[c] != null) {
+            return state.asciiNext[c];
+        }
+        if (c >= ASCII_LIMIT && state.nonAsciiNext != null) {
+            DfaState next = state.nonAsciiNext.get(c);
+            if (next != null) {
+                return next;
+            }
+        }
+        BitSet moved = new BitSet(this.nfaAccepts.length);
+        for (int nfaState : state.nfaStates) {
+            CharSet[] edgeSets = this.nfaEdgeSets[nfaState];
+            for (int i = 0; i < edgeSets.length; i++) {
+                if (edgeSets[i].contains(c)) {
+                    moved.set(this.nfaEdgeTargets[nfaState][i]);
+                }
+            }
+        }
+        DfaState next = getOrCreateState(closure(moved));
+        if (next == null) {
+            return null;
+        }
+        if (c < ASCII_LIMIT) {
+            state.asciiNext[c] = next;
+        } else {
+            if (state.nonAsciiNext == null) {
+                state.nonAsciiNext = new HashMap<>();
+            }
+            state.nonAsciiNext.put(c, next);
+        }
+        return next;
+    }
+
+    private @NotNull int[] closure(@NotNull BitSet nfaStates) {
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        nfaStates.stream().forEach(toVisit::push);
+        while (!toVisit.isEmpty()) {
+            int nfaState = toVisit.pop();
+            for (int target : this.nfaEpsilons[nfaState]) {
+                if (!nfaStates.get(target)) {
+                    nfaStates.set(target);
+                    toVisit.push(target);
+                }
+            }
+        }
+        return nfaStates.stream().toArray();
+    }
+
+    /**
+     * Get the DFA state of given NFA states, created and cached on first use.
+     * @return null if the state is new and the cache is full.
+     */
+    private synchronized @Nullable DfaState getOrCreateState(@NotNull int[] nfaStates) {
+        StateKey key = new StateKey(nfaStates);
+        DfaState state = this.dfaStates.get(key);
+        if (state == null) {
+            if (this.dfaStates.size() >= MAX_DFA_STATES) {
+                this.saturated = true;
+                return null;
+            }
+            BitSet accepts = new BitSet();
+            for (int nfaState : nfaStates) {
+                if (this.nfaAccepts[nfaState] >= 0) {
+                    accepts.set(this.nfaAccepts[nfaState]);
+                }
+            }
+            state = new DfaState(nfaStates, accepts);
+            this.dfaStates.put(key, state);
+        }
+        return state;
+    }
+
+    private static final class DfaState {
+
+        final int[] nfaStates;
+        final BitSet accepts;
+        final boolean dead;
+        final DfaState[] asciiNext = new DfaState[ASCII_LIMIT];
+        Map<Character, DfaState> nonAsciiNext; // guarded by the automaton
+
+        DfaState(int[] nfaStates, BitSet accepts) {
+            this.nfaStates = nfaStates;
+            this.accepts = accepts;
+            this.dead = nfaStates.length == 0;
+        }
+    }
+
+    private record StateKey(int[] nfaStates) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey that && Arrays.equals(this.nfaStates, that.nfaStates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.nfaStates);
+        }
+    }
+
+    private static final class NfaBuilder {
+
+        final List<List<Integer>> epsilons = new ArrayList<>();
+        final List<List<CharSet>> edgeSets = new ArrayList<>();
+        final List<List<Integer>> edgeTargets = new ArrayList<>();
+        final List<Integer> accepts = new ArrayList<>();
+
+        int newState() {
+            this.epsilons.add(new ArrayList<>(2));
+            this.edgeSets.add(new ArrayList<>(1));
+            this.edgeTargets.add(new ArrayList<>(1));
+            this.accepts.add(-1);
+            return this.epsilons.size() - 1;
+        }
+
+        void addEpsilon(int from, int to) {
+            this.epsilons.get(from).add(to);
+        }
+
+        void addEdge(int from, CharSet charSet, int to) {
+            this.edgeSets.get(from).add(charSet);
+            this.edgeTargets.get(from).add(to);
+        }
+    }
+
+    /**
+     * Regular expression syntax tree. Each node compiles itself to the NFA, starting from a given state, and
+     * returns its end state.
+     */
+    private sealed interface Node {
+
+        int compile(NfaBuilder builder, int from);
+
+        record Chars(CharSet charSet) implements Node {
+            @Override
+            public int compile(NfaBuilder builder, int from) {
+                int to = builder.newState();
+                builder.addEdge(from, this.charSet, to);
+                return to;
+            }
+        }
+
+        record Sequence(List<Node> nodes) implements Node {
+            @Override
+            public int compile(NfaBuilder builder, int from) {
+                int end = from;
+                for (Node node : this.nodes) {
+                    end = node.compile(builder, end);
+                }
+                return end;
+            }
+        }
+
+        record Alternation(List<Node> alternatives) implements Node {
+            @Override
+            public int compile(NfaBuilder builder, int from) {
+                int end = builder.newState();
+                for (Node alternative : this.alternatives) {
+                    int start = builder.newState();
+                    builder.addEpsilon(from, start);
+                    builder.addEpsilon(alternative.compile(builder, start), end);
+                }
+                return end;
+            }
+        }
+
+        record Repetition(Node node, int min, int max) implements Node { // max is -1 if unbounded
+            @Override
+            public int compile(NfaBuilder builder, int from) {
+                int end = from;
+                for (int i = 0; i < this.min; i++) {
+                    end = this.node.compile(builder, end);
+                }
+                if (this.max < 0) {
+                    int loop = builder.newState();
+                    builder.addEpsilon(end, loop);
+                    builder.addEpsilon(this.node.compile(builder, loop), loop);
+                    return loop;
+                }
+                for (int i = this.min; i < this.max; i++) {
+                    int start = builder.newState();
+                    builder.addEpsilon(end, start);
+                    int optionalEnd = builder.newState();
+                    builder.addEpsilon(start, optionalEnd);
+                    builder.addEpsilon(this.node.compile(builder, start), optionalEnd);
+                    end = optionalEnd;
+                }
+                return end;
+            }
+        }
+    }
+
+    /**
+     * Parser of the supported subset of {@link java.util.regex.Pattern} syntax.
+     */
+    private static final class Parser {
+
+        private final String regex;
+        private int pos = 0;
+        private boolean supported = true;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        /**
+         * Parse the regular expression, or return null if it's not supported.
+         */
+        @Nullable Node parse() {
+            Node node = parseAlternation();
+            if (!this.supported || this.pos != this.regex.length()) {
+                return null;
+            }
+            return node;
+        }
+
+        private Node unsupported() {
+            this.supported = false;
+            this.pos = this.regex.length();
+            return new Node.Sequence(List.of());
+        }
+
+        private boolean hasNext() {
+            return this.supported && this.pos < this.regex.length();
+        }
+
+        private char peek() {
+            return this.regex.charAt(this.pos);
+        }
+
+        private Node parseAlternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseSequence());
+            while (hasNext() && peek() == '|') {
+                this.pos++;
+                alternatives.add(parseSequence());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Node.Alternation(alternatives);
+        }
+
+        private Node parseSequence() {
+            List<Node> nodes = new ArrayList<>();
+            while (hasNext() && peek() != '|' && peek() != ')') {
+                Node atom = parseAtom();
+                if (atom != null) {
+                    nodes.add(parseQuantifier(atom));
+                }
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Node.Sequence(nodes);
+        }
+
+        private @Nullable Node parseAtom() {
+            char c = peek();
+            this.pos++;
+            switch (c) {
+                case '^':
+                    // start anchor: always satisfied when the whole text has to match, as long as it starts the expression
+                    return this.pos == 1 ? null : unsupported();
+                case '$':
+                    // end anchor: always satisfied when the whole text has to match, as long as it ends the expression
+                    return this.pos == this.regex.length() ? null : unsupported();
+                case '.':
+                    return new Node.Chars(CharSet.ANY_BUT_LINE_TERMINATORS);
+                case '[':
+                    return new Node.Chars(parseCharClass());
+                case '(':
+                    if (hasNext() && peek() == '?') {
+                        if (this.pos + 1 < this.regex.length() && this.regex.charAt(this.pos + 1) == ':') {
+                            this.pos += 2; // non-capturing group
+                        } else {
+                            return unsupported(); // lookaround, inline flags, named group, etc.
+                        }
+                    }
+                    Node group = parseAlternation();
+                    if (!hasNext() || peek() != ')') {
+                        return unsupported();
+                    }
+                    this.pos++;
+                    return group;
+                case '\\':
+                    return new Node.Chars(parseEscape(false));
+                case '*', '+', '?', '{', ')':
+                    return unsupported(); // dangling meta character
+                default:
+                    return new Node.Chars(CharSet.of(c));
+            }
+        }
+
+        private Node parseQuantifier(Node atom) {
+            if (!hasNext()) {
+                return atom;
+            }
+            int min;
+            int max;
+            switch (peek()) {
+                case '*' -> {
+                    min = 0;
+                    max = -1;
+                    this.pos++;
+                }
+                case '+' -> {
+                    min = 1;
+                    max = -1;
+                    this.pos++;
+                }
+                case '?' -> {
+                    min = 0;
+                    max = 1;
+                    this.pos++;
+                }
+                case '{' -> {
+                    int close = this.regex.indexOf('}', this.pos);
+                    if (close < 0) {
+                        return unsupported();
+                    }
+                    String[] bounds = this.regex.substring(this.pos + 1, close).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0]);
+                        max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                    } catch (NumberFormatException e) {
+                        return unsupported();
+                    }
+                    if (bounds.length > 2 || min > MAX_REPETITIONS || max > MAX_REPETITIONS || (max >= 0 && max < min)) {
+                        return unsupported();
+                    }
+                    this.pos = close + 1;
+                }
+                default -> {
+                    return atom;
+                }
+            }
+            if (hasNext() && peek() == '?') {
+                this.pos++; // lazy quantifier: same result as a greedy one when the whole text has to match
+            } else if (hasNext() && (peek() == '+' || peek() == '*' || peek() == '{')) {
+                return unsupported(); // possessive quantifier, or quantifier of a quantifier
+            }
+            return new Node.Repetition(atom, min, max);
+        }
+
+        private CharSet parseCharClass() {
+            boolean negated = false;
+            if (hasNext() && peek() == '^') {
+                negated = true;
+                this.pos++;
+            }
+            if (hasNext() && peek() == ']') {
+                unsupported(); // Java doesn't accept empty classes
+                return CharSet.NONE;
+            }
+            CharSet charSet = CharSet.NONE;
+            while (hasNext() && peek() != ']') {
+                char c = peek();
+                this.pos++;
+                CharSet item;
+                if (c == '[' || (c == '&' && hasNext() && peek() == '&')) {
+                    unsupported(); // nested class or intersection
+                    return CharSet.NONE;
+                }
+                if (c == '\\') {
+                    item = parseEscape(true);
+                } else {
+                    item = CharSet.of(c);
+                }
+                if (item.isSingleChar() && hasNext() && peek() == '-'
+                    && this.pos + 1 < this.regex.length() && this.regex.charAt(this.pos + 1) != ']') {
+                    this.pos++; // range
+                    char rangeEndChar = peek();
+                    this.pos++;
+                    CharSet rangeEnd;
+                    if (rangeEndChar == '\\') {
+                        rangeEnd = parseEscape(true);
+                    } else if (rangeEndChar == '[') {
+                        unsupported();
+                        return CharSet.NONE;
+                    } else {
+                        rangeEnd = CharSet.of(rangeEndChar);
+                    }
+                    if (!rangeEnd.isSingleChar() || rangeEnd.singleChar() < item.singleChar()) {
+                        unsupported();
+                        return CharSet.NONE;
+                    }
+                    item = CharSet.range(item.singleChar(), rangeEnd.singleChar());
+                }
+                charSet = charSet.union(item);
+            }
+            if (!hasNext()) {
+                unsupported(); // unclosed class
+                return CharSet.NONE;
+            }
+            this.pos++; // ']'
+            return negated ? charSet.negate() : charSet;
+        }
+
+        private CharSet parseEscape(boolean inCharClass) {
+            if (!hasNext()) {
+                unsupported();
+                return CharSet.NONE;
+            }
+            char c = peek();
+            this.pos++;
+            switch (c) {
+                case 'd':
+                    return CharSet.DIGITS;
+                case 'D':
+                    return CharSet.DIGITS.negate();
+                case 'w':
+                    return CharSet.WORD;
+                case 'W':
+                    return CharSet.WORD.negate();
+                case 's':
+                    return CharSet.WHITESPACES;
+                case 'S':
+                    return CharSet.WHITESPACES.negate();
+                case 't':
+                    return CharSet.of('\t');
+                case 'n':
+                    return CharSet.of('\n');
+                case 'r':
+                    return CharSet.of('\r');
+                case 'f':
+                    return CharSet.of('\f');
+                case 'e':
+                    return CharSet.of('\u001B');
+                case 'a':
+                    return CharSet.of('\u0007');
+                case 'x':
+                    return parseHexEscape(2);
+                case 'u':
+                    return parseHexEscape(4);
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        unsupported(); // back reference, word boundary, unicode class, quotation, etc.
+                        return CharSet.NONE;
+                    }
+                    return CharSet.of(c);
+            }
+        }
+
+        private CharSet parseHexEscape(int nbDigits) {
+            if (this.pos + nbDigits > this.regex.length()) {
+                unsupported();
+                return CharSet.NONE;
+            }
+            try {
+                char c = (char) Integer.parseInt(this.regex.substring(this.pos, this.pos + nbDigits), 16);
+                this.pos += nbDigits;
+                return CharSet.of(c);
+            } catch (NumberFormatException e) {
+                unsupported();
+                return CharSet.NONE;
+            }
+        }
+    }
+
+    /**
+     * Immutable set of chars, stored as sorted and disjoint inclusive ranges.
+     */
+    private static final class CharSet {
+
+        static final CharSet NONE = new CharSet(new char[0]);
+        static final CharSet DIGITS = range('0', '9');
+        static final CharSet WORD = range('a', 'z').union(range('A', 'Z')).union(DIGITS).union(of('_'));
+        static final CharSet WHITESPACES = of(' ').union(range('\t', '\r')); // tab, line feed, vertical tab, form feed, carriage return
+        static final CharSet ANY_BUT_LINE_TERMINATORS = of('\n').union(of('\r')).union(of('\u0085'))
+            .union(range('\u2028', '\u2029')).negate();
+
+        private final char[] bounds; // [start0, end0, start1, end1, ...]
+
+        private CharSet(char[] bounds) {
+            this.bounds = bounds;
+        }
+
+        static CharSet of(char c) {
+            return new CharSet(new char[]{c, c});
+        }
+
+        static CharSet range(char start, char end) {
+            return new CharSet(new char[]{start, end});
+        }
+
+        boolean isSingleChar() {
+            return this.bounds.length == 2 && this.bounds[0] == this.bounds[1];
+        }
+
+        char singleChar() {
+            return this.bounds[0];
+        }
+
+        boolean contains(char c) {
+            for (int i = 0; i < this.bounds.length && this.bounds[i] <= c; i += 2) {
+                if (c <= this.bounds[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        CharSet union(CharSet other) {
+            int[] merged = new int[this.bounds.length + other.bounds.length];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < this.bounds.length || j < other.bounds.length) {
+                char start;
+                char end;
+                if (j >= other.bounds.length || (i < this.bounds.length && this.bounds[i] <= other.bounds[j])) {
+                    start = this.bounds[i];
+                    end = this.bounds[i + 1];
+                    i += 2;
+                } else {
+                    start = other.bounds[j];
+                    end = other.bounds[j + 1];
+                    j += 2;
+                }
+                if (count > 0 && start <= merged[count - 1] + 1) {
+                    merged[count - 1] = Math.max(merged[count - 1], end);
+                } else {
+                    merged[count++] = start;
+                    merged[count++] = end;
+                }
+            }
+            char[] result = new char[count];
+            for (int k = 0; k < count; k++) {
+                result[k] = (char) merged[k];
+            }
+            return new CharSet(result);
+        }
+
+        CharSet negate() {
+            List<Character> result = new ArrayList<>();
+            int next = Character.MIN_VALUE;
+            for (int i = 0; i < this.bounds.length; i += 2) {
+                if (this.bounds[i] > next) {
+                    result.add((char) next);
+                    result.add((char) (this.bounds[i] - 1));
+                }
+                next = this.bounds[i + 1] + 1;
+            }
+            if (next <= Character.MAX_VALUE) {
+                result.add((char) next);
+                result.add(Character.MAX_VALUE);
+            }
+            char[] negated = new char[result.size()];
+            for (int i = 0; i < negated.length; i++) {
+                negated[i] = result.get(i);
+            }
+            return new CharSet(negated);
+        }
+    }
+}
@@ -15,8 +15,11 @@ import com.intellij.ui.ToolbarDecorator;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.table.JBTable;
 import com.intellij.util.system.OS;
+import lermitage.intellij.extra.icons.ExtraIconPatcher;
 import lermitage.intellij.extra.icons.ExtraIcons;
 import lermitage.intellij.extra.icons.Model;
+import lermitage.intellij.extra.icons.ModelInterner;
+import lermitage.intellij.extra.icons.ModelSnapshot;
 import lermitage.intellij.extra.icons.ModelTag;
 import lermitage.intellij.extra.icons.ModelType;
 import lermitage.intellij.extra.icons.UITypeIconsPreference;
@@ -29,6 +32,7 @@ import lermitage.intellij.extra.icons.cfg.services.SettingsIDEService;
 import lermitage.intellij.extra.icons.cfg.services.SettingsProjectService;
 import lermitage.intellij.extra.icons.cfg.services.SettingsService;
 import lermitage.intellij.extra.icons.messaging.RefreshIconsNotifierService;
+import lermitage.intellij.extra.icons.services.ModelCacheService;
 import lermitage.intellij.extra.icons.utils.ComboBoxWithImageItem;
 import lermitage.intellij.extra.icons.utils.ComboBoxWithImageRenderer;
 import lermitage.intellij.extra.icons.utils.FileChooserUtils;
@@ -54,6 +58,7 @@ import java.io.File;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -158,6 +163,7 @@ public class SettingsForm implements Configurable, Configurable.NoScroll {
                 String iconPackPath = FileChooserUtils.chooseFile(I18nUtils.RESOURCE_BUNDLE.getString("dialog.import.icon.pack.title"), this.pane, "*.json", "json");
                 if (iconPackPath != null) {
                     IconPack iconPack = IconPackUtils.readPackFromJsonFile(new File(iconPackPath));
+                    ModelInterner.internUserModels(iconPack.getModels());
                     for (Model model : iconPack.getModels()) {
                         if (iconPack.getName() != null && !iconPack.getName().isBlank()) {
                             model.setIconPack(iconPack.getName());
@@ -339,6 +345,14 @@ public class SettingsForm implements Configurable, Configurable.NoScroll {
         }
         bestSettingsService.setCustomModels(this.customModels);
 
+        if (isProjectForm()) {
+            // noinspection DataFlowIssue
+            ModelCacheService.getInstance(this.project).invalidateAll();
+        } else {
+            ModelCacheService.invalidateAllProjects();
+            ExtraIconPatcher.reloadIDEIcons();
+        }
+
         try {
             if (isProjectForm()) {
                 RefreshIconsNotifierService.getInstance().triggerProjectIconEnablersReinit(this.project);
@@ -692,7 +706,7 @@ public class SettingsForm implements Configurable, Configurable.NoScroll {
 
         int currentSelected = this.pluginIconsSettingsTableModel != null ? this.pluginIconsTable.getSelectedRow() : -1;
         this.pluginIconsSettingsTableModel = new PluginIconsSettingsTableModel();
-        List<Model> allRegisteredModels = SettingsService.getAllRegisteredModels();
+        List<Model> allRegisteredModels = new ArrayList<>(SettingsService.getAllRegisteredModels());
         if (isProjectForm()) {
             // IDE icon overrides work at IDE level only, not a project level, that's why
             // the project-level icons list won't show IDE icons.
@@ -701,13 +715,13 @@ public class SettingsForm implements Configurable, Configurable.NoScroll {
                     .collect(Collectors.toList());
         }
         foldersFirst(allRegisteredModels);
-        List<String> disabledModelIds = getBestSettingsService(this.project).getDisabledModelIds();
+        BitSet enabledOrdinals = ModelSnapshot.enabledOrdinals(allRegisteredModels, getBestSettingsService(this.project).getDisabledModelIds());
         final Double additionalUIScale = settingsIDEService.getAdditionalUIScale2();
         final UITypeIconsPreference uiTypeIconsPreference = settingsIDEService.getUiTypeIconsPreference();
         final Icon restartIcon = ExtraIcons.REBOOT; // NON-NLS
         allRegisteredModels.forEach(m -> this.pluginIconsSettingsTableModel.addRow(new Object[]{
                         IconUtils.getIcon(m, additionalUIScale, uiTypeIconsPreference),
-                        !disabledModelIds.contains(m.getId()),
+                        enabledOrdinals.get(m.getOrdinal()),
                         m.getDescription(),
                         Arrays.toString(m.getTags().stream().map(ModelTag::getModelName).toArray()).replaceAll("\\[|]*", "").trim(),
                         Strings.isNullOrEmpty(m.getIdeIcon()) ? null : restartIcon,
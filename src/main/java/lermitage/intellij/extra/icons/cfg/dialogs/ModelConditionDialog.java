@@ -5,6 +5,8 @@ package lermitage.intellij.extra.icons.cfg.dialogs;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.openapi.ui.ValidationInfo;
 import com.intellij.ui.components.JBLabel;
+import lermitage.intellij.extra.icons.FileHeader;
+import lermitage.intellij.extra.icons.GlobMatcher;
 import lermitage.intellij.extra.icons.ModelCondition;
 import lermitage.intellij.extra.icons.utils.I18nUtils;
 import org.jetbrains.annotations.Nullable;
@@ -12,6 +14,7 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.awt.event.ItemEvent;
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -23,8 +26,12 @@ public class ModelConditionDialog extends DialogWrapper {
     private JPanel dialogPanel;
     private JCheckBox regexCheckBox;
     private JTextField regexTextField;
+    private JCheckBox globCheckBox;
+    private JTextField globTextField;
     private JCheckBox parentsCheckBox;
     private JTextField parentsTextField;
+    private JCheckBox ancestorsCheckBox;
+    private JTextField ancestorsTextField;
     private JCheckBox namesCheckBox;
     private JTextField namesTextField;
     private JCheckBox extensionsCheckBox;
@@ -37,6 +44,8 @@ public class ModelConditionDialog extends DialogWrapper {
     private JBLabel tipsLabel;
     private JCheckBox facetsCheckBox;
     private JTextField facetsTextField;
+    private JCheckBox contentCheckBox;
+    private JTextField contentTextField;
 
     public ModelConditionDialog() {
         super(false);
@@ -71,11 +80,21 @@ public class ModelConditionDialog extends DialogWrapper {
             this.regexTextField.setEnabled(selected);
         });
 
+        this.globCheckBox.addItemListener(item -> {
+            boolean selected = item.getStateChange() == ItemEvent.SELECTED;
+            this.globTextField.setEnabled(selected);
+        });
+
         this.parentsCheckBox.addItemListener(item -> {
             boolean selected = item.getStateChange() == ItemEvent.SELECTED;
             this.parentsTextField.setEnabled(selected);
         });
 
+        this.ancestorsCheckBox.addItemListener(item -> {
+            boolean selected = item.getStateChange() == ItemEvent.SELECTED;
+            this.ancestorsTextField.setEnabled(selected);
+        });
+
         this.namesCheckBox.addItemListener(item -> {
             boolean selected = item.getStateChange() == ItemEvent.SELECTED;
             this.namesTextField.setEnabled(selected);
@@ -104,16 +123,28 @@ public class ModelConditionDialog extends DialogWrapper {
             this.facetsTextField.setEnabled(selected);
         });
 
+        this.contentCheckBox.addItemListener(item -> {
+            boolean selected = item.getStateChange() == ItemEvent.SELECTED;
+            this.contentTextField.setEnabled(selected);
+        });
+
         this.regexTextField.setEnabled(false);
+        this.globTextField.setEnabled(false);
+        this.globTextField.setToolTipText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.glob.tooltip"));
         this.parentsTextField.setEnabled(false);
+        this.ancestorsTextField.setEnabled(false);
         this.namesTextField.setEnabled(false);
         this.extensionsTextField.setEnabled(false);
         this.facetsTextField.setEnabled(false);
+        this.contentTextField.setEnabled(false);
+        this.contentTextField.setToolTipText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.content.tooltip"));
 
         this.tipsLabel.setText(MessageFormat.format(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.tips"), FIELD_SEPARATOR_NAME));
 
         this.regexCheckBox.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.regex.checkbox"));
+        this.globCheckBox.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.glob.checkbox"));
         this.parentsCheckBox.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.parents.checkbox"));
+        this.ancestorsCheckBox.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.ancestors.checkbox"));
         this.namesCheckBox.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.names.checkbox"));
         this.startsWithRadioButton.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.startswith.checkbox"));
         this.equalsRadioButton.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.equals.checkbox"));
@@ -122,6 +153,7 @@ public class ModelConditionDialog extends DialogWrapper {
         this.endsWithRadioButton.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.endswith.checkbox"));
         this.mayEndWithRadioButton.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.mayendwith.checkbox"));
         this.facetsCheckBox.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.facets.checkbox"));
+        this.contentCheckBox.setText(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.content.checkbox"));
     }
 
     private void createUIComponents() {
@@ -141,12 +173,24 @@ public class ModelConditionDialog extends DialogWrapper {
             }
         }
 
+        if (this.globCheckBox.isSelected()) {
+            if (!GlobMatcher.isValid(this.globTextField.getText())) {
+                return new ValidationInfo(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.err.invalid.glob"), this.globTextField);
+            }
+        }
+
         if (this.parentsCheckBox.isSelected()) {
             if (this.parentsTextField.getText().isEmpty()) {
                 return new ValidationInfo(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.err.parent.missing"), this.parentsTextField);
             }
         }
 
+        if (this.ancestorsCheckBox.isSelected()) {
+            if (this.ancestorsTextField.getText().isEmpty()) {
+                return new ValidationInfo(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.err.ancestor.missing"), this.ancestorsTextField);
+            }
+        }
+
         if (this.namesCheckBox.isSelected()) {
             if (this.namesTextField.getText().isEmpty()) {
                 return new ValidationInfo(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.err.name.missing"), this.namesTextField);
@@ -171,10 +215,31 @@ public class ModelConditionDialog extends DialogWrapper {
             }
         }
 
+        if (this.contentCheckBox.isSelected()) {
+            if (this.contentTextField.getText().isEmpty()) {
+                return new ValidationInfo(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.err.content.missing"), this.contentTextField);
+            }
+            for (String signature : this.contentTextField.getText().toLowerCase().split(FIELD_SEPARATOR)) {
+                if (!FileHeader.isValidSignature(signature.trim())) {
+                    return new ValidationInfo(MessageFormat.format(
+                        I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.err.invalid.content"), signature.trim()), this.contentTextField);
+                }
+            }
+        }
+
         if (!getModelConditionFromInput().isValid()) {
             return new ValidationInfo(I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.err.select.at.least.one.checkbox"));
         }
 
+        if (this.regexCheckBox.isSelected() && !this.globCheckBox.isSelected()) {
+            String suggestedGlob = GlobMatcher.suggestFromRegex(this.regexTextField.getText());
+            if (suggestedGlob != null) {
+                return new ValidationInfo(MessageFormat.format(
+                    I18nUtils.RESOURCE_BUNDLE.getString("model.condition.dialog.warn.regex.as.glob"), suggestedGlob), this.regexTextField)
+                    .asWarning().withOKEnabled();
+            }
+        }
+
         return null;
     }
 
@@ -188,11 +253,20 @@ public class ModelConditionDialog extends DialogWrapper {
             modelCondition.setRegex(this.regexTextField.getText());
         }
 
+        if (this.globCheckBox.isSelected()) {
+            modelCondition.setGlob(this.globTextField.getText().trim());
+        }
+
         if (this.parentsCheckBox.isSelected()) {
             String[] parents = this.parentsTextField.getText().split(FIELD_SEPARATOR);
             modelCondition.setParents(parents);
         }
 
+        if (this.ancestorsCheckBox.isSelected()) {
+            String[] ancestors = this.ancestorsTextField.getText().split(FIELD_SEPARATOR);
+            modelCondition.setAncestors(ancestors);
+        }
+
         if (this.namesCheckBox.isSelected()) {
             String[] names = this.namesTextField.getText().split(FIELD_SEPARATOR);
             if (this.startsWithRadioButton.isSelected()) {
@@ -219,6 +293,11 @@ public class ModelConditionDialog extends DialogWrapper {
             modelCondition.setFacets(facets);
         }
 
+        if (this.contentCheckBox.isSelected()) {
+            String[] signatures = Arrays.stream(this.contentTextField.getText().split(FIELD_SEPARATOR)).map(String::trim).toArray(String[]::new);
+            modelCondition.setContentSignatures(signatures);
+        }
+
         return modelCondition;
     }
 
@@ -233,11 +312,21 @@ public class ModelConditionDialog extends DialogWrapper {
             this.regexTextField.setText(modelCondition.getRegex());
         }
 
+        if (modelCondition.hasGlob()) {
+            this.globCheckBox.setSelected(true);
+            this.globTextField.setText(modelCondition.getGlob());
+        }
+
         if (modelCondition.hasCheckParent()) {
             this.parentsCheckBox.setSelected(true);
             this.parentsTextField.setText(String.join(FIELD_SEPARATOR, modelCondition.getParents()));
         }
 
+        if (modelCondition.hasCheckAncestors()) {
+            this.ancestorsCheckBox.setSelected(true);
+            this.ancestorsTextField.setText(String.join(FIELD_SEPARATOR, modelCondition.getAncestors()));
+        }
+
         if (modelCondition.hasStart() || modelCondition.hasEq()) {
             this.namesCheckBox.setSelected(true);
             this.namesTextField.setText(String.join(FIELD_SEPARATOR, modelCondition.getNames()));
@@ -257,6 +346,11 @@ public class ModelConditionDialog extends DialogWrapper {
             this.facetsCheckBox.setSelected(true);
             this.facetsTextField.setText(String.join(FIELD_SEPARATOR, modelCondition.getFacets()));
         }
+
+        if (modelCondition.hasContent()) {
+            this.contentCheckBox.setSelected(true);
+            this.contentTextField.setText(String.join(FIELD_SEPARATOR, modelCondition.getContentSignatures()));
+        }
     }
 
     /**
@@ -42,6 +42,7 @@ public class SettingsIDEService extends SettingsService implements PersistentSta
     @Override
     public void loadState(@NotNull SettingsIDEService state) {
         XmlSerializerUtil.copyBean(state, this);
+        incrementModelsVersion();
     }
 
     public Double getAdditionalUIScale2() {
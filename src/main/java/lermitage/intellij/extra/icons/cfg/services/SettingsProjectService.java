@@ -30,6 +30,7 @@ public class SettingsProjectService extends SettingsService implements Persisten
 
     public void setOverrideIDESettings(boolean overrideIDESettings) {
         this.overrideIDESettings = overrideIDESettings;
+        incrementModelsVersion();
     }
 
     public boolean isAddToIDEUserIcons() {
@@ -38,6 +39,7 @@ public class SettingsProjectService extends SettingsService implements Persisten
 
     public void setAddToIDEUserIcons(boolean addToIDEUserIcons) {
         this.addToIDEUserIcons = addToIDEUserIcons;
+        incrementModelsVersion();
     }
 
     @Override
@@ -48,5 +50,6 @@ public class SettingsProjectService extends SettingsService implements Persisten
     @Override
     public void loadState(@NotNull SettingsProjectService state) {
         XmlSerializerUtil.copyBean(state, this);
+        incrementModelsVersion();
     }
 }
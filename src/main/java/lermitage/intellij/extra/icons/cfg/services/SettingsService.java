@@ -16,6 +16,7 @@ import org.jetbrains.annotations.NotNull;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -34,6 +35,12 @@ public abstract class SettingsService {
 
     private static final @NonNls Logger LOGGER = Logger.getInstance(SettingsService.class);
 
+    /**
+     * Incremented each time the effective models may have changed: user models, disabled models or project
+     * override flags. Model snapshots compare it to the version they were built for.
+     */
+    private static final AtomicLong MODELS_VERSION = new AtomicLong();
+
     public static final double DEFAULT_ADDITIONAL_UI_SCALE = findSysScale(); // TODO see what fits best: JBUIScale.sysScale or JBUI.pixScale. JBUI.pixScale can take a frame, which may be useful with multiple displays
 
     private static double findSysScale() {
@@ -68,6 +75,7 @@ public abstract class SettingsService {
 
     public void setDisabledModelIds(List<String> disabledModelIds) {
         this.disabledModelIds = disabledModelIds;
+        incrementModelsVersion();
     }
 
     public void setIgnoredPattern(String ignoredPattern) {
@@ -84,6 +92,15 @@ public abstract class SettingsService {
 
     public void setCustomModels(List<Model> customModels) {
         this.customModels = customModels;
+        incrementModelsVersion();
+    }
+
+    public static long getModelsVersion() {
+        return MODELS_VERSION.get();
+    }
+
+    protected static void incrementModelsVersion() {
+        MODELS_VERSION.incrementAndGet();
     }
 
     public static @NotNull List<Model> getAllRegisteredModels() {
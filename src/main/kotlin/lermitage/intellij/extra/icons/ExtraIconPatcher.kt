@@ -1,83 +1,151 @@
 // SPDX-License-Identifier: MIT
 package lermitage.intellij.extra.icons
 
+import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.diagnostic.debug
 import com.intellij.openapi.diagnostic.thisLogger
-import com.intellij.openapi.util.IconLoader.installPathPatcher
+import com.intellij.openapi.util.IconLoader
 import com.intellij.openapi.util.IconPathPatcher
 import com.intellij.ui.NewUI
-import com.intellij.util.system.OS
 import lermitage.intellij.extra.icons.cfg.services.SettingsIDEService
 import lermitage.intellij.extra.icons.utils.B64_DECODER
-import lermitage.intellij.extra.icons.utils.createOrGetTempSVGFile
-import java.io.IOException
-import kotlin.io.path.Path
-import kotlin.io.path.name
+import org.apache.commons.codec.digest.DigestUtils
+import java.awt.Window
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.net.URL
+import java.net.URLConnection
+import java.net.URLStreamHandler
 
 class ExtraIconPatcher : IconPathPatcher() {
-    private lateinit var icons: Map<String, String>
+    @Volatile
+    private lateinit var icons: IconPathOverrides
+
+    /** The enabled ICON models, as IDE icon name to icon path or Base64 content. */
+    private var enabledIcons: Map<String, String> = emptyMap()
+
+    private var nbPatchPathCalls = 0L
+
+    @Volatile
+    private var userIconsClassLoader = UserIconsClassLoader(ExtraIconPatcher::class.java.classLoader, emptyMap())
 
     init {
-        loadConfig()
-        installPathPatcher(this)
+        loadConfig(getEnabledIcons())
+        IconLoader.installPathPatcher(this)
+        instance = this
     }
 
     override fun getContextClassLoader(path: String, originalClassLoader: ClassLoader?): ClassLoader? {
-        return ExtraIconPatcher::class.java.classLoader
+        return userIconsClassLoader
     }
 
+    /**
+     * Called by IconLoader for every icon the IDE loads, so it must not allocate, see [IconPathOverrides].
+     */
     override fun patchPath(path: String, classLoader: ClassLoader?): String? {
-        val iconPath = Path(path)
-
-
-        val simplifiedPath = path.substring(1)
-
-        return when {
-            icons.containsKey(path) -> icons[path]
-            path.startsWith("/") && path.length > 2 && icons.containsKey(simplifiedPath) -> icons[simplifiedPath]
-            else -> icons[iconPath.name]
+        val patched = icons.patch(path)
+        if (LOGGER.isDebugEnabled && ++nbPatchPathCalls % 1000 == 0L) {
+            LOGGER.debug("patchPath: $nbPatchPathCalls, ${icons.statsDescription()}")
         }
+        return patched
+    }
+
+    private fun loadConfig(newEnabledIcons: Map<String, String>) {
+        val userIcons = mutableMapOf<String, ByteArray>()
+        val newIcons = IconPathOverrides(mapUserB64IconsToInMemoryResourcesAndKeepBundledIcons(newEnabledIcons, userIcons))
+        userIconsClassLoader = UserIconsClassLoader(ExtraIconPatcher::class.java.classLoader, userIcons)
+        icons = newIcons
+        enabledIcons = newEnabledIcons
+        LOGGER.info("Config loaded with success, enabled " + newIcons.size + " items")
     }
 
-    private fun loadConfig() {
-        icons = getEnabledIcons()
-        try {
-            icons = convertUserB64IconsToLocalFilesAndKeepBundledIcons(icons)
-        } catch (e: IOException) {
-            LOGGER.warn("Cannot create temporary directory to store user IDE icons, this feature won't work", e)
+    /**
+     * Apply the current ICON models. Nothing is done if the enabled ICON models didn't change, which is the case
+     * of most settings changes. Otherwise, the overrides are updated, then the patcher is re-installed: this is
+     * the way to make IconLoader drop the icons it resolved with the previous overrides. Finally, windows are
+     * repainted.
+     */
+    @Synchronized
+    private fun reload() {
+        val newEnabledIcons = getEnabledIcons()
+        val changedIconNames = (enabledIcons.keys + newEnabledIcons.keys).filter { enabledIcons[it] != newEnabledIcons[it] }
+        if (changedIconNames.isEmpty()) {
+            return
+        }
+        LOGGER.info("IDE icons changed: $changedIconNames, reloading")
+        loadConfig(newEnabledIcons)
+        ApplicationManager.getApplication().invokeLater {
+            IconLoader.removePathPatcher(this)
+            IconLoader.installPathPatcher(this)
+            Window.getWindows().forEach { window -> window.repaint() }
         }
-        LOGGER.info("Config loaded with success, enabled " + icons.size + " items")
     }
 
     /**
-     * Convert Base64 user icons to local files. This conversion is needed
-     * because IconPatcher can't work with in-memory byte arrays; we have to
-     * use bundled icons (from /resources) or local files. This method stores
-     * in-memory Base64 icons provided by user as temporary local files.
+     * Map Base64 user icons to in-memory resources. IconPatcher can't work with in-memory byte arrays, it needs
+     * a path: user icons get a path named after the SHA1 of their content, which is served by the class loader
+     * returned by [getContextClassLoader]. This way, user icons are not written to temporary files.
      */
-    @Throws(IOException::class)
-    private fun convertUserB64IconsToLocalFilesAndKeepBundledIcons(icons: Map<String, String>): Map<String, String> {
+    private fun mapUserB64IconsToInMemoryResourcesAndKeepBundledIcons(
+        icons: Map<String, String>,
+        userIcons: MutableMap<String, ByteArray>,
+    ): Map<String, String> {
         val morphedIcons = mutableMapOf<String, String>()
         for ((key, icon) in icons) {
             morphedIcons[key] = if (icon.startsWith("extra-icons/")) {
                 // bundled icon, no icon transformation needed
                 icon
             } else {
-                // base64 icon provided by user: store as local file
-                val svgFile = createOrGetTempSVGFile(B64_DECODER.decode(icon))
-                val decodedIconPath = svgFile.absolutePath
-                if (OS.CURRENT == OS.Windows) // TODO see if should use VfsUtil.fixURLforIDEA(urlStr)
-                    "file:/$decodedIconPath"
-                else
-                    "file://$decodedIconPath"
+                // base64 icon provided by user: serve from memory
+                val imageBytes = B64_DECODER.decode(icon)
+                val userIconPath = USER_ICONS_FOLDER + DigestUtils.sha1Hex(imageBytes) + ".svg"
+                userIcons[userIconPath] = imageBytes
+                userIconPath
             }
         }
         return morphedIcons
     }
 
+    /**
+     * Class loader which serves user icons from memory, and delegates other resources to its parent.
+     */
+    private class UserIconsClassLoader(parent: ClassLoader?, private val userIcons: Map<String, ByteArray>) : ClassLoader(parent) {
+        override fun getResource(name: String): URL? {
+            val imageBytes = userIcons[name.removePrefix("/")] ?: return super.getResource(name)
+            return URL(null, "$USER_ICONS_PROTOCOL:${name.removePrefix("/")}", object : URLStreamHandler() {
+                override fun openConnection(url: URL): URLConnection = object : URLConnection(url) {
+                    override fun connect() {}
+                    override fun getInputStream(): InputStream = ByteArrayInputStream(imageBytes)
+                }
+            })
+        }
+
+        override fun getResourceAsStream(name: String): InputStream? {
+            val imageBytes = userIcons[name.removePrefix("/")] ?: return super.getResourceAsStream(name)
+            return ByteArrayInputStream(imageBytes)
+        }
+    }
+
     companion object {
         private val LOGGER = thisLogger()
 
+        @Volatile
+        private var instance: ExtraIconPatcher? = null
+
+        /**
+         * Apply ICON models changes (settings, icon packs) without restarting the IDE.
+         */
+        @JvmStatic
+        fun reloadIDEIcons() {
+            try {
+                instance?.reload()
+            } catch (e: Exception) {
+                LOGGER.warn("Failed to reload IDE icons, they will be applied after an IDE restart", e)
+            }
+        }
+        private const val USER_ICONS_FOLDER = "extra-icons-user/"
+        private const val USER_ICONS_PROTOCOL = "extra-icons-user"
+
         private fun getEnabledIcons(): Map<String, String> {
             val uiType = if (NewUI.isEnabled()) UIType.NEW_UI else UIType.OLD_UI
             LOGGER.debug { "Detected UI Type: $uiType" }
@@ -89,16 +157,16 @@ class ExtraIconPatcher : IconPathPatcher() {
                 null -> error("This should be literally impossible. If you see this error, please report it")
             }
 
-            val disabledModelIds = SettingsIDEService.getInstance().getDisabledModelIds()
+            val registeredModels = ExtraIconProvider.allModels()
+            val disabledModelIds = SettingsIDEService.getInstance().getDisabledModelIds().toHashSet()
+            val enabledOrdinals = ModelSnapshot.enabledOrdinals(registeredModels, disabledModelIds)
             return sequenceOf(
-                ExtraIconProvider.allModels(),
+                registeredModels,
                 SettingsIDEService.getInstance().getCustomModels()
             ).flatten().filter { model ->
                 model.modelType == ModelType.ICON
-            }.filterNot { model ->
-                model.id in disabledModelIds
             }.filter { model ->
-                model.isEnabled
+                ModelSnapshot.isEffective(model, enabledOrdinals, disabledModelIds)
             }.distinctBy { model -> model.icon }.associate { model ->
                 val iconPathToLoad = if (preferNewUI && model.isAutoLoadNewUIIconVariant)
                     model.icon.replace("extra-icons/", "extra-icons/newui/")
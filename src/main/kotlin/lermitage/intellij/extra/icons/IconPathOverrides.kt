@@ -0,0 +1,108 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons
+
+import java.io.File
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Immutable lookup table of the IDE icons overridden by [ExtraIconPatcher]. A path is resolved, without any
+ * allocation, by trying the whole path, then the path without its leading slash, then its basename. Keys are
+ * looked up from regions of the path in an open addressing hash table.
+ *
+ * Most icons loaded by the IDE are not overridden: paths which were not found are remembered in a small
+ * direct-mapped negative cache, so looking them up again costs one (usually cached) [String.hashCode] call.
+ */
+class IconPathOverrides(overrides: Map<String, String>) {
+
+    private val keys: Array<String?>
+    private val values: Array<String?>
+    private val negativeCache = arrayOfNulls<String>(NEGATIVE_CACHE_SIZE)
+
+    private val hits = LongAdder()
+    private val misses = LongAdder()
+    private val negativeCacheHits = LongAdder()
+
+    init {
+        val capacity = Integer.highestOneBit(maxOf(overrides.size, 1) * 2) * 2
+        keys = arrayOfNulls(capacity)
+        values = arrayOfNulls(capacity)
+        for ((key, value) in overrides) {
+            var slot = hash(key, 0, key.length) and (capacity - 1)
+            while (keys[slot] != null) {
+                slot = (slot + 1) and (capacity - 1)
+            }
+            keys[slot] = key
+            values[slot] = value
+        }
+    }
+
+    val size: Int = overrides.size
+
+    /**
+     * Get the path of the icon which overrides given icon path, or `null` if it's not overridden.
+     */
+    fun patch(path: String): String? {
+        val negativeCacheSlot = path.hashCode() and (NEGATIVE_CACHE_SIZE - 1)
+        val negativeCacheEntry = negativeCache[negativeCacheSlot]
+        if (negativeCacheEntry === path || negativeCacheEntry == path) {
+            negativeCacheHits.increment()
+            return null
+        }
+        val length = path.length
+        var patched = find(path, 0, length)
+        if (patched == null && length > 2 && path[0] == '/') {
+            patched = find(path, 1, length)
+        }
+        if (patched == null) {
+            patched = find(path, baseNameStart(path), length)
+        }
+        if (patched == null) {
+            negativeCache[negativeCacheSlot] = path // racy but safe: strings are immutable
+            misses.increment()
+        } else {
+            hits.increment()
+        }
+        return patched
+    }
+
+    fun statsDescription(): String =
+        "patched: ${hits.sum()}, not patched: ${misses.sum()}, not patched (negative cache): ${negativeCacheHits.sum()}"
+
+    private fun find(source: String, start: Int, end: Int): String? {
+        val length = end - start
+        val mask = keys.size - 1
+        var slot = hash(source, start, end) and mask
+        while (true) {
+            val key = keys[slot] ?: return null
+            if (key.length == length && source.startsWith(key, start)) {
+                return values[slot]
+            }
+            slot = (slot + 1) and mask
+        }
+    }
+
+    companion object {
+        private const val NEGATIVE_CACHE_SIZE = 4096
+
+        /**
+         * Start of the path's file name, like [java.nio.file.Path.getFileName] (the platform separator and '/').
+         */
+        private fun baseNameStart(path: String): Int {
+            for (i in path.length - 1 downTo 0) {
+                val c = path[i]
+                if (c == '/' || c == File.separatorChar) {
+                    return i + 1
+                }
+            }
+            return 0
+        }
+
+        private fun hash(source: String, start: Int, end: Int): Int {
+            var h = 0
+            for (i in start until end) {
+                h = 31 * h + source[i].code
+            }
+            return h xor (h ushr 16)
+        }
+    }
+}
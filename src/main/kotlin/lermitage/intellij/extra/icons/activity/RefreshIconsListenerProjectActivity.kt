@@ -1,22 +1,32 @@
 // SPDX-License-Identifier: MIT
 package lermitage.intellij.extra.icons.activity
 
+import com.intellij.ide.FileIconProvider
 import com.intellij.ide.projectView.ProjectView
 import com.intellij.openapi.application.ApplicationInfo
 import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.application.ModalityState
+import com.intellij.openapi.application.ReadAction
 import com.intellij.openapi.diagnostic.debug
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.fileEditor.ex.FileEditorManagerEx
-import com.intellij.openapi.project.DumbService
+import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.startup.ProjectActivity
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiManager
 import com.intellij.ui.IconDeferrer
-import lermitage.intellij.extra.icons.enablers.IconEnablerProvider.getIconEnabler
-import lermitage.intellij.extra.icons.enablers.IconEnablerType
+import com.intellij.util.concurrency.AppExecutorUtil
+import lermitage.intellij.extra.icons.ExtraIconProvider
+import lermitage.intellij.extra.icons.UITypeIconsPreference
+import lermitage.intellij.extra.icons.cfg.services.SettingsIDEService
 import lermitage.intellij.extra.icons.messaging.RefreshIconsNotifier
+import lermitage.intellij.extra.icons.messaging.RefreshIconsScheduler
+import lermitage.intellij.extra.icons.services.IconEnablersService
+import lermitage.intellij.extra.icons.services.ModelCacheService
 import lermitage.intellij.extra.icons.utils.isIde2023OrOlder
 import lermitage.intellij.extra.icons.utils.isProjectAlive
-import lermitage.intellij.extra.icons.utils.runInBGT
 import lermitage.intellij.extra.icons.utils.runInEDT
 
 // TODO migrate to Listener https://plugins.jetbrains.com/docs/intellij/plugin-listeners.html#defining-project-level-listeners
@@ -38,24 +48,88 @@ class RefreshIconsListenerProjectActivity : ProjectActivity {
     }
 
     private fun reinitIconEnablers(project: Project) {
-        runInBGT("reinit icon enablers", true) {
-            if (project.isProjectAlive()) {
-                DumbService.getInstance(project).runReadActionInSmartMode {
-                    for (iconEnablerType in IconEnablerType.entries) {
-                        if (project.isProjectAlive()) {
-                            val iconEnabler = project.getIconEnabler(iconEnablerType)
-                            iconEnabler?.init(project)
-                        }
-                    }
-                }
-            }
-        }
+        IconEnablersService.getInstance(project).reinit()
     }
 
+    /**
+     * Refresh the project view nodes and editor tabs whose icon changed since the models cache was invalidated,
+     * or everything if the icons changed without their model (see [IconsRefreshState]) or if too many icons changed.
+     */
     private fun refreshIcons(project: Project) {
         if (ApplicationInfo.getInstance().isIde2023OrOlder)
             IconDeferrer.getInstance().clearCache()
 
+        val settingsIDEService = SettingsIDEService.getInstance()
+        val refreshState = IconsRefreshState(
+            settingsIDEService.getAdditionalUIScale2(),
+            settingsIDEService.getUiTypeIconsPreference(),
+            ModelCacheService.getInstance(project).getEvictions()
+        )
+        val previousRefreshState = project.getUserData(REFRESH_STATE_KEY)
+        project.putUserData(REFRESH_STATE_KEY, refreshState)
+        if (refreshState.requiresFullRefresh(previousRefreshState)) {
+            refreshAllIcons(project)
+            return
+        }
+        ReadAction.nonBlocking<List<VirtualFile>?> { findFilesWithChangedModel(project) }
+            .expireWith(RefreshIconsScheduler.getInstance(project))
+            .finishOnUiThread(ModalityState.defaultModalityState()) { changedFiles ->
+                if (changedFiles == null) {
+                    refreshAllIcons(project)
+                } else {
+                    refreshFileIcons(project, changedFiles)
+                }
+            }
+            .submit(AppExecutorUtil.getAppExecutorService())
+    }
+
+    /**
+     * Resolve again the model of the files which were resolved before the models cache was invalidated, and
+     * return the files whose model changed, or `null` if there are too many of them to update nodes one by one.
+     */
+    private fun findFilesWithChangedModel(project: Project): List<VirtualFile>? {
+        if (!project.isProjectAlive()) {
+            return emptyList()
+        }
+        val iconProvider = FileIconProvider.EP_NAME.findExtension(ExtraIconProvider::class.java) ?: return null
+        val outdatedEntries = ModelCacheService.getInstance(project).outdatedEntries()
+        if (outdatedEntries.size > MAX_FILES_TO_CHECK) {
+            return null
+        }
+        val changedFiles = mutableListOf<VirtualFile>()
+        for (entry in outdatedEntries) {
+            ProgressManager.checkCanceled()
+            if (entry.file.isValid && entry.model != iconProvider.resolveModel(entry.file, project)) {
+                changedFiles += entry.file
+                if (changedFiles.size > MAX_FILES_TO_UPDATE) {
+                    return null
+                }
+            }
+        }
+        LOGGER.debug { "Icons of ${changedFiles.size}/${outdatedEntries.size} resolved files changed in project ${project.name}" }
+        return changedFiles
+    }
+
+    private fun refreshFileIcons(project: Project, files: List<VirtualFile>) {
+        if (!project.isProjectAlive() || files.isEmpty()) {
+            return
+        }
+        val projectViewPane = ProjectView.getInstance(project).currentProjectViewPane
+        val psiManager = PsiManager.getInstance(project)
+        val fileEditorManager = FileEditorManagerEx.getInstanceEx(project)
+        for (file in files) {
+            if (!file.isValid) {
+                continue
+            }
+            val psiElement = if (file.isDirectory) psiManager.findDirectory(file) else psiManager.findFile(file)
+            psiElement?.let { projectViewPane?.updateFrom(it, false, false) }
+            if (fileEditorManager.isFileOpen(file)) {
+                fileEditorManager.updateFilePresentation(file)
+            }
+        }
+    }
+
+    private fun refreshAllIcons(project: Project) {
         runInEDT("refresh icons") {
             ApplicationManager.getApplication().runReadAction {
                 if (project.isProjectAlive()) {
@@ -95,5 +169,23 @@ class RefreshIconsListenerProjectActivity : ProjectActivity {
 
     companion object {
         private val LOGGER = thisLogger()
+
+        private val REFRESH_STATE_KEY = Key.create<IconsRefreshState>("ExtraIcons.RefreshState")
+
+        private val MAX_FILES_TO_CHECK = Integer.getInteger("extra-icons.refresh.max.files.to.check", 50_000)
+        private val MAX_FILES_TO_UPDATE = Integer.getInteger("extra-icons.refresh.max.files.to.update", 1_000)
     }
 }
+
+/**
+ * What the displayed icons depend on, besides the resolved models, captured at each icons refresh. If it changed since
+ * the previous refresh, every icon has to be refreshed: the additional UI scale and the UI type icons preference change
+ * icons without changing any model, and files whose models cache entry was evicted can't be checked anymore.
+ */
+data class IconsRefreshState(
+    val uiScale: Double,
+    val uiTypeIconsPreference: UITypeIconsPreference,
+    val modelCacheEvictions: Long,
+) {
+    fun requiresFullRefresh(previous: IconsRefreshState?): Boolean = previous != null && previous != this
+}
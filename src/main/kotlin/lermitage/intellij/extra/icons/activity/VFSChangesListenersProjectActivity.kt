@@ -1,51 +1,170 @@
 // SPDX-License-Identifier: MIT
 package lermitage.intellij.extra.icons.activity
 
+import com.intellij.ide.projectView.ProjectView
 import com.intellij.openapi.diagnostic.Logger
-import com.intellij.openapi.project.DumbService
+import com.intellij.openapi.fileEditor.ex.FileEditorManagerEx
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.roots.ProjectRootManager
 import com.intellij.openapi.startup.ProjectActivity
+import com.intellij.openapi.util.io.FileUtil
 import com.intellij.openapi.vfs.VirtualFileManager
 import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent
 import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import com.intellij.psi.PsiManager
+import lermitage.intellij.extra.icons.enablers.AbstractInFolderEnabler
 import lermitage.intellij.extra.icons.enablers.IconEnablerProvider.getIconEnabler
 import lermitage.intellij.extra.icons.enablers.IconEnablerType
 import lermitage.intellij.extra.icons.enablers.services.GitSubmoduleFolderEnablerService
 import lermitage.intellij.extra.icons.messaging.RefreshIconsNotifierService.Companion.instance
+import lermitage.intellij.extra.icons.services.AncestorNamesService
+import lermitage.intellij.extra.icons.services.ModelCacheService
+import lermitage.intellij.extra.icons.utils.isProjectAlive
+import lermitage.intellij.extra.icons.utils.runInEDT
+import java.nio.file.Path
 
 // TODO migrate to Listener https://plugins.jetbrains.com/docs/intellij/plugin-listeners.html#defining-project-level-listeners
 class VFSChangesListenersProjectActivity : ProjectActivity {
     override suspend fun execute(project: Project) {
         project.messageBus.connect().subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
             override fun after(events: List<VFileEvent>) {
+                invalidateModelCache(events, project)
+                updateInFolderEnablers(events, project)
                 refreshGitSubmodules(events, project)
             }
         })
     }
 
-    // TODO big refactoring: update all enablers with modified files, this way there is no need to re-init manually from the UI, which would eliminate the problem of enablers (IDE filename index queries) from EDT
-    private fun refreshGitSubmodules(events: List<VFileEvent?>, project: Project) {
+    /**
+     * A renamed, moved or deleted file may not match the same model anymore: forget the model it was resolved to.
+     * For a folder, the ancestors of everything below it changed too: forget the memoized ancestor names.
+     * A modified file may not match the same content condition anymore: resolve its model again.
+     */
+    private fun invalidateModelCache(events: List<VFileEvent>, project: Project) {
+        if (!project.isProjectAlive()) {
+            return
+        }
+        val modelCacheService = ModelCacheService.getInstance(project)
+        var contentChanged = false
+        for (event in events) {
+            if (event is VFileContentChangeEvent) {
+                contentChanged = modelCacheService.invalidateContent(event.file) || contentChanged
+                continue
+            }
+            val file = when (event) {
+                is VFileMoveEvent -> event.file
+                is VFileDeleteEvent -> event.file
+                is VFilePropertyChangeEvent -> if (event.isRename) event.file else null
+                else -> null
+            }
+            if (file != null) {
+                if (file.isDirectory) {
+                    AncestorNamesService.getInstance(project).invalidate()
+                }
+                modelCacheService.invalidate(file)
+            }
+        }
+        if (contentChanged) {
+            instance.triggerProjectIconsRefresh(project)
+        }
+    }
+
+    /**
+     * Update in-folder Icon Enablers incrementally, then refresh the icons of the folders they enabled or disabled.
+     * Enablers are fully re-initialized only if some events can't be applied incrementally.
+     */
+    private fun updateInFolderEnablers(events: List<VFileEvent>, project: Project) {
+        try {
+            if (!project.isProjectAlive()) {
+                return
+            }
+            val changedFolders = mutableSetOf<Path>()
+            var reinitNeeded = false
+            for (iconEnablerType in IconEnablerType.entries) {
+                val iconEnabler = project.getIconEnabler(iconEnablerType) as? AbstractInFolderEnabler ?: continue
+                val enablerChangedFolders = iconEnabler.applyFileEvents(project, events)
+                if (enablerChangedFolders == null) {
+                    reinitNeeded = true
+                } else {
+                    changedFolders += enablerChangedFolders
+                }
+            }
+            if (reinitNeeded) {
+                instance.triggerProjectIconEnablersReinit(project)
+                instance.triggerProjectIconsRefresh(project)
+            } else if (changedFolders.isNotEmpty()) {
+                refreshFolders(changedFolders, project)
+            }
+        } catch (e: Exception) {
+            LOGGER.warn(e)
+        }
+    }
+
+    /**
+     * Refresh the icons of given folders and of their files, in project view and editor tabs.
+     */
+    private fun refreshFolders(folders: Set<Path>, project: Project) {
+        val folderPaths = folders.map { folder -> FileUtil.toSystemIndependentName(folder.toString()) }
+        val modelCacheService = ModelCacheService.getInstance(project)
+        folderPaths.forEach { folderPath -> modelCacheService.invalidateFolder(folderPath) }
+        runInEDT("refresh folder icons") {
+            if (!project.isProjectAlive()) {
+                return@runInEDT
+            }
+            val projectViewPane = ProjectView.getInstance(project).currentProjectViewPane
+            val psiManager = PsiManager.getInstance(project)
+            for (folderPath in folderPaths) {
+                val folder = VirtualFileManager.getInstance().findFileByUrl("file://$folderPath") ?: continue
+                val psiDirectory = psiManager.findDirectory(folder) ?: continue
+                projectViewPane?.updateFrom(psiDirectory, false, true)
+            }
+            val fileEditorManager = FileEditorManagerEx.getInstanceEx(project)
+            for (openFile in fileEditorManager.openFiles) {
+                if (folderPaths.any { folderPath -> openFile.path.startsWith("$folderPath/") }) {
+                    fileEditorManager.updateFilePresentation(openFile)
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-init Icon Enablers once a `.gitmodules` file of the project was modified, created, deleted, moved or renamed.
+     * Enablers are re-initialized in background and off the EDT, then icons are refreshed.
+     */
+    private fun refreshGitSubmodules(events: List<VFileEvent>, project: Project) {
         try {
-            DumbService.getInstance(project).runReadActionInSmartMode {
-                val fileIndex = ProjectRootManager.getInstance(project).fileIndex
-                val gitmodulesUpdated = events.stream()
-                    .anyMatch { vFileEvent: VFileEvent? ->
-                        vFileEvent!!.file != null && vFileEvent.isFromSave
-                                && fileIndex.isInProject(vFileEvent.file!!)
-                                && vFileEvent.path.endsWith(GitSubmoduleFolderEnablerService.GIT_MODULES_FILENAME)
-                    }
-                if (gitmodulesUpdated) {
-                    val iconEnabler = project.getIconEnabler(IconEnablerType.IS_GIT_SUBMODULE_FOLDER)
-                    iconEnabler?.init(project)
-                    instance.triggerProjectIconsRefresh(project)
+            if (!project.isProjectAlive()) {
+                return
+            }
+            val fileIndex = ProjectRootManager.getInstance(project).fileIndex
+            val gitmodulesUpdated = events.any { event ->
+                val gitmodulesFile = when (event) {
+                    is VFilePropertyChangeEvent -> event.isRename && (isGitModules(event.oldPath) || isGitModules(event.newPath))
+                    is VFileContentChangeEvent, is VFileCreateEvent, is VFileCopyEvent, is VFileMoveEvent, is VFileDeleteEvent -> isGitModules(event.path)
+                    else -> false
                 }
+                // a deleted file is not valid anymore: check its parent folder
+                val fileInProject = if (event is VFileDeleteEvent) event.file.parent else event.file
+                gitmodulesFile && fileInProject != null && fileInProject.isValid && fileIndex.isInProject(fileInProject)
+            }
+            if (gitmodulesUpdated) {
+                instance.triggerProjectIconEnablersReinit(project)
             }
         } catch (e: Exception) {
             LOGGER.warn(e)
         }
     }
 
+    private fun isGitModules(path: String): Boolean {
+        return path.endsWith("/" + GitSubmoduleFolderEnablerService.GIT_MODULES_FILENAME)
+    }
+
     companion object {
         private val LOGGER = Logger.getInstance(
             VFSChangesListenersProjectActivity::class.java
@@ -2,13 +2,10 @@
 package lermitage.intellij.extra.icons.enablers
 
 import com.intellij.openapi.project.Project
-import kotlin.io.path.Path
 
 abstract class AbstractFolderEnabler : AbstractInFolderEnabler(), IconEnabler {
     override fun verify(project: Project, absolutePathToVerify: String): Boolean {
-        val normalizedPathToVerify = Path(absolutePathToVerify).normalize()
-
-        return enabledFolders.any { normalizedPathToVerify == it }
+        return enabledFoldersTrie.containsFolder(absolutePathToVerify)
     }
 
     override fun terminatesConditionEvaluation(): Boolean {
@@ -3,15 +3,25 @@ package lermitage.intellij.extra.icons.enablers
 
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.module.ModuleManager
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.project.guessModuleDir
+import com.intellij.openapi.roots.ProjectFileIndex
 import com.intellij.openapi.util.io.toNioPathOrNull
 import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
 import com.intellij.openapi.vfs.toNioPathOrNull
 import com.intellij.psi.search.FilenameIndex
 import com.intellij.psi.search.GlobalSearchScope
 import com.intellij.util.ui.EDT
 import lermitage.intellij.extra.icons.cfg.services.SettingsIDEService
+import lermitage.intellij.extra.icons.messaging.RefreshIconsNotifierService
 import java.nio.file.Path
 import java.util.Arrays
 import java.util.Locale
@@ -24,9 +34,23 @@ import kotlin.io.path.useDirectoryEntries
 abstract class AbstractInFolderEnabler : IconEnabler {
     /**
      * Parent folder(s) where files or folders should be located in order to
-     * activate Enabler.
+     * activate Enabler. Assigning them publishes a new [FolderTrie], used to verify paths.
      */
     protected var enabledFolders: Set<Path> = emptySet()
+        set(value) {
+            field = value
+            enabledFoldersTrie = FolderTrie(value)
+        }
+
+    @Volatile
+    protected var enabledFoldersTrie = FolderTrie(emptySet())
+        private set
+
+    /**
+     * Number of [applyFileEvents] calls which checked folders again or moved or deleted folders. A state prepared
+     * before the last of them may be outdated: it's not published, see [prepare].
+     */
+    private var modificationCount = 0L
 
     protected abstract val filenamesToSearch: Array<String>
 
@@ -37,21 +61,41 @@ abstract class AbstractInFolderEnabler : IconEnabler {
     abstract val name: String
 
     /**
-     * A boolean flag used to obtain a match if any of the specified files
-     * exists in the project.
+     * A boolean flag used to obtain a match only if all the specified files
+     * exist in a folder. Applies to the IDE filename index only: the regular
+     * FS accepts any of them.
      */
     open val requiredSearchedFiles: Boolean
         get() = true
 
-    @Synchronized
-    override fun init(project: Project) {
-        try {
-            enabledFolders = if (SettingsIDEService.getInstance().getUseIDEFilenameIndex2())
+    /**
+     * Find the enabled folders. If file events are applied after they were found and before they are published, they
+     * are not published: a new re-init is requested instead, so incremental updates are never overwritten.
+     */
+    override fun prepare(project: Project): Runnable {
+        val preparedModificationCount = synchronized(this) { modificationCount }
+        val folders = try {
+            if (SettingsIDEService.getInstance().getUseIDEFilenameIndex2())
                 initWithIDEFileIndex(project, filenamesToSearch)
             else
                 initWithRegularFS(project, filenamesToSearch)
+        } catch (e: ProcessCanceledException) {
+            throw e
         } catch (e: Throwable) {
             LOGGER.warn("Canceled init of $name Enabler", e)
+            return Runnable { }
+        }
+        return Runnable {
+            val published = synchronized(this) {
+                if (modificationCount == preparedModificationCount) {
+                    enabledFolders = folders
+                }
+                modificationCount == preparedModificationCount
+            }
+            if (!published) {
+                LOGGER.info("Files changed while initializing $name Enabler, will init it again")
+                RefreshIconsNotifierService.instance.triggerProjectIconEnablersReinit(project)
+            }
         }
     }
 
@@ -68,28 +112,18 @@ abstract class AbstractInFolderEnabler : IconEnabler {
 
         val foldersToEnable = mutableSetOf<Path>()
         modulePaths.forEach { modulePath: Path ->
+            ProgressManager.checkCanceled()
 
             // look in modules root
-            for (filenameToSearch in filenamesToSearch) {
-                try {
-                    if (modulePath.resolve(filenameToSearch).exists())
-                        foldersToEnable.add(modulePath.normalize())
-                } catch (e: Exception) {
-                    LOGGER.warn("Failed to check '$modulePath/$filenameToSearch' existence", e)
-                }
-            }
+            if (isEnabledFolder(modulePath, false))
+                foldersToEnable.add(modulePath.normalize())
 
             // look in modules level-1 sub-folders
             modulePath.useDirectoryEntries { entries ->
                 entries.filter { it.isDirectory() }.forEach { dir ->
-                    for (filenameToSearch in filenamesToSearch) {
-                        try {
-                            if (dir.resolve(filenameToSearch).exists())
-                                foldersToEnable.add(dir.normalize())
-                        } catch (e: Exception) {
-                            LOGGER.warn("Failed to check '$modulePath/$filenameToSearch' existence", e)
-                        }
-                    }
+                    ProgressManager.checkCanceled()
+                    if (isEnabledFolder(dir, false))
+                        foldersToEnable.add(dir.normalize())
                 }
             }
         }
@@ -118,10 +152,13 @@ abstract class AbstractInFolderEnabler : IconEnabler {
         val virtualFilesByName = mutableListOf<VirtualFile>()
 
         for (filename in filenamesToSearch) {
+            ProgressManager.checkCanceled()
             try {
                 virtualFilesByName += FilenameIndex.getVirtualFilesByName(filename, true, GlobalSearchScope.projectScope(project))
                 if (virtualFilesByName.isNotEmpty())
                     break
+            } catch (e: ProcessCanceledException) {
+                throw e
             } catch (e: Exception) {
                 LOGGER.warn("$name Enabler failed to query IDE filename index. Will try again later. Some icons override may not work.", e)
                 if (allRequired)
@@ -137,6 +174,7 @@ abstract class AbstractInFolderEnabler : IconEnabler {
         return virtualFilesByName.asSequence().mapNotNull { virtualFile: VirtualFile ->
             virtualFile.path.toNioPathOrNull()?.parent?.normalize()
         }.filter { folder: Path ->
+            ProgressManager.checkCanceled()
             for (additionalFilenameToSearch in additionalFilenamesToSearch) {
                 try {
                     if (!folder.resolve(additionalFilenameToSearch).exists())
@@ -149,9 +187,114 @@ abstract class AbstractInFolderEnabler : IconEnabler {
         }.toSet()
     }
 
+    /**
+     * Update the enabled folders from VFS events, without querying the IDE filename index: only the folders
+     * where a searched file was created, deleted, moved or renamed are checked again, and enabled folders follow
+     * their moved or renamed parents. Must be called after the events were applied, in a read action.
+     * @return the folders which were enabled or disabled, or `null` if the events can't be applied incrementally
+     * (a directory tree appeared in the project) and [init] has to be called.
+     */
+    @Synchronized
+    fun applyFileEvents(project: Project, events: List<VFileEvent>): Set<Path>? {
+        val fileIndex = ProjectFileIndex.getInstance(project)
+        val update = EnabledFoldersUpdate(enabledFolders)
+        for (event in events) {
+            when (event) {
+                is VFileCreateEvent -> {
+                    if (!fileIndex.isInContent(event.parent)) continue
+                    if (event.isDirectory && event.isFromRefresh) return null // its content is unknown
+                    checkIfSearched(update, event.parent, event.childName)
+                }
+
+                is VFileCopyEvent -> {
+                    if (!fileIndex.isInContent(event.newParent)) continue
+                    if (event.file.isDirectory) return null
+                    checkIfSearched(update, event.newParent, event.newChildName)
+                }
+
+                is VFileDeleteEvent -> {
+                    val parent = event.file.parent ?: continue
+                    if (event.file.isDirectory) {
+                        update.delete(Path(event.path).normalize())
+                    } else if (fileIndex.isInContent(parent)) {
+                        checkIfSearched(update, parent, event.file.name)
+                    }
+                }
+
+                is VFileMoveEvent -> {
+                    if (event.file.isDirectory) {
+                        update.move(Path(event.oldPath).normalize(), Path(event.newPath).normalize())
+                        update.check(Path(event.newPath).normalize())
+                    } else {
+                        checkIfSearched(update, event.oldParent, event.file.name)
+                        checkIfSearched(update, event.newParent, event.file.name)
+                    }
+                }
+
+                is VFilePropertyChangeEvent -> {
+                    if (!event.isRename) continue
+                    val parent = event.file.parent ?: continue
+                    if (event.file.isDirectory) {
+                        val parentPath = Path(parent.path)
+                        update.move(
+                            parentPath.resolve(event.oldValue as String).normalize(),
+                            parentPath.resolve(event.newValue as String).normalize()
+                        )
+                    } else {
+                        checkIfSearched(update, parent, event.oldValue as String)
+                        checkIfSearched(update, parent, event.newValue as String)
+                    }
+                }
+            }
+        }
+
+        // same checks as a full init with the same settings, see prepare
+        val useIDEFilenameIndex = SettingsIDEService.getInstance().getUseIDEFilenameIndex2()
+        val newEnabledFolders = update.apply(
+            { folder -> isEnabledFolder(folder, useIDEFilenameIndex && requiredSearchedFiles) },
+            if (useIDEFilenameIndex || !update.hasFoldersToCheck()) null else moduleFolders(project)
+        )
+
+        if (update.isModified) {
+            // a state prepared meanwhile may disagree with these events, even if the published state doesn't change
+            modificationCount++
+        }
+        val changedFolders = (newEnabledFolders - enabledFolders) + (enabledFolders - newEnabledFolders)
+        enabledFolders = newEnabledFolders
+        return changedFolders
+    }
+
+    private fun checkIfSearched(update: EnabledFoldersUpdate, parent: VirtualFile, fileName: String) {
+        if (fileName in filenamesToSearch) {
+            parent.path.toNioPathOrNull()?.normalize()?.let { update.check(it) }
+        }
+    }
+
+    /**
+     * Indicates if given folder contains the searched files: all of them if [allRequired], otherwise any. A full
+     * init with the regular FS and file events applied without the IDE filename index both accept any of them, so
+     * a folder enabled by one is never disabled by the other.
+     */
+    private fun isEnabledFolder(folder: Path, allRequired: Boolean): Boolean {
+        val exists = { filename: String ->
+            try {
+                folder.resolve(filename).exists()
+            } catch (e: Exception) {
+                LOGGER.warn("$name Enabler failed to check '$folder/$filename' existence", e)
+                false
+            }
+        }
+        return if (allRequired) filenamesToSearch.all(exists) else filenamesToSearch.any(exists)
+    }
+
+    private fun moduleFolders(project: Project): Set<Path> {
+        return ModuleManager.getInstance(project).modules.asSequence().mapNotNull { module ->
+            module.guessModuleDir()?.toNioPathOrNull()?.normalize()
+        }.toSet()
+    }
+
     override fun verify(project: Project, absolutePathToVerify: String): Boolean {
-        val normalizedPathToVerify = Path(absolutePathToVerify)
-        return enabledFolders.any { normalizedPathToVerify.startsWith(it) }
+        return enabledFoldersTrie.containsFolderOrParent(absolutePathToVerify)
     }
 
     protected fun normalizePath(path: String): String {
@@ -0,0 +1,68 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.enablers
+
+import java.nio.file.Path
+
+/**
+ * Changes of the enabled folders of an [AbstractInFolderEnabler], collected from VFS events: folders moved, renamed
+ * or deleted are applied in event order, then the folders where a searched file changed are checked again by [apply].
+ */
+class EnabledFoldersUpdate(private var folders: Set<Path>) {
+
+    private val foldersToCheck = mutableSetOf<Path>()
+
+    /**
+     * Indicates if a folder was moved, renamed or deleted, or has to be checked again.
+     */
+    var isModified = false
+        private set
+
+    /**
+     * A folder was deleted: disable it and its sub-folders.
+     */
+    fun delete(folder: Path) {
+        isModified = true
+        folders = folders.filterTo(mutableSetOf()) { !it.startsWith(folder) }
+    }
+
+    /**
+     * A folder was moved or renamed: enabled folders follow it.
+     */
+    fun move(oldFolder: Path, newFolder: Path) {
+        isModified = true
+        if (folders.any { it.startsWith(oldFolder) }) {
+            folders = folders.mapTo(mutableSetOf()) { if (it.startsWith(oldFolder)) newFolder.resolve(oldFolder.relativize(it)) else it }
+        }
+    }
+
+    /**
+     * A searched file was created, deleted, moved or renamed in given folder: check it again.
+     */
+    fun check(folder: Path) {
+        isModified = true
+        foldersToCheck += folder
+    }
+
+    fun hasFoldersToCheck() = foldersToCheck.isNotEmpty()
+
+    /**
+     * @param isEnabledFolder indicates if a folder contains the searched files.
+     * @param candidateFolders the folders which can be enabled with their level-1 sub-folders, or `null` if any
+     * folder can be enabled.
+     * @return the updated enabled folders.
+     */
+    fun apply(isEnabledFolder: (Path) -> Boolean, candidateFolders: Set<Path>?): Set<Path> {
+        if (foldersToCheck.isEmpty()) {
+            return folders
+        }
+        val updatedFolders = folders.toMutableSet()
+        for (folder in foldersToCheck) {
+            if ((candidateFolders == null || folder in candidateFolders || folder.parent in candidateFolders) && isEnabledFolder(folder)) {
+                updatedFolders += folder
+            } else {
+                updatedFolders -= folder
+            }
+        }
+        return updatedFolders
+    }
+}
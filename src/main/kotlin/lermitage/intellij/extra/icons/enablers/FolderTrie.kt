@@ -0,0 +1,136 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.enablers
+
+import com.intellij.util.system.OS
+import java.nio.file.Path
+
+/**
+ * Immutable trie of folders, indexed by path segment. It answers, in O(depth), whether a path is one of the
+ * folders or is located in one of them, with the same results as [Path.equals] and [Path.startsWith] but
+ * without parsing the path: segments are compared as regions of the path string. Like [Path] does, comparison
+ * ignores case on Windows only.
+ */
+class FolderTrie(folders: Collection<Path>) {
+
+    private class Node {
+        var isFolder = false
+        var childNames: Array<String> = NO_NAMES
+        var children: Array<Node> = emptyArray()
+    }
+
+    private val root = Node()
+
+    init {
+        val builders = HashMap<Node, MutableMap<String, Node>>()
+        for (folder in folders) {
+            var node = root
+            for (segment in segments(folder.toString())) {
+                node = builders.getOrPut(node) { sortedMapOf(SEGMENT_ORDER) }.getOrPut(segment) { Node() }
+            }
+            node.isFolder = true
+        }
+        for ((node, children) in builders) {
+            node.childNames = children.keys.toTypedArray()
+            node.children = children.values.toTypedArray()
+        }
+    }
+
+    /**
+     * Indicates if given absolute path is one of the folders.
+     */
+    fun containsFolder(path: String): Boolean = find(path, false)
+
+    /**
+     * Indicates if given absolute path is one of the folders, or is located in one of them.
+     */
+    fun containsFolderOrParent(path: String): Boolean = find(path, true)
+
+    private fun find(path: String, acceptParent: Boolean): Boolean {
+        var node = root
+        var start = 0
+        val length = path.length
+        var first = true
+        while (start <= length) {
+            var end = start
+            while (end < length && !isSeparator(path[end])) {
+                end++
+            }
+            // keep the root segment (empty on Unix), skip empty segments elsewhere, like Path parsing does
+            if (end > start || first) {
+                if (acceptParent && node.isFolder) {
+                    return true
+                }
+                val childIdx = findChild(node, path, start, end)
+                if (childIdx < 0) {
+                    return false
+                }
+                node = node.children[childIdx]
+            }
+            first = false
+            start = end + 1
+        }
+        return node.isFolder
+    }
+
+    private fun findChild(node: Node, path: String, start: Int, end: Int): Int {
+        var low = 0
+        var high = node.childNames.size - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val cmp = compareRegion(node.childNames[mid], path, start, end)
+            when {
+                cmp < 0 -> low = mid + 1
+                cmp > 0 -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -1
+    }
+
+    companion object {
+        private val NO_NAMES = emptyArray<String>()
+        private val IGNORE_CASE = OS.CURRENT == OS.Windows
+
+        private val SEGMENT_ORDER = Comparator<String> { a, b -> compareRegion(a, b, 0, b.length) }
+
+        private fun isSeparator(c: Char) = c == '/' || (IGNORE_CASE && c == '\\')
+
+        private fun segments(path: String): List<String> {
+            val segments = mutableListOf<String>()
+            var start = 0
+            var first = true
+            while (start <= path.length) {
+                var end = start
+                while (end < path.length && !isSeparator(path[end])) {
+                    end++
+                }
+                if (end > start || first) {
+                    segments += path.substring(start, end)
+                }
+                first = false
+                start = end + 1
+            }
+            return segments
+        }
+
+        /**
+         * Compare a name to a region of a path, char by char (ignoring case on Windows).
+         */
+        private fun compareRegion(name: String, path: String, start: Int, end: Int): Int {
+            val regionLength = end - start
+            val minLength = minOf(name.length, regionLength)
+            for (i in 0 until minLength) {
+                var c1 = name[i]
+                var c2 = path[start + i]
+                if (IGNORE_CASE) {
+                    c1 = c1.uppercaseChar().lowercaseChar()
+                    c2 = c2.uppercaseChar().lowercaseChar()
+                }
+                if (c1 != c2) {
+                    return c1 - c2
+                }
+            }
+            return name.length - regionLength
+        }
+    }
+}
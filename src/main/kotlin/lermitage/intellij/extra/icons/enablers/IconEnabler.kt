@@ -4,7 +4,14 @@ package lermitage.intellij.extra.icons.enablers
 import com.intellij.openapi.project.Project
 
 interface IconEnabler {
-    fun init(project: Project)
+    fun init(project: Project) = prepare(project).run()
+
+    /**
+     * Compute the state of this Enabler without publishing it, then return the task which publishes it.
+     * May run in a non-blocking read action, restarted when a write action comes: it must not have side
+     * effects, and should check for cancellation regularly.
+     */
+    fun prepare(project: Project): Runnable
 
     fun verify(project: Project, absolutePathToVerify: String): Boolean
 
@@ -1,39 +1,44 @@
 // SPDX-License-Identifier: MIT
 package lermitage.intellij.extra.icons.enablers
 
-enum class IconEnablerType {
+/**
+ * @property terminatesConditionEvaluation reflects [IconEnabler.terminatesConditionEvaluation]
+ *    for the Enabler of this type: when true, a successful verification matches the condition
+ *    whatever the file name is. Needed to index models without instantiating Enablers.
+ */
+enum class IconEnablerType(val terminatesConditionEvaluation: Boolean) {
     /**
      * Detect git submodule folders.
      */
-    IS_GIT_SUBMODULE_FOLDER,
+    IS_GIT_SUBMODULE_FOLDER(true),
 
     /**
      * Detect Helm folders.
      */
-    IS_HELM_FOLDER,
+    IS_HELM_FOLDER(true),
 
     /**
      * Detect folders containing Angular files.
      */
-    IS_IN_ANGULAR_FOLDER,
+    IS_IN_ANGULAR_FOLDER(false),
 
     /**
      * Detect folders containing Flutter files.
      */
-    IS_IN_FLUTTER_FOLDER,
+    IS_IN_FLUTTER_FOLDER(false),
 
     /**
      * Detect folders containing GraphQL files.
      */
-    IS_IN_GRAPHQL_FOLDER,
+    IS_IN_GRAPHQL_FOLDER(false),
 
     /**
      * Detect folders containing Helm files.
      */
-    IS_IN_HELM_FOLDER,
+    IS_IN_HELM_FOLDER(false),
 
     /**
      * Detect folders containing Writerside files.
      */
-    IS_IN_WRITERSIDE_FOLDER
+    IS_IN_WRITERSIDE_FOLDER(false)
 }
@@ -3,6 +3,8 @@ package lermitage.intellij.extra.icons.enablers.services
 
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.project.guessProjectDir
 import lermitage.intellij.extra.icons.enablers.IconEnabler
@@ -17,24 +19,30 @@ import kotlin.time.measureTime
 @Suppress("HardCodedStringLiteral")
 @Service(Service.Level.PROJECT)
 class GitSubmoduleFolderEnablerService : IconEnabler {
+    @Volatile
     private var submoduleFolders = emptySet<String>()
 
-    @Synchronized
-    override fun init(project: Project) {
+    override fun prepare(project: Project): Runnable {
+        var foundSubmoduleFolders: Set<String>? = null
         val duration = measureTime {
             try {
-                submoduleFolders = findAllGitModulesFilesRecursively(project)
+                foundSubmoduleFolders = findAllGitModulesFilesRecursively(project)
+            } catch (e: ProcessCanceledException) {
+                throw e
             } catch (e: Exception) {
                 LOGGER.warn("Failed to init Git submodule Enabler", e)
             }
         }
 
         val logMsg = "Searched for git submodules in project ${project.name} in ${duration.toString(DurationUnit.MILLISECONDS)} ms. " +
-                "Found git submodule folders: $submoduleFolders"
+                "Found git submodule folders: ${foundSubmoduleFolders ?: submoduleFolders}"
         if (duration > 4.seconds)
             LOGGER.warn("$logMsg. Operation should complete faster")
         else
             LOGGER.info(logMsg)
+        return Runnable {
+            foundSubmoduleFolders?.let { submoduleFolders = it }
+        }
     }
 
     /**
@@ -58,6 +66,7 @@ class GitSubmoduleFolderEnablerService : IconEnabler {
     private fun findNestedGitModulesFilesRecursively(parentModules: Set<String>): Set<String> {
         val nestedModules = mutableSetOf<String>()
         for (parentModule in parentModules) {
+            ProgressManager.checkCanceled()
             try {
                 val submoduleFoldersFound = findGitModulesFilesInFolder(parentModule)
                     .map { it.lowercase(Locale.getDefault()) }
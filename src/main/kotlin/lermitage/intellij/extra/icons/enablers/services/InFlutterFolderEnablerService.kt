@@ -11,18 +11,21 @@ import java.nio.file.Files
 
 @Service(Service.Level.PROJECT)
 class InFlutterFolderEnablerService : IconEnabler {
+    @Volatile
     private var isFlutterProject = false
 
-    override fun init(project: Project) {
+    override fun prepare(project: Project): Runnable {
         val pubspec = File(project.basePath, "pubspec.yaml")
         if (pubspec.exists()) {
             try {
                 val pubspecContent = Files.readString(pubspec.toPath())
-                isFlutterProject = pubspecContent.contains("sdk: flutter") || pubspecContent.contains("sdk:flutter")
+                val flutterProject = pubspecContent.contains("sdk: flutter") || pubspecContent.contains("sdk:flutter")
+                return Runnable { isFlutterProject = flutterProject }
             } catch (e: IOException) {
                 LOGGER.warn("Canceled init of Flutter icons Enabler", e)
             }
         }
+        return Runnable { }
     }
 
     override fun verify(project: Project, absolutePathToVerify: String) = isFlutterProject
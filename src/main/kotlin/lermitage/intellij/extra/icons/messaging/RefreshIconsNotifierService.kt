@@ -8,32 +8,26 @@ import com.intellij.openapi.project.Project
 import com.intellij.openapi.project.ProjectManager
 import lermitage.intellij.extra.icons.utils.isProjectAlive
 
+/**
+ * Request icons refreshes and Icon Enablers re-inits. Requests are debounced per project by [RefreshIconsScheduler].
+ */
 @Service
 class RefreshIconsNotifierService {
     fun triggerProjectIconsRefresh(project: Project?) {
-        ApplicationManager.getApplication().runReadAction {
-            if (project.isProjectAlive()) {
-                checkNotNull(project)
-                val refreshIconsNotifier = project.messageBus
-                    .syncPublisher(RefreshIconsNotifier.EXTRA_ICONS_REFRESH_ICONS_NOTIFIER_TOPIC)
-                refreshIconsNotifier.refreshProjectIcons(project)
-            } else {
-                LOGGER.warn("Project is not alive, can't refresh icons") // NON-NLS
-            }
+        if (project.isProjectAlive()) {
+            checkNotNull(project)
+            RefreshIconsScheduler.getInstance(project).requestIconsRefresh()
+        } else {
+            LOGGER.warn("Project is not alive, can't refresh icons") // NON-NLS
         }
     }
 
     fun triggerProjectIconEnablersReinit(project: Project?) {
-        ApplicationManager.getApplication().runReadAction {
-            if (project.isProjectAlive()) {
-                checkNotNull(project)
-                val refreshIconsNotifier = project.messageBus
-                    .syncPublisher(RefreshIconsNotifier.EXTRA_ICONS_REFRESH_ICONS_NOTIFIER_TOPIC)
-
-                refreshIconsNotifier.reinitProjectIconEnablers(project)
-            } else {
-                LOGGER.warn("Project is not alive, can't reinit icon enablers") // NON-NLS
-            }
+        if (project.isProjectAlive()) {
+            checkNotNull(project)
+            RefreshIconsScheduler.getInstance(project).requestIconEnablersReinit()
+        } else {
+            LOGGER.warn("Project is not alive, can't reinit icon enablers") // NON-NLS
         }
     }
 
@@ -0,0 +1,91 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.messaging
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.debug
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.project.Project
+import com.intellij.util.Alarm
+import com.intellij.util.ui.update.MergingUpdateQueue
+import com.intellij.util.ui.update.Update
+import lermitage.intellij.extra.icons.utils.isProjectAlive
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Debounce the icons refresh and Icon Enablers re-init requests of a project. Requests are merged until no new
+ * request came for `extra-icons.refresh.merging.delay` ms (300 by default), then a burst of requests results in at
+ * most one Enablers re-init followed by one icons refresh (requested by the re-init once it's done), published on
+ * [RefreshIconsNotifier.EXTRA_ICONS_REFRESH_ICONS_NOTIFIER_TOPIC]. Requests merged into an already pending one
+ * are counted as dropped.
+ */
+@Service(Service.Level.PROJECT)
+class RefreshIconsScheduler(private val project: Project) : Disposable {
+
+    private val queue = MergingUpdateQueue(
+        "extra-icons refresh", MERGING_DELAY, true, null, this, null, Alarm.ThreadToUse.POOLED_THREAD
+    ).apply { setRestartTimerOnAdd(true) }
+
+    private val reinitRequested = AtomicBoolean()
+    private val refreshRequested = AtomicBoolean()
+
+    private val requests = LongAdder()
+    private val dropped = LongAdder()
+    private val reinits = LongAdder()
+    private val refreshes = LongAdder()
+
+    fun requestIconEnablersReinit() = request(reinitRequested)
+
+    fun requestIconsRefresh() = request(refreshRequested)
+
+    private fun request(requested: AtomicBoolean) {
+        requests.increment()
+        if (!requested.compareAndSet(false, true)) {
+            dropped.increment()
+        }
+        queue.queue(Update.create(FLUSH_ID) { flush() })
+    }
+
+    private fun flush() {
+        val reinit = reinitRequested.getAndSet(false)
+        val refresh = refreshRequested.getAndSet(false)
+        ApplicationManager.getApplication().runReadAction {
+            if (!project.isProjectAlive()) {
+                LOGGER.warn("Project is not alive, can't refresh icons nor reinit icon enablers") // NON-NLS
+                return@runReadAction
+            }
+            val refreshIconsNotifier = project.messageBus
+                .syncPublisher(RefreshIconsNotifier.EXTRA_ICONS_REFRESH_ICONS_NOTIFIER_TOPIC)
+            if (reinit) {
+                // Enablers are published asynchronously, then they request an icons refresh
+                reinits.increment()
+                refreshIconsNotifier.reinitProjectIconEnablers(project)
+            } else if (refresh) {
+                refreshes.increment()
+                refreshIconsNotifier.refreshProjectIcons(project)
+            }
+        }
+        LOGGER.debug { "Flushed icons refresh requests of project ${project.name}: ${statsDescription()}" }
+    }
+
+    fun statsDescription(): String =
+        "requests: ${requests.sum()}, dropped: ${dropped.sum()}, enablers reinits: ${reinits.sum()}, refreshes: ${refreshes.sum()}"
+
+    override fun dispose() {
+    }
+
+    companion object {
+        private val LOGGER = thisLogger()
+
+        private val MERGING_DELAY = Integer.getInteger("extra-icons.refresh.merging.delay", 300).coerceAtLeast(0)
+
+        private const val FLUSH_ID = "flush"
+
+        @JvmStatic
+        fun getInstance(project: Project): RefreshIconsScheduler {
+            return project.getService(RefreshIconsScheduler::class.java)
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.services
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileWithId
+import lermitage.intellij.extra.icons.AncestorNameIndex
+import java.util.BitSet
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Memo of the ancestor names of each folder of a project, used by ancestor conditions. The ancestor bits of a folder
+ * (see [AncestorNameIndex]) are computed from the ones of its parent, so a folder is processed once, and its
+ * children's lookups are a hash lookup. Folders are identified by their [VirtualFileWithId] id, and memos are bound to
+ * the index they were computed with: a new models snapshot brings a new index, which replaces memos lazily.
+ * They are also bound to a generation number, so a memo computed while a folder was renamed is never used.
+ *
+ * Renaming, moving or deleting a folder changes the ancestors of everything below it: the whole memo is then
+ * forgotten, see [invalidate]. Memos are bounded by `extra-icons.ancestors.memo.max.entries` system property
+ * (100 000 by default).
+ */
+@Service(Service.Level.PROJECT)
+class AncestorNamesService {
+
+    private class Memo(val index: AncestorNameIndex, val generation: Long, val bits: BitSet)
+
+    private val memos = ConcurrentHashMap<Int, Memo>()
+    private val generation = AtomicLong()
+
+    /**
+     * Get the ancestor bits of given folder, itself included. Returned bits must not be modified.
+     */
+    fun getAncestorBits(folder: VirtualFile, index: AncestorNameIndex): BitSet {
+        return getAncestorBits(folder, index, generation.get())
+    }
+
+    /**
+     * @param generation the generation captured before walking up the folders: if a folder is renamed meanwhile,
+     *                   the memos computed by this walk are already outdated.
+     */
+    private fun getAncestorBits(folder: VirtualFile, index: AncestorNameIndex, generation: Long): BitSet {
+        val memo = if (folder is VirtualFileWithId) memos[folder.id] else null
+        if (memo != null && memo.index === index && memo.generation == this.generation.get()) {
+            return memo.bits
+        }
+        val parent = folder.parent
+        val parentBits = if (parent == null) AncestorNameIndex.NO_ANCESTORS else getAncestorBits(parent, index, generation)
+        // same locale as ModelCondition's ancestor names and NormalizedPath
+        val bits = index.childBits(parentBits, folder.name.lowercase(Locale.getDefault()))
+        if (folder !is VirtualFileWithId) {
+            return bits
+        }
+        if (memos.size >= MAX_ENTRIES) {
+            memos.clear()
+        }
+        memos[folder.id] = Memo(index, generation, bits)
+        return bits
+    }
+
+    /**
+     * Forget every memo, once a folder was renamed, moved or deleted.
+     */
+    fun invalidate() {
+        generation.incrementAndGet()
+        memos.clear()
+    }
+
+    companion object {
+        private val MAX_ENTRIES = Integer.getInteger("extra-icons.ancestors.memo.max.entries", 100_000).coerceAtLeast(100)
+
+        @JvmStatic
+        fun getInstance(project: Project): AncestorNamesService {
+            return project.getService(AncestorNamesService::class.java)
+        }
+    }
+}
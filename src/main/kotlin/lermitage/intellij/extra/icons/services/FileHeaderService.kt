@@ -0,0 +1,103 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.services
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.concurrency.AppExecutorUtil
+import lermitage.intellij.extra.icons.FileHeader
+import lermitage.intellij.extra.icons.messaging.RefreshIconsNotifierService
+import lermitage.intellij.extra.icons.utils.isProjectAlive
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Provide the [FileHeader] of files checked by content conditions. Headers are read off the EDT, by a bounded
+ * executor, and stored in the file's user data with its modification stamp: a file is read again only once
+ * modified. Until its header is read, a file matches no content condition (so it gets the icon of the next
+ * matching model, or the default one) and its model is cached as outdated. Once read, an icons refresh is requested,
+ * which resolves outdated models again.
+ *
+ * Reads are bounded by `extra-icons.content.max.bytes` system property (512 by default).
+ */
+@Service(Service.Level.PROJECT)
+class FileHeaderService(private val project: Project) {
+
+    private val pendingFiles = ConcurrentHashMap.newKeySet<VirtualFile>()
+
+    /**
+     * Get the header of given file if it's up-to-date, otherwise schedule its read and return `null`.
+     */
+    fun getHeader(file: VirtualFile): FileHeader? {
+        val header = file.getUserData(HEADER_KEY)
+        if (header != null && header.modificationStamp == file.modificationStamp) {
+            return header
+        }
+        if (pendingFiles.add(file)) {
+            EXECUTOR.execute { readAndPublish(file) }
+        }
+        return null
+    }
+
+    private fun readAndPublish(file: VirtualFile) {
+        try {
+            if (!project.isProjectAlive() || !file.isValid) {
+                return
+            }
+            val modificationStamp = file.modificationStamp
+            val header = try {
+                readHeader(file, modificationStamp)
+            } catch (e: IOException) {
+                LOGGER.debug("Failed to read the header of ${file.path}", e)
+                FileHeader.unreadable(modificationStamp)
+            }
+            file.putUserData(HEADER_KEY, header)
+            RefreshIconsNotifierService.instance.triggerProjectIconsRefresh(project)
+        } catch (e: Exception) {
+            LOGGER.warn("Failed to sniff the content of ${file.path}", e)
+        } finally {
+            pendingFiles.remove(file)
+        }
+    }
+
+    /**
+     * Read the first bytes of given file. Local files are read with a single positional read of a file channel,
+     * other files (like archive entries) with a bounded read of their input stream.
+     */
+    @Throws(IOException::class)
+    private fun readHeader(file: VirtualFile, modificationStamp: Long): FileHeader {
+        val bytes = ByteArray(MAX_BYTES)
+        var length = 0
+        if (file.isInLocalFileSystem) {
+            FileChannel.open(file.toNioPath(), StandardOpenOption.READ).use { channel ->
+                val buffer = ByteBuffer.wrap(bytes)
+                while (buffer.hasRemaining() && channel.read(buffer, buffer.position().toLong()) >= 0) {
+                    length = buffer.position()
+                }
+            }
+        } else {
+            file.inputStream.use { inputStream -> length = inputStream.readNBytes(bytes, 0, MAX_BYTES) }
+        }
+        return FileHeader.parse(bytes, length, modificationStamp)
+    }
+
+    companion object {
+        private val LOGGER = thisLogger()
+
+        private val MAX_BYTES = Integer.getInteger("extra-icons.content.max.bytes", 512).coerceIn(16, 64 * 1024)
+
+        private val HEADER_KEY = Key.create<FileHeader>("extra-icons.file.header")
+
+        private val EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor("Extra Icons Content Sniffing", 2)
+
+        @JvmStatic
+        fun getInstance(project: Project): FileHeaderService {
+            return project.getService(FileHeaderService::class.java)
+        }
+    }
+}
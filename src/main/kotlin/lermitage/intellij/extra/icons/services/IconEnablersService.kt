@@ -0,0 +1,89 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.services
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ReadAction
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.project.Project
+import com.intellij.util.concurrency.AppExecutorUtil
+import lermitage.intellij.extra.icons.enablers.IconEnabler
+import lermitage.intellij.extra.icons.enablers.IconEnablerProvider.getIconEnabler
+import lermitage.intellij.extra.icons.enablers.IconEnablerType
+import lermitage.intellij.extra.icons.messaging.RefreshIconsNotifierService
+import lermitage.intellij.extra.icons.utils.isProjectAlive
+import org.jetbrains.concurrency.Promise
+import org.jetbrains.concurrency.collectResults
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.time.Duration
+import kotlin.time.DurationUnit
+import kotlin.time.measureTimedValue
+
+/**
+ * Initialize the Icon Enablers of a project. Each Enabler computes its state concurrently, in its own
+ * non-blocking read action, restarted if a write action comes and canceled if the project is closed. Once
+ * every Enabler is ready, their states are published together, the models cache is invalidated and an icons
+ * refresh is requested. An Enabler updated by file events after its state was computed doesn't publish this outdated
+ * state, but requests a new re-init (see [lermitage.intellij.extra.icons.enablers.AbstractInFolderEnabler.prepare]).
+ * A re-init supersedes the previous one: the previous computations are canceled, and the previous states are never
+ * published after the new ones.
+ */
+@Service(Service.Level.PROJECT)
+class IconEnablersService(private val project: Project) : Disposable {
+
+    private class PreparedEnabler(val type: IconEnablerType, val publish: Runnable, val duration: Duration)
+
+    private val reinitGeneration = AtomicLong()
+
+    fun reinit() {
+        if (!project.isProjectAlive()) {
+            return
+        }
+        val generation = reinitGeneration.incrementAndGet()
+        val preparations: List<Promise<PreparedEnabler>> = IconEnablerType.entries.mapNotNull { type ->
+            project.getIconEnabler(type)?.let { iconEnabler -> prepare(type, iconEnabler) }
+        }
+        preparations.collectResults()
+            .onSuccess { preparedEnablers ->
+                if (!project.isProjectAlive() || generation != reinitGeneration.get()) { // superseded by a newer re-init
+                    return@onSuccess
+                }
+                preparedEnablers.forEach { preparedEnabler -> preparedEnabler.publish.run() }
+                ModelCacheService.getInstance(project).invalidateAll()
+                RefreshIconsNotifierService.instance.triggerProjectIconsRefresh(project)
+                LOGGER.info("Initialized icon enablers of project ${project.name}: " +
+                    preparedEnablers.joinToString { "${it.type} in ${it.duration.toString(DurationUnit.MILLISECONDS)}" })
+            }
+            .onError { e ->
+                if (e !is CancellationException && e !is ProcessCanceledException) {
+                    LOGGER.warn("Failed to init icon enablers of project ${project.name}", e)
+                    RefreshIconsNotifierService.instance.triggerProjectIconsRefresh(project)
+                }
+            }
+    }
+
+    private fun prepare(type: IconEnablerType, iconEnabler: IconEnabler): Promise<PreparedEnabler> {
+        return ReadAction.nonBlocking<PreparedEnabler> {
+            val (publish, duration) = measureTimedValue { iconEnabler.prepare(project) }
+            PreparedEnabler(type, publish, duration)
+        }
+            .inSmartMode(project)
+            .coalesceBy(this, type)
+            .expireWith(this)
+            .submit(AppExecutorUtil.getAppExecutorService())
+    }
+
+    override fun dispose() {
+    }
+
+    companion object {
+        private val LOGGER = thisLogger()
+
+        @JvmStatic
+        fun getInstance(project: Project): IconEnablersService {
+            return project.getService(IconEnablersService::class.java)
+        }
+    }
+}
@@ -0,0 +1,180 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.services
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileWithId
+import lermitage.intellij.extra.icons.Model
+import org.jetbrains.annotations.VisibleForTesting
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Cache of the model resolved for each file of a project, in order to not re-check every model each time
+ * the IconProvider, FileIconProvider and ProjectViewNodeDecorator entry points ask for the same file's icon.
+ * Files are identified by their [VirtualFileWithId] id, and the resolved model is stored with the
+ * generation number it was computed for. A cached entry is used only if its generation is still the
+ * current one: invalidating the whole cache is a matter of incrementing a generation number.
+ *
+ * Entries are bounded by `extra-icons.model.cache.max.entries` system property (400 000 by default).
+ */
+@Service(Service.Level.PROJECT)
+class ModelCacheService @VisibleForTesting constructor(private val maxEntries: Int) {
+
+    constructor() : this(MAX_ENTRIES)
+
+    /**
+     * A resolved model. Its [model] is `null` if no model matched the file. It's [contentDependent] if a content
+     * condition was checked while resolving it.
+     */
+    class Entry(val file: VirtualFile, val generation: Long, val model: Model?, val contentDependent: Boolean)
+
+    private val entries = ConcurrentHashMap<Int, Entry>()
+    private val projectGeneration = AtomicLong()
+
+    private val hits = LongAdder()
+    private val misses = LongAdder()
+    private val evictions = LongAdder()
+
+    /**
+     * The current generation number. Capture it *before* resolving a file's model, then give it to [put]:
+     * if the cache is invalidated meanwhile, the stored entry is already outdated.
+     */
+    fun currentGeneration(): Long = GLOBAL_GENERATION.get() + projectGeneration.get()
+
+    /**
+     * Get the up-to-date entry of given file, or `null` if the file's model has to be resolved.
+     */
+    fun get(file: VirtualFile): Entry? {
+        if (file !is VirtualFileWithId) {
+            return null
+        }
+        val entry = entries[file.id]
+        if (entry == null || entry.generation != currentGeneration()) {
+            misses.increment()
+            return null
+        }
+        hits.increment()
+        return entry
+    }
+
+    fun put(file: VirtualFile, generation: Long, model: Model?, contentDependent: Boolean = false) {
+        if (file !is VirtualFileWithId) {
+            return
+        }
+        if (entries.size >= maxEntries) {
+            evict()
+        }
+        entries[file.id] = Entry(file, generation, model, contentDependent)
+    }
+
+    /**
+     * Mark given file's entry as outdated if its model depends on the file's content, once the file was modified:
+     * it's then part of [outdatedEntries], so the next icons refresh resolves it again. Returns `true` if so.
+     */
+    fun invalidateContent(file: VirtualFile): Boolean {
+        if (file !is VirtualFileWithId) {
+            return false
+        }
+        val entry = entries[file.id]
+        if (entry == null || !entry.contentDependent) {
+            return false
+        }
+        entries[file.id] = Entry(file, OUTDATED_GENERATION, entry.model, true)
+        return true
+    }
+
+    /**
+     * Forget given file. If it's a directory, the path of its children changed too, so the whole cache is invalidated.
+     */
+    fun invalidate(file: VirtualFile) {
+        if (file.isDirectory) {
+            invalidateAll()
+        } else if (file is VirtualFileWithId) {
+            entries.remove(file.id)
+        }
+    }
+
+    /**
+     * Forget given folder and the files it contains.
+     * @param folderPath system-independent path of the folder.
+     */
+    fun invalidateFolder(folderPath: String) {
+        val childrenPrefix = "$folderPath/"
+        entries.values.removeIf { entry -> entry.file.path == folderPath || entry.file.path.startsWith(childrenPrefix) }
+    }
+
+    /**
+     * Get the entries resolved before the cache was last invalidated: the files whose icon may have changed since.
+     */
+    fun outdatedEntries(): List<Entry> {
+        val generation = currentGeneration()
+        return entries.values.filter { entry -> entry.generation != generation }
+    }
+
+    fun invalidateAll() {
+        projectGeneration.incrementAndGet()
+    }
+
+    /**
+     * Remove outdated entries, then about 10% of the remaining entries if the cache is still full.
+     */
+    private fun evict() {
+        val generation = currentGeneration()
+        var removed = 0L
+        entries.values.removeIf { entry -> (entry.generation != generation).also { if (it) removed++ } }
+        if (entries.size >= maxEntries) {
+            val iterator = entries.keys.iterator()
+            var toRemove = maxEntries / 10
+            while (toRemove-- > 0 && iterator.hasNext()) {
+                iterator.next()
+                iterator.remove()
+                removed++
+            }
+        }
+        evictions.add(removed)
+    }
+
+    fun size(): Int = entries.size
+
+    fun getHits(): Long = hits.sum()
+
+    fun getMisses(): Long = misses.sum()
+
+    fun getEvictions(): Long = evictions.sum()
+
+    fun statsDescription(): String {
+        val hits = getHits()
+        val lookups = hits + getMisses()
+        return "model cache size: ${size()}/$maxEntries, " +
+            "hits: $hits (${if (lookups == 0L) 0 else hits * 100 / lookups}%), " +
+            "misses: ${getMisses()}, evictions: ${getEvictions()}"
+    }
+
+    companion object {
+        private val MAX_ENTRIES = Integer.getInteger("extra-icons.model.cache.max.entries", 400_000).coerceAtLeast(100)
+
+        private val GLOBAL_GENERATION = AtomicLong()
+
+        /**
+         * Generation to [put] an entry which is outdated from the start, like the model of a file whose content
+         * is being read: it's not used by lookups, but it's part of [outdatedEntries]. Generations are never negative.
+         */
+        const val OUTDATED_GENERATION = -1L
+
+        @JvmStatic
+        fun getInstance(project: Project): ModelCacheService {
+            return project.getService(ModelCacheService::class.java)
+        }
+
+        /**
+         * Invalidate the cache of every project, per example when IDE settings changed.
+         */
+        @JvmStatic
+        fun invalidateAllProjects() {
+            GLOBAL_GENERATION.incrementAndGet()
+        }
+    }
+}
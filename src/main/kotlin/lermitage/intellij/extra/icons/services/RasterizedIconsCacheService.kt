@@ -0,0 +1,301 @@
+// SPDX-License-Identifier: MIT
+package lermitage.intellij.extra.icons.services
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.project.ProjectManager
+import com.intellij.openapi.project.ProjectManagerListener
+import com.intellij.ui.scale.ScaleContext
+import com.intellij.util.JBHiDPIScaledImage
+import com.intellij.util.ui.ImageUtil
+import lermitage.intellij.extra.icons.cfg.services.SettingsIDEService
+import lermitage.intellij.extra.icons.cfg.services.SettingsProjectService
+import lermitage.intellij.extra.icons.cfg.services.SettingsService
+import org.apache.commons.codec.binary.Hex
+import org.apache.commons.codec.digest.DigestUtils
+import org.jetbrains.annotations.VisibleForTesting
+import java.awt.Image
+import java.awt.image.BufferedImage
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.CRC32
+
+/**
+ * Persistent cache of rasterized user icons, so warm starts don't decode and rasterize user icons again. Icons are
+ * identified by the SHA1 of their Base64 content, the scale and the icon and UI types they were rendered for.
+ *
+ * The cache is one file in the IDE system directory, memory-mapped on first use. Each entry is checked against
+ * its CRC32 before being used. New entries are kept in memory and the file is rewritten when the IDE shuts down.
+ * Entries used during the session, or referenced by the user models of the IDE settings or of a project opened during
+ * the session, are kept. Other entries may belong to a project which was not opened: they are kept until they are
+ * left unused for `extra-icons.rasterized.cache.max.idle.sessions` sessions (10 by default). The new file is
+ * written next to the mapped one and replaces it on next start, before being mapped: Windows doesn't replace a file
+ * which is still mapped.
+ */
+@Service(Service.Level.APP)
+class RasterizedIconsCacheService @VisibleForTesting constructor(private val cacheFile: Path) : Disposable {
+
+    data class Key(val contentHash: String, val scale: Double, val iconType: Int, val uiType: Int)
+
+    /**
+     * @param hiDPI if the pixels are the device pixels of a HiDPI image, to wrap again as a HiDPI image.
+     * @param idleSessions number of past sessions during which the entry was neither used nor referenced.
+     */
+    private class Entry(val width: Int, val height: Int, val crc: Int, val mappedOffset: Int, val pixels: IntArray?,
+                        val hiDPI: Boolean, val idleSessions: Int = 0)
+
+    private val nextCacheFile: Path = cacheFile.resolveSibling("$CACHE_FILE_NAME.next")
+
+    private val entries = ConcurrentHashMap<Key, Entry>()
+    private val usedKeys = ConcurrentHashMap.newKeySet<Key>()
+
+    /** Hashes of the user icons of the projects closed during the session. */
+    private val closedProjectsHashes = ConcurrentHashMap.newKeySet<String>()
+
+    @Volatile
+    private var mapped: MappedByteBuffer? = null
+
+    @Volatile
+    private var dirty = false
+
+    init {
+        load()
+    }
+
+    constructor() : this(Path.of(PathManager.getSystemPath(), "extra-icons", CACHE_FILE_NAME)) {
+        ApplicationManager.getApplication().messageBus.connect(this)
+            .subscribe(ProjectManager.TOPIC, object : ProjectManagerListener {
+                override fun projectClosing(project: Project) {
+                    closedProjectsHashes.addAll(userIconHashes(SettingsProjectService.getInstance(project)))
+                }
+            })
+    }
+
+    /**
+     * Get the cached rendering of given icon, or `null` if it's missing or corrupted.
+     */
+    fun get(key: Key): Image? {
+        val entry = entries[key] ?: return null
+        val pixels = entry.pixels ?: readMappedPixels(key, entry) ?: return null
+        usedKeys.add(key)
+        val image = BufferedImage(entry.width, entry.height, BufferedImage.TYPE_INT_ARGB)
+        image.setRGB(0, 0, entry.width, entry.height, pixels, 0, entry.width)
+        return if (entry.hiDPI) ImageUtil.ensureHiDPI(image, ScaleContext.create()) else image
+    }
+
+    /**
+     * Store the rendering of given icon. A HiDPI image is stored as its device pixels, and wrapped again by [get]:
+     * the system scale it was rendered for is expected to be part of the key.
+     */
+    fun put(key: Key, image: Image) {
+        // a JBHiDPIScaledImage is a BufferedImage, but its pixels are the ones of the image it wraps
+        val hiDPI = image is JBHiDPIScaledImage
+        val bufferedImage = (if (image is JBHiDPIScaledImage) image.delegate else image) as? BufferedImage ?: return
+        if (bufferedImage.width !in 1..MAX_ICON_SIZE || bufferedImage.height !in 1..MAX_ICON_SIZE) {
+            return
+        }
+        val width = bufferedImage.width
+        val height = bufferedImage.height
+        val pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width)
+        entries[key] = Entry(width, height, crc(width, height, pixels), -1, pixels, hiDPI)
+        usedKeys.add(key)
+        dirty = true
+    }
+
+    override fun dispose() {
+        try {
+            flush()
+        } catch (e: Exception) {
+            LOGGER.warn("Failed to save the rasterized icons cache to $cacheFile", e)
+        }
+    }
+
+    private fun load() {
+        promoteNextCacheFile()
+        try {
+            if (!Files.isRegularFile(cacheFile) || Files.size(cacheFile) < HEADER_SIZE) {
+                return
+            }
+            val buffer = FileChannel.open(cacheFile, StandardOpenOption.READ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                LOGGER.info("Ignoring rasterized icons cache $cacheFile: unknown format")
+                dirty = true
+                return
+            }
+            val nbEntries = buffer.getInt(8)
+            var offset = HEADER_SIZE
+            for (i in 0 until nbEntries) {
+                if (offset + ENTRY_HEADER_SIZE > buffer.capacity()) {
+                    break
+                }
+                val hash = ByteArray(HASH_SIZE)
+                buffer.get(offset, hash)
+                val key = Key(Hex.encodeHexString(hash), buffer.getDouble(offset + 20), buffer.get(offset + 28).toInt(), buffer.get(offset + 29).toInt())
+                val hiDPI = buffer.get(offset + 30).toInt() != 0
+                val idleSessions = buffer.get(offset + 31).toInt()
+                val width = buffer.getInt(offset + 32)
+                val height = buffer.getInt(offset + 36)
+                val crc = buffer.getInt(offset + 40)
+                val pixelsOffset = offset + ENTRY_HEADER_SIZE
+                if (width !in 1..MAX_ICON_SIZE || height !in 1..MAX_ICON_SIZE || pixelsOffset.toLong() + 4L * width * height > buffer.capacity()) {
+                    LOGGER.info("Rasterized icons cache $cacheFile is truncated or corrupted, ignoring its last entries")
+                    dirty = true
+                    break
+                }
+                entries[key] = Entry(width, height, crc, pixelsOffset, null, hiDPI, idleSessions)
+                offset = pixelsOffset + 4 * width * height
+            }
+            mapped = buffer
+        } catch (e: Exception) {
+            LOGGER.warn("Failed to load the rasterized icons cache from $cacheFile", e)
+            entries.clear()
+            dirty = true
+        }
+    }
+
+    /**
+     * Replace the cache file by the one written when the IDE last shut down, if any. Nothing is mapped yet.
+     */
+    private fun promoteNextCacheFile() {
+        if (!Files.isRegularFile(nextCacheFile)) {
+            return
+        }
+        try {
+            Files.move(nextCacheFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } catch (e: Exception) {
+            LOGGER.warn("Failed to replace the rasterized icons cache $cacheFile by $nextCacheFile", e)
+            try {
+                Files.deleteIfExists(nextCacheFile)
+            } catch (e: Exception) {
+                LOGGER.warn("Failed to delete $nextCacheFile", e)
+            }
+        }
+    }
+
+    private fun readMappedPixels(key: Key, entry: Entry): IntArray? {
+        val buffer = mapped ?: return null
+        val pixels = IntArray(entry.width * entry.height)
+        buffer.duplicate().position(entry.mappedOffset).asIntBuffer().get(pixels)
+        if (crc(entry.width, entry.height, pixels) != entry.crc) {
+            LOGGER.info("Rasterized icons cache $cacheFile has a corrupted entry, dropping it")
+            entries.remove(key)
+            dirty = true
+            return null
+        }
+        return pixels
+    }
+
+    private fun flush() {
+        val referencedHashes = HashSet(closedProjectsHashes)
+        referencedHashes.addAll(userIconHashes(SettingsIDEService.getInstance()))
+        for (project in ProjectManager.getInstance().openProjects) {
+            referencedHashes.addAll(userIconHashes(SettingsProjectService.getInstance(project)))
+        }
+        save(referencedHashes)
+    }
+
+    /**
+     * Write the entries to keep to the file which replaces the cache file on next start.
+     * @param referencedHashes hashes of the user icons referenced by settings.
+     */
+    @VisibleForTesting
+    @Synchronized
+    fun save(referencedHashes: Set<String>) {
+        val keptEntries = HashMap<Key, Entry>()
+        for ((key, entry) in entries) {
+            val idleSessions = if (key in usedKeys || key.contentHash in referencedHashes) 0 else entry.idleSessions + 1
+            if (idleSessions <= MAX_IDLE_SESSIONS) {
+                keptEntries[key] = Entry(entry.width, entry.height, entry.crc, entry.mappedOffset, entry.pixels, entry.hiDPI, idleSessions)
+            }
+        }
+        if (!dirty && keptEntries.size == entries.size && keptEntries.values.all { entry -> entry.idleSessions == 0 }) {
+            return
+        }
+        Files.createDirectories(cacheFile.parent)
+        val tmpFile = cacheFile.resolveSibling("$CACHE_FILE_NAME.tmp")
+        try {
+            writeEntries(tmpFile, keptEntries)
+            // the mapped file is replaced on next start, see promoteNextCacheFile
+            Files.move(tmpFile, nextCacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            dirty = false
+        } finally {
+            Files.deleteIfExists(tmpFile)
+        }
+    }
+
+    private fun writeEntries(file: Path, keptEntries: Map<Key, Entry>) {
+        DataOutputStream(BufferedOutputStream(Files.newOutputStream(file))).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            val writableEntries = keptEntries.mapNotNull { (key, entry) ->
+                val pixels = entry.pixels ?: readMappedPixels(key, entry)
+                if (pixels == null) null else Triple(key, entry, pixels)
+            }
+            out.writeInt(writableEntries.size)
+            for ((key, entry, pixels) in writableEntries) {
+                out.write(Hex.decodeHex(key.contentHash))
+                out.writeDouble(key.scale)
+                out.writeByte(key.iconType)
+                out.writeByte(key.uiType)
+                out.writeByte(if (entry.hiDPI) 1 else 0)
+                out.writeByte(entry.idleSessions)
+                out.writeInt(entry.width)
+                out.writeInt(entry.height)
+                out.writeInt(entry.crc)
+                val pixelBytes = ByteBuffer.allocate(4 * pixels.size)
+                pixelBytes.asIntBuffer().put(pixels)
+                out.write(pixelBytes.array())
+            }
+        }
+    }
+
+    companion object {
+        private val LOGGER = thisLogger()
+
+        private const val CACHE_FILE_NAME = "rasterized-icons.bin"
+        private const val MAGIC = 0x58494943 // "XIIC"
+        private const val FORMAT_VERSION = 3
+        private const val HEADER_SIZE = 12
+        private const val HASH_SIZE = 20
+        private const val ENTRY_HEADER_SIZE = HASH_SIZE + 8 + 1 + 1 + 1 + 1 + 4 + 4 + 4
+        private const val MAX_ICON_SIZE = 512
+        private val MAX_IDLE_SESSIONS = Integer.getInteger("extra-icons.rasterized.cache.max.idle.sessions", 10).coerceIn(0, 100)
+
+        @JvmStatic
+        fun getInstance(): RasterizedIconsCacheService =
+            ApplicationManager.getApplication().getService(RasterizedIconsCacheService::class.java)
+
+        /**
+         * Hash the Base64 content of a user icon.
+         */
+        @JvmStatic
+        fun contentHash(base64: String): String = DigestUtils.sha1Hex(base64)
+
+        private fun userIconHashes(settingsService: SettingsService): Set<String> =
+            settingsService.getCustomModels()
+                .mapNotNull { model -> model.icon }
+                .mapTo(HashSet()) { icon -> contentHash(icon) }
+
+        private fun crc(width: Int, height: Int, pixels: IntArray): Int {
+            val bytes = ByteBuffer.allocate(8 + 4 * pixels.size)
+            bytes.putInt(width).putInt(height).asIntBuffer().put(pixels)
+            val crc32 = CRC32()
+            crc32.update(bytes.array())
+            return crc32.value.toInt()
+        }
+    }
+}
@@ -8,40 +8,86 @@ import com.intellij.openapi.diagnostic.fileLogger
 import com.intellij.openapi.progress.ProcessCanceledException
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.ui.NewUI
+import com.intellij.ui.scale.JBUIScale
+import com.intellij.ui.scale.ScaleContext
 import com.intellij.util.IconUtil
-import com.intellij.util.system.OS
+import com.intellij.util.SVGLoader
+import com.intellij.util.containers.CollectionFactory
 import com.intellij.util.ui.ImageUtil
 import lermitage.intellij.extra.icons.ExtraIcons
 import lermitage.intellij.extra.icons.IconType
 import lermitage.intellij.extra.icons.Model
 import lermitage.intellij.extra.icons.UITypeIconsPreference
 import lermitage.intellij.extra.icons.cfg.services.SettingsService
-import org.apache.commons.codec.digest.DigestUtils
-import org.apache.commons.io.FileUtils
+import lermitage.intellij.extra.icons.services.RasterizedIconsCacheService
 import java.awt.Image
 import java.io.ByteArrayInputStream
-import java.io.File
 import java.io.IOException
-import java.util.UUID
+import java.util.concurrent.ConcurrentMap
 import javax.imageio.ImageIO
+import kotlin.math.roundToInt
 import javax.swing.Icon
 
 private val ICON_LOGGER = fileLogger()
 
 private const val SCALING_SIZE = 16
 
-private val TMP_FOLDER = File(System.getProperty("java.io.tmpdir"))
+/** Key of a decoded user icon: its Base64 content (compared by content) and the scale it was rendered at. */
+private data class UserIconKey(val base64: String, val iconType: IconType, val additionalUIScale: Double)
 
-private val IDE_INSTANCE_UNIQUE_ID = UUID.randomUUID().toString()
+/** Cached value of user icons which can't be decoded, so they are not decoded again on every lookup. */
+private val NO_USER_ICON = Any()
+
+/** Decoded and scaled user icons. Values are soft references, so the cache shrinks under memory pressure. */
+private val USER_ICONS_CACHE: ConcurrentMap<UserIconKey, Any> = CollectionFactory.createConcurrentSoftValueMap()
+
+@Volatile
+private var userIconsCacheModelsVersion = -1L
+
+@Volatile
+private var userIconsCacheUIScale = Double.NaN
 
 fun getIcon(model: Model, additionalUIScale: Double, uiTypeIconsPreference: UITypeIconsPreference): Icon? {
     return if (model.iconType == IconType.PATH) {
         val iconPathToLoad = getIconPathToLoad(model, uiTypeIconsPreference)
         ExtraIcons.getIcon(iconPathToLoad)
     } else {
-        val base64 = loadImageFromBase64(model.icon, model.iconType, additionalUIScale) ?: return null
-        IconUtil.createImageIcon(base64.image)
+        getUserIcon(model, additionalUIScale)
+    }
+}
+
+/**
+ * Get the icon of a user model (SVG or IMG icon type), decoded from Base64 and scaled once, then cached. The cache
+ * is cleared when the models list or the additional UI scale changes. Rasterized icons are also persisted by
+ * [RasterizedIconsCacheService], so they are not decoded again after an IDE restart.
+ */
+private fun getUserIcon(model: Model, additionalUIScale: Double): Icon? {
+    val base64 = model.icon ?: return null
+    val modelsVersion = SettingsService.getModelsVersion()
+    if (modelsVersion != userIconsCacheModelsVersion || additionalUIScale != userIconsCacheUIScale) {
+        USER_ICONS_CACHE.clear()
+        userIconsCacheModelsVersion = modelsVersion
+        userIconsCacheUIScale = additionalUIScale
+    }
+    val icon = USER_ICONS_CACHE.computeIfAbsent(UserIconKey(base64, model.iconType, additionalUIScale)) {
+        val rasterizedIconsCache = RasterizedIconsCacheService.getInstance()
+        // the system scale is part of the key: an icon rendered for a regular screen would be blurry on a HiDPI one
+        val rasterizedIconKey = RasterizedIconsCacheService.Key(
+            RasterizedIconsCacheService.contentHash(base64), additionalUIScale * JBUIScale.sysScale(), model.iconType.ordinal, if (NewUI.isEnabled()) 1 else 0)
+        val rasterizedImage = rasterizedIconsCache.get(rasterizedIconKey)
+        if (rasterizedImage != null) {
+            IconUtil.createImageIcon(rasterizedImage)
+        } else {
+            val image = loadImageFromBase64(base64, model.iconType, additionalUIScale)
+            if (image == null) {
+                NO_USER_ICON
+            } else {
+                rasterizedIconsCache.put(rasterizedIconKey, image.image)
+                IconUtil.createImageIcon(image.image)
+            }
+        }
     }
+    return icon as? Icon
 }
 
 private fun getIconPathToLoad(model: Model, uiTypeIconsPreference: UITypeIconsPreference): String {
@@ -79,69 +125,42 @@ fun loadImageFromBase64(base64: String?, iconType: IconType, additionalUIScale:
 }
 
 /**
- * Creates or retrieves a temporary SVG file based on the provided image
- * bytes. If the SVG file already exists, it is returned. Otherwise, a new
- * file is created with the SHA1 of specified image bytes and returned.
- * The temporary file is deleted when the virtual machine terminates.
- *
- * @param imageBytes the bytes of the image.
- * @return the temporary SVG file.
- * @throws IOException if an I/O error occurs while creating or accessing
- *    the file.
+ * Render SVG bytes to an image, in memory. Icons which are not 16px wide are scaled according to the additional UI
+ * scale. Sizes are in user space: the SVG is rendered once for the target size at the system scale, then wrapped as a
+ * HiDPI image, so it's not upscaled (and blurry) on HiDPI screens.
  */
-@Synchronized
-@Throws(IOException::class)
-fun createOrGetTempSVGFile(imageBytes: ByteArray): File {
-    val svgFile = File(TMP_FOLDER, "extra-icons-user-icon" + IDE_INSTANCE_UNIQUE_ID + "-" + DigestUtils.sha1Hex(imageBytes) + ".svg")
-
-    if (!svgFile.exists()) {
-        svgFile.deleteOnExit()
-        FileUtils.writeByteArrayToFile(svgFile, imageBytes)
-    }
-
-    return svgFile
-}
-
 private fun loadSVGAsImageWrapper(imageBytes: ByteArray, additionalUIScale: Double): ImageWrapper.Base64Image? {
     return try {
-        val svgFile = createOrGetTempSVGFile(imageBytes)
-        val svgFilePath = svgFile.absolutePath
-        try {
-            // TODO see if should use VfsUtil.fixURLforIDEA(urlStr)
-            val prefix = if (OS.CURRENT == OS.Windows) "file:/" else "file://"
-            val icon = ExtraIcons.getIcon(prefix + svgFile.absolutePath.replace("\\\\".toRegex(), "/"))
-            val scaleSize = (SCALING_SIZE * additionalUIScale).toInt()
-            when {
-                icon.iconWidth == 16 -> ImageWrapper.Base64Image(IconType.SVG, IconUtil.toImage(icon), imageBytes)
-
-                additionalUIScale == 1.0 || additionalUIScale == 2.0 -> { // ???
-                    var image = IconUtil.toImage(icon)
-                    image = ImageUtil.scaleImage(image, scaleSize, scaleSize)
-                    ImageWrapper.Base64Image(IconType.SVG, image.scale(SCALING_SIZE), imageBytes)
-                }
-
-                else -> {
-                    var image = IconUtil.toImage(icon)
-                    image = ImageUtil.scaleImage(image, scaleSize, scaleSize)
-                    ImageWrapper.Base64Image(IconType.SVG, image, imageBytes)
-                }
-            }
-        } catch (e: Exception) {
-            // avoid error report: com.intellij.openapi.application.rw.ReadCancellationException
-            // java.lang.Throwable: Control-flow exceptions (e.g. this class com.intellij.openapi.progress.CeProcessCanceledException) should
-            // never be logged. Instead, these should have been rethrown if caught.
-            if (e is ReadCancellationException || e is ProcessCanceledException)
-                ICON_LOGGER.warn("Can't load an SVG user icon (path: $svgFilePath): ${e.message}")
-            else
-                ICON_LOGGER.error(e)
+        val svgWidth = renderSVG(imageBytes, 1f).getWidth(null)
+        if (svgWidth <= 0) {
             return null
         }
-    } catch (e: IOException) {
-        ICON_LOGGER.error(e)
+        val targetSize = when {
+            svgWidth == SCALING_SIZE -> SCALING_SIZE
+            additionalUIScale == 1.0 || additionalUIScale == 2.0 -> SCALING_SIZE // ???
+            else -> (SCALING_SIZE * additionalUIScale).toInt()
+        }
+        val sysScale = JBUIScale.sysScale()
+        val svgImage = renderSVG(imageBytes, sysScale * targetSize / svgWidth)
+        val deviceSize = (targetSize * sysScale).roundToInt()
+        val image = if (svgImage.getWidth(null) == deviceSize) svgImage else ImageUtil.scaleImage(svgImage, deviceSize, deviceSize)
+        ImageWrapper.Base64Image(IconType.SVG, ImageUtil.ensureHiDPI(image, ScaleContext.create()), imageBytes)
+    } catch (e: Exception) {
+        // avoid error report: com.intellij.openapi.application.rw.ReadCancellationException
+        // java.lang.Throwable: Control-flow exceptions (e.g. this class com.intellij.openapi.progress.CeProcessCanceledException) should
+        // never be logged. Instead, these should have been rethrown if caught.
+        if (e is ReadCancellationException || e is ProcessCanceledException)
+            ICON_LOGGER.warn("Can't load an SVG user icon: ${e.message}")
+        else
+            ICON_LOGGER.error(e)
         null
     }
 }
 
+private fun renderSVG(imageBytes: ByteArray, scale: Float): Image {
+    return ByteArrayInputStream(imageBytes).use { byteArrayInputStream -> SVGLoader.load(byteArrayInputStream, scale) }
+}
+
 fun loadImage(imageBytes: ByteArray, iconType: IconType, additionalUIScale: Double): ImageWrapper.Base64Image? {
     if (iconType == IconType.SVG) {
         return try {
@@ -0,0 +1,53 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class AncestorNameIndexTest {
+
+    @Test
+    public void folder_bits_should_be_derived_from_parent_bits() {
+        AncestorNameIndex index = new AncestorNameIndex(List.of("migrations", "fixtures", "migrations"));
+        assertEquals(-1, index.bitOf("src"));
+
+        BitSet home = index.childBits(AncestorNameIndex.NO_ANCESTORS, "home");
+        BitSet migrations = index.childBits(index.childBits(home, "db"), "migrations");
+        BitSet v1 = index.childBits(migrations, "v1");
+        assertSame("untracked folders share their parent's bits", AncestorNameIndex.NO_ANCESTORS, home);
+        assertSame(migrations, v1);
+        assertTrue(index.containsAny(v1, Set.of("migrations")));
+        assertTrue(index.containsAny(v1, Set.of("other", "migrations")));
+        assertFalse(index.containsAny(v1, Set.of("fixtures")));
+        assertFalse(index.containsAny(v1, Set.of("v1")));
+        assertTrue(AncestorNameIndex.NO_ANCESTORS.isEmpty());
+    }
+
+    @Test
+    public void ancestor_condition_should_match_files_below_folder() {
+        Model migration = Model.ofFile("migration", "/extra-icons/sql.svg", "Migration").ancestors("Migrations").end(".sql");
+        Model underFixtures = Model.ofFile("fixture", "/extra-icons/fixture.svg", "Fixture").ancestors("fixtures");
+        assertTrue(check(migration, "/home/user/project/db/migrations/v1/001_init.sql"));
+        assertFalse(check(migration, "/home/user/project/db/migrations/v1/readme.md"));
+        assertFalse(check(migration, "/home/user/project/db/001_init.sql"));
+        assertTrue(check(underFixtures, "/home/user/project/test/fixtures/a/b/data.json"));
+        assertFalse(check(underFixtures, "/home/user/project/test/fixtures"));
+
+        assertTrue(ModelMatcher.isResidual(underFixtures.getConditions().get(0)));
+        assertFalse(ModelMatcher.isResidual(migration.getConditions().get(0)));
+    }
+
+    private static boolean check(Model model, String fullPath) {
+        return model.check(NormalizedPath.ofFullPath(fullPath), Set.of(), ModelMatcherTest.PROJECT);
+    }
+}
@@ -0,0 +1,65 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class FileHeaderTest {
+
+    @Test
+    public void shebang_interpreter_should_be_found_without_version_nor_env() {
+        assertEquals("python", header("#!/usr/bin/python3.12\nprint('hello')").getInterpreter());
+        assertEquals("python", header("#!/usr/bin/env python3\n").getInterpreter());
+        assertEquals("node", header("#!/usr/bin/env -S NODE_ENV=dev node --inspect\r\n").getInterpreter());
+        assertEquals("bash", header("#! /bin/bash").getInterpreter());
+        assertNull(header("#!/usr/bin/env\n").getInterpreter());
+        assertNull(header("# comment\n").getInterpreter());
+    }
+
+    @Test
+    public void xml_root_should_be_found_after_prolog() {
+        assertEquals("project", header("<?xml version=\"1.0\"?>\n<!-- <notroot> -->\n<project xmlns=\"x\">").getXmlRoot());
+        assertEquals("beans", header("\uFEFF<!DOCTYPE beans [<!ENTITY a \"b\">]>\n<s:beans/>").getXmlRoot());
+        assertEquals("svg", header("  <svg>").getXmlRoot());
+        assertNull(header("<?xml version=\"1.0\"?>\n<proj").getXmlRoot()); // truncated
+        assertNull(header("{\"key\": \"<value>\"}").getXmlRoot());
+    }
+
+    @Test
+    public void signatures_should_match_header() {
+        FileHeader elf = FileHeader.parse(new byte[]{0x7f, 'E', 'L', 'F', 2}, 5, 0);
+        assertTrue(elf.matches("0x7f454c46"));
+        assertTrue(elf.matches("0x7f454c4602"));
+        assertFalse(elf.matches("0x7f454c4602ff"));
+        assertFalse(elf.matches("0x"));
+        assertTrue(header("#!/bin/sh\n").matches("#!sh"));
+        assertFalse(header("#!/bin/bash\n").matches("#!sh"));
+        assertTrue(header("<project>").matches("<project"));
+        assertFalse(header("<project>").matches("<proj"));
+        assertFalse(FileHeader.unreadable(0).matches("0x00"));
+    }
+
+    @Test
+    public void signatures_should_be_validated() {
+        assertTrue(FileHeader.isValidSignature("#!python"));
+        assertTrue(FileHeader.isValidSignature("<project"));
+        assertTrue(FileHeader.isValidSignature("0xcafebabe"));
+        assertFalse(FileHeader.isValidSignature("#!"));
+        assertFalse(FileHeader.isValidSignature("0xcafebab"));
+        assertFalse(FileHeader.isValidSignature("0xcafebabz"));
+        assertFalse(FileHeader.isValidSignature("python"));
+    }
+
+    private static FileHeader header(String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return FileHeader.parse(bytes, bytes.length, 0);
+    }
+}
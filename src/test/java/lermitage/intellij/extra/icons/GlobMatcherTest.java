@@ -0,0 +1,109 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class GlobMatcherTest {
+
+    @Test
+    public void glob_should_match_end_of_path() {
+        GlobMatcher glob = GlobMatcher.compile("charts/*/values*.yaml");
+        assertTrue(matches(glob, "/home/user/project/charts/api/values.yaml"));
+        assertTrue(matches(glob, "/home/user/project/charts/api/values-prod.yaml"));
+        assertFalse(matches(glob, "/home/user/project/charts/values.yaml"));
+        assertFalse(matches(glob, "/home/user/project/charts/api/templates/values.yaml"));
+        assertFalse(matches(glob, "/home/user/project/charts/api/values.yml"));
+        assertFalse(matches(glob, "/home/user/project/mycharts/api/values.yaml"));
+    }
+
+    @Test
+    public void double_star_should_match_any_number_of_folders() {
+        GlobMatcher glob = GlobMatcher.compile("src/**/*.ts");
+        assertTrue(matches(glob, "/p/src/index.ts"));
+        assertTrue(matches(glob, "/p/src/a/b/c/index.ts"));
+        assertFalse(matches(glob, "/p/lib/index.ts"));
+
+        GlobMatcher allChildren = GlobMatcher.compile("docs/**");
+        assertTrue(matches(allChildren, "/p/docs/a/b.md"));
+        assertFalse(matches(allChildren, "/p/docs"));
+    }
+
+    @Test
+    public void anchored_glob_should_match_whole_path() {
+        GlobMatcher glob = GlobMatcher.compile("/home/*/project/?.txt");
+        assertTrue(matches(glob, "/home/user/project/a.txt"));
+        assertFalse(matches(glob, "/home/user/project/ab.txt"));
+        assertFalse(matches(glob, "/data/home/user/project/a.txt"));
+    }
+
+    @Test
+    public void alternatives_should_be_expanded() {
+        GlobMatcher glob = GlobMatcher.compile("Charts/*/values.{yaml,yml}");
+        assertTrue(matches(glob, "/p/charts/api/values.yaml"));
+        assertTrue(matches(glob, "/p/charts/api/values.yml"));
+        assertFalse(matches(glob, "/p/charts/api/values.json"));
+        assertFalse(GlobMatcher.isValid("a/{b,c"));
+        assertFalse(GlobMatcher.isValid("a/{b,{c,d}}"));
+        assertFalse(GlobMatcher.isValid("{a,b/c}"));
+        assertFalse(GlobMatcher.isValid(" "));
+        assertFalse(GlobMatcher.isValid("/"));
+    }
+
+    @Test
+    public void index_keys_should_come_from_file_name() {
+        assertEquals(List.of(new GlobMatcher.IndexKey(GlobMatcher.IndexKind.PREFIX, "values")),
+            GlobMatcher.compile("charts/*/values*.yaml").getIndexKeys());
+        assertEquals(List.of(new GlobMatcher.IndexKey(GlobMatcher.IndexKind.SUFFIX, ".yaml"), new GlobMatcher.IndexKey(GlobMatcher.IndexKind.SUFFIX, ".yml")),
+            GlobMatcher.compile("**/*.{yaml,yml}").getIndexKeys());
+        assertEquals(List.of(new GlobMatcher.IndexKey(GlobMatcher.IndexKind.EQ, "chart.yaml")),
+            GlobMatcher.compile("charts/*/chart.yaml").getIndexKeys());
+        assertNull(GlobMatcher.compile("charts/*").getIndexKeys());
+        assertNull(GlobMatcher.compile("charts/**").getIndexKeys());
+    }
+
+    @Test
+    public void common_regexes_should_be_rewritten_as_globs() {
+        assertEquals("foo/**/*.bar", GlobMatcher.suggestFromRegex(".*/foo/.*\\.bar"));
+        assertEquals("charts/*/values*.yaml", GlobMatcher.suggestFromRegex(".*/charts/[^/]*/values[^/]*\\.yaml"));
+        assertEquals("charts/?*/values*.yaml", GlobMatcher.suggestFromRegex(".*/charts/[^/]+/values[^/]*\\.yaml"));
+        assertNull(GlobMatcher.suggestFromRegex(".*/charts/[^/]+/values.*\\.yaml")); // values.* may span folders
+        assertEquals("*.{yaml,yml}", GlobMatcher.suggestFromRegex("^.*\\.(yaml|yml)$"));
+        assertEquals("/home/user/**/a.txt", GlobMatcher.suggestFromRegex("/home/user/.*/a\\.txt"));
+        assertNull(GlobMatcher.suggestFromRegex(".*/foo\\d+\\.bar"));
+        assertNull(GlobMatcher.suggestFromRegex(".*/fo+\\.bar"));
+        assertNull(GlobMatcher.suggestFromRegex(".*/foo.bar"));
+        assertNull(GlobMatcher.suggestFromRegex(".*/a.*b/c"));
+        assertNull(GlobMatcher.suggestFromRegex("foo/bar")); // relative, never matches an absolute path
+    }
+
+    @Test
+    public void glob_conditions_should_be_indexed() {
+        Model helmValues = Model.ofFile("helm_values", "/extra-icons/helm.svg", "Helm values").glob("charts/*/values*.yaml");
+        Model anyChild = Model.ofFile("docs", "/extra-icons/docs.svg", "Docs").glob("docs/*");
+        List<Model> models = List.of(helmValues, anyChild);
+        NormalizedPath valuesPath = NormalizedPath.ofFullPath("/p/charts/api/values.yaml");
+
+        ModelMatcher matcher = new ModelMatcher(models, null);
+        assertTrue(matcher.findCandidates(valuesPath).get(0));
+        assertFalse(matcher.findCandidates(NormalizedPath.ofFullPath("/p/charts/api/chart.yaml")).get(0));
+        assertTrue(matcher.findCandidates(NormalizedPath.ofFullPath("/p/charts/api/chart.yaml")).get(1)); // residual
+
+        ModelRejectFilter rejectFilter = new ModelRejectFilter(List.of(helmValues));
+        assertTrue(rejectFilter.mightMatch(valuesPath));
+        assertEquals(0, rejectFilter.getConservativeModels().length);
+        assertEquals(1, new ModelRejectFilter(List.of(anyChild)).getConservativeModels().length);
+    }
+
+    private static boolean matches(GlobMatcher glob, String fullPath) {
+        return glob.matches(NormalizedPath.ofFullPath(fullPath));
+    }
+}
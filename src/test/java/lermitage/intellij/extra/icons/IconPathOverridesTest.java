@@ -0,0 +1,31 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class IconPathOverridesTest {
+
+    @Test
+    public void paths_should_be_resolved_by_full_path_then_without_leading_slash_then_by_basename() {
+        IconPathOverrides overrides = new IconPathOverrides(Map.of(
+            "/nodes/folder.svg", "extra-icons/full.svg",
+            "fileTypes/java.svg", "extra-icons/relative.svg",
+            "Docker.svg", "extra-icons/docker.svg"));
+
+        assertEquals("extra-icons/full.svg", overrides.patch("/nodes/folder.svg"));
+        assertEquals("extra-icons/relative.svg", overrides.patch("/fileTypes/java.svg"));
+        assertEquals("extra-icons/docker.svg", overrides.patch("/icons/expui/Docker.svg"));
+        assertEquals("extra-icons/docker.svg", overrides.patch("Docker.svg"));
+        assertNull(overrides.patch("/icons/docker.svg"));
+        assertNull(overrides.patch("/icons/docker.svg")); // from negative cache
+        assertNull(overrides.patch(""));
+        assertNull(new IconPathOverrides(Map.of()).patch("/nodes/folder.svg"));
+    }
+}
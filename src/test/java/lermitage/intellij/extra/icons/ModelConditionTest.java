@@ -0,0 +1,191 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import com.intellij.openapi.project.Project;
+import lermitage.intellij.extra.icons.enablers.AbstractInFolderEnabler;
+import lermitage.intellij.extra.icons.enablers.IconEnabler;
+import lermitage.intellij.extra.icons.enablers.IconEnablerProvider;
+import lermitage.intellij.extra.icons.enablers.IconEnablerType;
+import lermitage.intellij.extra.icons.enablers.services.GitSubmoduleFolderEnablerService;
+import lermitage.intellij.extra.icons.enablers.services.InFlutterFolderEnablerService;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class ModelConditionTest {
+
+    private static final String PROJECT_BASE_PATH = "/home/user/project";
+    private static final String ENABLED_FOLDER = PROJECT_BASE_PATH + "/src";
+
+    private static final Map<Class<?>, Object> SERVICES = new ConcurrentHashMap<>();
+
+    /**
+     * A fake project whose Icon Enablers verify files located in (or equal to) the "src" folder only.
+     */
+    private static final Project PROJECT = (Project) Proxy.newProxyInstance(
+        ModelConditionTest.class.getClassLoader(),
+        new Class<?>[]{Project.class},
+        (proxy, method, args) -> switch (method.getName()) {
+            case "getBasePath" -> PROJECT_BASE_PATH;
+            case "getName" -> "project";
+            case "getService" -> SERVICES.computeIfAbsent((Class<?>) args[0], ModelConditionTest::newEnabledService);
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "fake project";
+            default -> method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+        });
+
+    @Test
+    public void cost_ordered_evaluation_should_give_the_same_result_as_declaration_order() {
+        List<Model> models = ExtraIconProvider.allModels();
+        List<String[]> parentAndFileNames = new ArrayList<>(ModelMatcherTest.goldenParentAndFileNames(models));
+        parentAndFileNames.add(new String[]{"project", "src"});
+        parentAndFileNames.add(new String[]{"src", "src"});
+        List<Set<String>> facetSets = List.of(Collections.emptySet(), Set.of("android", "python", "django", "angularjs", "flutter"));
+
+        int nbVerifiedEnablers = 0;
+        for (Set<String> facets : facetSets) {
+            for (String[] parentAndFileName : parentAndFileNames) {
+                String parentName = parentAndFileName[0];
+                String fileName = parentAndFileName[1];
+                String fullPath = ModelMatcherTest.toFullPath(parentName, fileName);
+                for (Model model : models) {
+                    for (ModelCondition condition : model.getConditions()) {
+                        boolean expected = checkInDeclarationOrder(condition, parentName, fileName, fullPath, facets);
+                        assertEquals(model.getId() + " " + fullPath + " " + facets,
+                            expected, condition.check(parentName, fileName, fullPath, facets, PROJECT));
+                        if (expected && condition.hasIconEnabler()) {
+                            nbVerifiedEnablers++;
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(nbVerifiedEnablers > 0);
+    }
+
+    private static Object newEnabledService(Class<?> serviceClass) {
+        try {
+            Object service = serviceClass.getDeclaredConstructor().newInstance();
+            if (service instanceof AbstractInFolderEnabler) {
+                Method setter = AbstractInFolderEnabler.class.getDeclaredMethod("setEnabledFolders", Set.class);
+                setter.setAccessible(true);
+                setter.invoke(service, Set.of(Path.of(ENABLED_FOLDER)));
+            } else if (service instanceof GitSubmoduleFolderEnablerService) {
+                setField(GitSubmoduleFolderEnablerService.class, service, "submoduleFolders", Set.of(ENABLED_FOLDER));
+            }
+            if (service instanceof InFlutterFolderEnablerService) {
+                setField(InFlutterFolderEnablerService.class, service, "isFlutterProject", true);
+            }
+            return service;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void setField(Class<?> declaringClass, Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = declaringClass.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * Reference implementation: the checks in declaration order, on plain strings.
+     */
+    private static boolean checkInDeclarationOrder(ModelCondition condition, @Nullable String parentName, String fileName,
+                                                   @Nullable String fullPath, Set<String> prjFacets) {
+        if (!condition.isEnabled()) {
+            return false;
+        }
+        if (condition.isInProjectRootFolder() && (fullPath == null || !fullPath.equals(PROJECT_BASE_PATH + "/" + fileName))) {
+            return false;
+        }
+        if (condition.hasIconEnabler() && fullPath != null) {
+            IconEnablerType iconEnablerType = condition.getIconEnablerType();
+            IconEnabler iconEnabler = IconEnablerProvider.getIconEnabler(PROJECT, iconEnablerType);
+            if (iconEnabler != null) {
+                if (!iconEnabler.verify(PROJECT, fullPath)) {
+                    return false;
+                } else if (iconEnabler.terminatesConditionEvaluation()) {
+                    return true;
+                }
+            }
+        }
+        if (condition.hasFacets() && condition.getFacets() != null
+            && Arrays.stream(condition.getFacets()).noneMatch(prjFacets::contains)) {
+            return false;
+        }
+        boolean hasNameCondition = condition.hasStart() || condition.hasEq() || condition.hasEnd() || condition.hasMayEnd();
+        if (condition.hasCheckParent()) {
+            boolean parentFound = parentName != null && condition.getParents().contains(parentName);
+            if (!hasNameCondition && parentFound) {
+                return true;
+            }
+            if (hasNameCondition && !parentFound) {
+                return false;
+            }
+        }
+        if (condition.hasRegex() && fullPath != null && Pattern.compile(condition.getRegex()).matcher(fullPath).matches()) {
+            return true;
+        }
+        String[] names = condition.getNames();
+        String[] extensions = condition.getExtensions();
+        if (condition.hasEq()) {
+            for (String n : names) {
+                if (!condition.hasEnd() && fileName.equals(n)) {
+                    return true;
+                }
+                if (condition.hasEnd() || condition.hasMayEnd()) {
+                    for (String e : extensions) {
+                        if (fileName.equals(n + e)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        if (condition.hasStart()) {
+            for (String n : names) {
+                if (!fileName.startsWith(n)) {
+                    continue;
+                }
+                if (condition.hasEnd()) {
+                    for (String e : extensions) {
+                        if (fileName.endsWith(e)) {
+                            return true;
+                        }
+                    }
+                } else if (condition.hasMayEnd()) {
+                    return true;
+                } else if (!condition.hasNoDot() || !fileName.contains(".")) {
+                    return true;
+                }
+            }
+        }
+        if (condition.hasEnd() && !condition.hasEq() && !condition.hasStart()) {
+            for (String e : extensions) {
+                if (fileName.endsWith(e)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,166 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import lermitage.intellij.extra.icons.enablers.IconEnablerType;
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class ModelInternerTest {
+
+    /** Estimated size of a compiled regex, which is opaque to the size estimation. */
+    private static final long PATTERN_SIZE = 1024;
+
+    @Test
+    public void registry_should_share_identical_conditions() {
+        Model first = Model.ofFile("first", "/extra-icons/first.svg", "first").eq("readme").end("md", "txt");
+        Model second = Model.ofFile("second", "/extra-icons/second.svg", "second").eq("README").end("md", "txt");
+        Model withEnabler = Model.ofFile("third", "/extra-icons/third.svg", "third").eq("readme").end("md", "txt")
+            .iconEnabler(IconEnablerType.IS_GIT_SUBMODULE_FOLDER);
+        ModelInterner interner = ModelInterner.forRegistry();
+        List.of(first, second, withEnabler).forEach(model -> model.intern(interner));
+
+        assertSame(first.getConditions().get(0), second.getConditions().get(0));
+        assertNotSame(first.getConditions().get(0), withEnabler.getConditions().get(0));
+        assertSame(first.getConditions().get(0).getNames(), withEnabler.getConditions().get(0).getNames());
+        assertSame(first.getConditions().get(0).getParents(), Collections.emptySet());
+    }
+
+    @Test
+    public void user_models_should_share_strings_but_not_conditions() {
+        Model first = Model.ofFile("first", "/extra-icons/first.svg", "first").eq("readme").end("md");
+        Model second = Model.ofFile("second", "/extra-icons/second.svg", "second").eq("readme").end("md");
+        ModelInterner.internUserModels(List.of(first, second));
+
+        ModelCondition firstCondition = first.getConditions().get(0);
+        ModelCondition secondCondition = second.getConditions().get(0);
+        assertNotSame(firstCondition, secondCondition);
+        assertSame(firstCondition.getNames(), secondCondition.getNames());
+        assertSame(firstCondition.getExtensions(), secondCondition.getExtensions());
+        firstCondition.setEnabled(false);
+        assertTrue(secondCondition.isEnabled());
+    }
+
+    @Test
+    public void interned_models_should_be_equal_to_declared_models() {
+        List<Model> declaredModels = ExtraIconProvider.createAllModels();
+        List<Model> internedModels = ExtraIconProvider.createAllModels();
+        ModelInterner interner = ModelInterner.forRegistry();
+        internedModels.forEach(model -> model.intern(interner));
+        assertEquals(declaredModels, internedModels);
+    }
+
+    /**
+     * Compare the retained size of the models graph, estimated by walking it (a heap dump can't be taken and
+     * analyzed in a unit test), with and without interning.
+     */
+    @Test
+    public void interned_models_should_retain_less_heap_than_declared_models() throws IllegalAccessException {
+        long declaredModelsSize = retainedSize(ExtraIconProvider.createAllModels());
+        List<Model> internedModels = ExtraIconProvider.createAllModels();
+        ModelInterner interner = ModelInterner.forRegistry();
+        internedModels.forEach(model -> model.intern(interner));
+        long internedModelsSize = retainedSize(internedModels);
+        long registrySize = retainedSize(ExtraIconProvider.allModels());
+
+        assertTrue(internedModelsSize + " >= " + declaredModelsSize, internedModelsSize < declaredModelsSize);
+        assertTrue(registrySize + " >= " + declaredModelsSize, registrySize < declaredModelsSize);
+    }
+
+    /**
+     * Estimate the retained size, in bytes, of the graph of objects reachable from given root, for a 64-bit JVM with
+     * compressed references. Enums and classes are shared by the JVM, so they are ignored.
+     */
+    private static long retainedSize(Object root) throws IllegalAccessException {
+        Map<Object, Boolean> visited = new IdentityHashMap<>();
+        Deque<Object> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        long size = 0;
+        while (!toVisit.isEmpty()) {
+            Object obj = toVisit.pop();
+            if (obj instanceof Enum || obj instanceof Class || visited.put(obj, Boolean.TRUE) != null) {
+                continue;
+            }
+            Class<?> clazz = obj.getClass();
+            if (obj instanceof String str) {
+                size += align(24) + align(16 + str.length());
+            } else if (obj instanceof Pattern) {
+                size += PATTERN_SIZE;
+            } else if (clazz.isArray()) {
+                int length = Array.getLength(obj);
+                if (clazz.getComponentType().isPrimitive()) {
+                    size += align(16 + (long) length * primitiveSize(clazz.getComponentType()));
+                } else {
+                    size += align(16 + 4L * length);
+                    for (int i = 0; i < length; i++) {
+                        pushIfNotNull(toVisit, Array.get(obj, i));
+                    }
+                }
+            } else if (obj instanceof Collection<?> collection && clazz.getName().startsWith("java.")) {
+                // JDK collections internals are not accessible: count a header and a node per element
+                size += 32 + 32L * collection.size();
+                collection.forEach(element -> pushIfNotNull(toVisit, element));
+            } else if (clazz.getName().startsWith("java.")) {
+                size += 16; // other JDK objects (like boxed primitives) are small and opaque
+            } else {
+                long shallowSize = 12;
+                for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        if (field.getType().isPrimitive()) {
+                            shallowSize += primitiveSize(field.getType());
+                        } else {
+                            shallowSize += 4;
+                            field.setAccessible(true);
+                            pushIfNotNull(toVisit, field.get(obj));
+                        }
+                    }
+                }
+                size += align(shallowSize);
+            }
+        }
+        return size;
+    }
+
+    private static void pushIfNotNull(Deque<Object> toVisit, Object obj) {
+        if (obj != null) {
+            toVisit.push(obj);
+        }
+    }
+
+    private static long primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,149 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import com.intellij.openapi.project.Project;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class ModelMatcherTest {
+
+    private static final String PROJECT_BASE_PATH = "/home/user/project";
+
+    /**
+     * A fake project: Icon Enablers are instantiated but never initialized, so they don't verify any file.
+     */
+    static final Project PROJECT = (Project) Proxy.newProxyInstance(
+        ModelMatcherTest.class.getClassLoader(),
+        new Class<?>[]{Project.class},
+        (proxy, method, args) -> switch (method.getName()) {
+            case "getBasePath" -> PROJECT_BASE_PATH;
+            case "getName" -> "project";
+            case "getService" -> ((Class<?>) args[0]).getDeclaredConstructor().newInstance();
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "fake project";
+            default -> method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+        });
+
+    @Test
+    public void indexed_matcher_should_find_the_same_model_as_an_ordered_scan() {
+        for (ModelType modelType : List.of(ModelType.FILE, ModelType.DIR)) {
+            List<Model> models = ExtraIconProvider.allModels().stream()
+                .filter(model -> model.getModelType() == modelType)
+                .toList();
+            ModelMatcher matcher = new ModelMatcher(models);
+
+            for (String[] parentAndFileName : goldenParentAndFileNames(models)) {
+                String parentName = parentAndFileName[0];
+                String fileName = parentAndFileName[1];
+                String fullPath = toFullPath(parentName, fileName);
+                Model expected = null;
+                for (Model model : models) {
+                    if (model.check(parentName, fileName, fullPath, Collections.emptySet(), PROJECT)) {
+                        expected = model;
+                        break;
+                    }
+                }
+                Model actual = null;
+                BitSet candidates = matcher.findCandidates(fileName);
+                for (int idx = candidates.nextSetBit(0); idx >= 0; idx = candidates.nextSetBit(idx + 1)) {
+                    if (matcher.getModel(idx).check(parentName, fileName, fullPath, Collections.emptySet(), PROJECT)) {
+                        actual = matcher.getModel(idx);
+                        break;
+                    }
+                }
+                assertEquals(modelType + " " + fullPath, expected == null ? null : expected.getId(), actual == null ? null : actual.getId());
+            }
+        }
+    }
+
+    @Test
+    public void indexed_matcher_should_skip_models_whose_name_conditions_cannot_match() {
+        List<Model> models = ExtraIconProvider.allModels().stream()
+            .filter(model -> model.getModelType() == ModelType.FILE)
+            .toList();
+        ModelMatcher matcher = new ModelMatcher(models);
+        assertTrue(matcher.findCandidates("somefile.java").cardinality() < models.size() / 4);
+    }
+
+    /**
+     * Build file names from the names and extensions used by given models, plus a few variants
+     * which should not match, and a few common file names.
+     */
+    static Set<String> goldenFileNames(List<Model> models) {
+        Set<String> fileNames = new LinkedHashSet<>(List.of(
+            "main.java", "index.ts", "app.component.ts", "readme", "readme.md", "build.gradle.kts", "noext",
+            ".env", ".env.local", "v1__init.sql", "foo.d.ts", "package.json", "dockerfile", "prod.dockerfile", ""));
+        for (Model model : models) {
+            for (ModelCondition condition : model.getConditions()) {
+                List<String> names = new ArrayList<>(List.of(condition.getNames()));
+                List<String> extensions = new ArrayList<>(List.of(condition.getExtensions()));
+                for (String name : names) {
+                    fileNames.add(name);
+                    fileNames.add(name + "x");
+                    fileNames.add("x" + name);
+                    fileNames.add(name + ".txt");
+                    for (String ext : extensions) {
+                        fileNames.add(name + ext);
+                        fileNames.add(name + "-foo" + ext);
+                    }
+                }
+                for (String ext : extensions) {
+                    fileNames.add("foo" + ext);
+                    fileNames.add(ext);
+                    fileNames.add("foo" + ext + ".bak");
+                }
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * Associate file names to parent names: every file name is located in a few common folders, and the
+     * file names used by parent-based conditions are also located in each of these parent folders. A
+     * null parent name represents a file located at the root of the file system.
+     */
+    static List<String[]> goldenParentAndFileNames(List<Model> models) {
+        List<String> commonParentNames = new ArrayList<>(Arrays.asList(null, "src", "project", "db", "migration", "changelog", "workflows"));
+        List<String[]> parentAndFileNames = new ArrayList<>();
+        int i = 0;
+        for (String fileName : goldenFileNames(models)) {
+            parentAndFileNames.add(new String[]{null, fileName});
+            parentAndFileNames.add(new String[]{"project", fileName});
+            parentAndFileNames.add(new String[]{commonParentNames.get(i++ % commonParentNames.size()), fileName});
+        }
+        for (Model model : models) {
+            for (ModelCondition condition : model.getConditions()) {
+                for (String parentName : condition.getParents()) {
+                    for (String fileName : goldenFileNames(List.of(model))) {
+                        parentAndFileNames.add(new String[]{parentName, fileName});
+                    }
+                }
+            }
+        }
+        return parentAndFileNames;
+    }
+
+    static String toFullPath(String parentName, String fileName) {
+        if (parentName == null) {
+            return "/" + fileName;
+        }
+        if (parentName.equals("project")) {
+            return PROJECT_BASE_PATH + "/" + fileName;
+        }
+        return PROJECT_BASE_PATH + "/" + parentName + "/" + fileName;
+    }
+}
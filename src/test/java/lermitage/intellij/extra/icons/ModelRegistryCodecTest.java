@@ -0,0 +1,74 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class ModelRegistryCodecTest {
+
+    @Test
+    public void written_models_should_be_read_identically() throws IOException {
+        List<Model> declaredModels = ExtraIconProvider.createBaseModels();
+        assertSameModels(declaredModels, ModelRegistryCodec.read(ModelRegistryCodec.write(declaredModels)));
+    }
+
+    @Test
+    public void content_conditions_should_be_read_identically() throws IOException {
+        List<Model> models = List.of(Model.ofFile("script", "/extra-icons/script.svg", "Script").shebang("python").xmlRoot("project").magic("cafebabe"));
+        List<Model> readModels = ModelRegistryCodec.read(ModelRegistryCodec.write(models));
+        assertSameModels(models, readModels);
+        assertArrayEquals(new String[]{"#!python", "<project", "0xcafebabe"}, readModels.get(0).getConditions().get(0).getContentSignatures());
+    }
+
+    @Test
+    public void glob_conditions_should_be_read_identically() throws IOException {
+        List<Model> models = List.of(Model.ofFile("helm_values", "/extra-icons/helm.svg", "Helm values").glob("charts/*/values*.yaml"));
+        List<Model> readModels = ModelRegistryCodec.read(ModelRegistryCodec.write(models));
+        assertSameModels(models, readModels);
+        assertEquals("charts/*/values*.yaml", readModels.get(0).getConditions().get(0).getGlob());
+    }
+
+    @Test
+    public void ancestor_conditions_should_be_read_identically() throws IOException {
+        List<Model> models = List.of(Model.ofFile("migration", "/extra-icons/sql.svg", "Migration").ancestors("migrations").end(".sql"));
+        List<Model> readModels = ModelRegistryCodec.read(ModelRegistryCodec.write(models));
+        assertSameModels(models, readModels);
+        assertEquals(Set.of("migrations"), readModels.get(0).getConditions().get(0).getAncestors());
+    }
+
+    @Test
+    public void bundled_registry_should_be_up_to_date() throws IOException {
+        List<Model> bundledModels = ModelRegistryCodec.readBundledModels();
+        assertNotNull("the binary registry is generated by the generateModelsRegistry Gradle task", bundledModels);
+        assertSameModels(ExtraIconProvider.createBaseModels(), bundledModels);
+    }
+
+    private static void assertSameModels(List<Model> expectedModels, List<Model> actualModels) {
+        assertEquals(expectedModels.size(), actualModels.size());
+        for (int i = 0; i < expectedModels.size(); i++) {
+            Model expected = expectedModels.get(i);
+            Model actual = actualModels.get(i);
+            String id = expected.getId();
+            assertEquals(id, expected, actual);
+            assertArrayEquals(id, expected.getAltIcons(), actual.getAltIcons());
+            assertEquals(id, expected.getTags(), actual.getTags());
+            assertEquals(id, expected.isAutoLoadNewUIIconVariant(), actual.isAutoLoadNewUIIconVariant());
+            assertEquals(id, expected.isInFreemium(), actual.isInFreemium());
+            for (int c = 0; c < expected.getConditions().size(); c++) {
+                ModelCondition expectedCondition = expected.getConditions().get(c);
+                ModelCondition actualCondition = actual.getConditions().get(c);
+                assertEquals(id, expectedCondition.getFlags(), actualCondition.getFlags());
+                assertEquals(id, expectedCondition.getIconEnablerType(), actualCondition.getIconEnablerType());
+            }
+        }
+    }
+}
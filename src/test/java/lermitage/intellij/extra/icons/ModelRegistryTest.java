@@ -0,0 +1,54 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class ModelRegistryTest {
+
+    @Test
+    public void registry_should_be_built_once_and_be_unmodifiable() {
+        List<Model> models = ExtraIconProvider.allModels();
+        assertSame(models, ExtraIconProvider.allModels());
+        assertSame(ModelRegistry.getInstance(), ModelRegistry.getInstance());
+        assertThrows(UnsupportedOperationException.class, () -> models.remove(0));
+    }
+
+    @Test
+    public void models_should_be_found_by_id_and_ordinal() {
+        ModelRegistry registry = ModelRegistry.getInstance();
+        assertEquals(ExtraIconProvider.createAllModels().size(), registry.size());
+        for (int i = 0; i < registry.size(); i++) {
+            Model model = registry.getModel(i);
+            assertEquals(i, model.getOrdinal());
+            assertSame(model, registry.getModel(model.getId()));
+        }
+        assertNull(registry.getModel("not_a_model_id"));
+    }
+
+    @Test
+    public void alt_models_descriptions_should_be_computed_on_first_use() {
+        List<Model> freshModels = ExtraIconProvider.createAllModels();
+        List<Model> registeredModels = ExtraIconProvider.allModels();
+        int nbAltModels = 0;
+        for (int i = 0; i < registeredModels.size(); i++) {
+            Model model = registeredModels.get(i);
+            if (model.getParentId() != null) {
+                nbAltModels++;
+                Model parentModel = ModelRegistry.getInstance().getModel((String) model.getParentId());
+                assertTrue(model.getDescription().contains(parentModel.getDescription()));
+                assertEquals(freshModels.get(i), model);
+            }
+        }
+        assertTrue(nbAltModels > 0);
+    }
+}
@@ -0,0 +1,61 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class ModelRejectFilterTest {
+
+    @Test
+    public void rejected_files_should_only_match_conservative_models() {
+        for (ModelType modelType : List.of(ModelType.FILE, ModelType.DIR)) {
+            List<Model> models = ExtraIconProvider.allModels().stream()
+                .filter(model -> model.getModelType() == modelType)
+                .toList();
+            ModelRejectFilter rejectFilter = new ModelRejectFilter(models);
+
+            for (String[] parentAndFileName : ModelMatcherTest.goldenParentAndFileNames(models)) {
+                String parentName = parentAndFileName[0];
+                String fileName = parentAndFileName[1];
+                NormalizedPath path = NormalizedPath.of(parentName, fileName, ModelMatcherTest.toFullPath(parentName, fileName));
+                if (rejectFilter.mightMatch(path)) {
+                    continue;
+                }
+                assertEquals(modelType + " " + path, findFirst(List.of(rejectFilter.getConservativeModels()), path), findFirst(models, path));
+            }
+        }
+    }
+
+    @Test
+    public void files_unknown_to_models_should_be_rejected() {
+        List<Model> models = ExtraIconProvider.allModels().stream()
+            .filter(model -> model.getModelType() == ModelType.FILE)
+            .toList();
+        ModelRejectFilter rejectFilter = new ModelRejectFilter(models);
+        assertTrue(rejectFilter.mightMatch(NormalizedPath.ofFullPath("/home/user/project/package.json")));
+
+        int nbRejected = 0;
+        for (String fullPath : List.of("/zzz/zzzfoo.qqq", "/zzz/zzzbar.qqw", "/zzz/zzzbaz.qqe", "/zzz/zzzqux.qqr")) {
+            if (!rejectFilter.mightMatch(NormalizedPath.ofFullPath(fullPath))) {
+                nbRejected++;
+            }
+        }
+        assertTrue(nbRejected >= 3); // allow a Bloom filter false positive
+    }
+
+    private static String findFirst(List<Model> models, NormalizedPath path) {
+        for (Model model : models) {
+            if (model.check(path, Collections.emptySet(), ModelMatcherTest.PROJECT)) {
+                return model.getId();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelSnapshotTest {
+
+    @Test
+    public void registered_models_should_have_dense_ordinals() {
+        List<Model> models = ExtraIconProvider.allModels();
+        for (int i = 0; i < models.size(); i++) {
+            assertEquals(models.get(i).getId(), i, models.get(i).getOrdinal());
+        }
+    }
+
+    @Test
+    public void disabled_models_should_be_cleared_from_enabled_ordinals() {
+        List<Model> models = ExtraIconProvider.allModels();
+        Model disabledModel = models.get(models.size() / 2);
+        BitSet enabledOrdinals = ModelSnapshot.enabledOrdinals(models, List.of(disabledModel.getId(), "unknown_model_id"));
+
+        assertFalse(enabledOrdinals.get(disabledModel.getOrdinal()));
+        assertTrue(enabledOrdinals.get(0));
+        assertEquals(models.size() - 1, enabledOrdinals.cardinality());
+    }
+}
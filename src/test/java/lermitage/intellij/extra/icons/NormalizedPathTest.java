@@ -0,0 +1,64 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class NormalizedPathTest {
+
+    @Test
+    public void name_and_parent_should_be_the_same_as_java_io_file_ones() {
+        for (String fullPath : List.of("/home/user/project/foo.java", "/foo", "/a/b/.env", "/a/dockerfile", "/a/b/c/readme")) {
+            NormalizedPath path = NormalizedPath.ofFullPath(fullPath);
+            File file = new File(fullPath);
+            assertEquals(file.getName(), path.getName());
+            assertEquals(file.getParentFile().getName(), path.getParentName());
+            assertTrue(path.nameEquals(file.getName()));
+            assertEquals(file.getName().hashCode(), path.nameHashCode());
+            assertTrue(path.isParentIn(Set.of(file.getParentFile().getName())));
+        }
+    }
+
+    @Test
+    public void name_regions_should_be_checked_without_substrings() {
+        NormalizedPath path = NormalizedPath.ofFullPath("/home/user/project/app.component.ts");
+        assertTrue(path.nameEquals("app.component", ".ts"));
+        assertFalse(path.nameEquals("app", ".ts"));
+        assertTrue(path.nameStartsWith("app."));
+        assertFalse(path.nameStartsWith("project"));
+        assertTrue(path.nameEndsWith(".component.ts"));
+        assertFalse(path.nameEndsWith("/app.component.ts"));
+        assertTrue(path.nameContains('.'));
+        assertFalse(path.isParentIn(Set.of("user", "app.component.ts")));
+    }
+
+    @Test
+    public void ancestors_should_be_found_at_any_depth() {
+        NormalizedPath path = NormalizedPath.ofFullPath("/home/user/project/db/migrations/v1/001_init.sql");
+        assertTrue(path.isAncestorIn(Set.of("migrations")));
+        assertTrue(path.isAncestorIn(Set.of("v1", "other")));
+        assertTrue(path.isAncestorIn(Set.of("home")));
+        assertFalse(path.isAncestorIn(Set.of("001_init.sql")));
+        assertFalse(path.isAncestorIn(Set.of("migration")));
+        assertTrue(NormalizedPath.of("migrations", "001_init.sql", null).isAncestorIn(Set.of("migrations")));
+    }
+
+    @Test
+    public void project_folder_should_be_compared_ignoring_case() {
+        NormalizedPath path = NormalizedPath.ofFullPath("/home/user/project/readme.md");
+        assertTrue(path.isDirectlyIn("/home/User/Project"));
+        assertFalse(path.isDirectlyIn("/home/user"));
+        assertEquals("/home/user/".length(), path.relativePathStart("/home/user"));
+        assertEquals(-1, path.relativePathStart("/home/use"));
+        assertEquals(-1, NormalizedPath.ofFullPath("/home/user/project").relativePathStart("/home/user/project"));
+    }
+}
@@ -0,0 +1,119 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class RegexAutomatonTest {
+
+    @Test
+    public void automaton_should_match_like_java_regex_for_builtin_models() {
+        List<Model> models = ExtraIconProvider.allModels();
+        Set<String> regexes = new LinkedHashSet<>();
+        for (Model model : models) {
+            for (ModelCondition condition : model.getConditions()) {
+                if (condition.hasRegex()) {
+                    regexes.add(condition.getRegex());
+                }
+            }
+        }
+        RegexAutomaton automaton = new RegexAutomaton(regexes);
+
+        List<String> fullPaths = new ArrayList<>();
+        for (String[] parentAndFileName : ModelMatcherTest.goldenParentAndFileNames(models)) {
+            fullPaths.add(ModelMatcherTest.toFullPath(parentAndFileName[0], parentAndFileName[1]));
+        }
+        fullPaths.addAll(List.of(
+            "/home/user/project/db/changelog", "/home/user/project/db/migration/", "/home/user/project/.github/workflows/build.yml",
+            "/home/user/project/src/fooabstractbarexceptionnn.java", "/home/user/project/.tailwind.config.mjs", "/home/user/project/\u00e9/.env"));
+
+        int nbSupportedRegexes = 0;
+        for (String regex : regexes) {
+            int regexIndex = automaton.indexOf(regex);
+            if (regexIndex < 0) {
+                continue;
+            }
+            nbSupportedRegexes++;
+            Pattern pattern = Pattern.compile(regex);
+            for (String fullPath : fullPaths) {
+                assertEquals(regex + " on " + fullPath, pattern.matcher(fullPath).matches(), automaton.match(fullPath).get(regexIndex));
+            }
+        }
+        assertTrue(nbSupportedRegexes > regexes.size() * 9 / 10);
+    }
+
+    @Test
+    public void automaton_should_report_all_matching_regexes_in_one_pass() {
+        RegexAutomaton automaton = new RegexAutomaton(List.of(".*\\.ts", ".*\\.d\\.ts$", "[a-z]+/.*", "(?:ab|cd){2,3}x?"));
+        BitSet matches = automaton.match("src/foo.d.ts");
+        assertTrue(matches.get(automaton.indexOf(".*\\.ts")));
+        assertTrue(matches.get(automaton.indexOf(".*\\.d\\.ts$")));
+        assertTrue(matches.get(automaton.indexOf("[a-z]+/.*")));
+        assertFalse(matches.get(automaton.indexOf("(?:ab|cd){2,3}x?")));
+        assertTrue(automaton.match("abcdabx").get(automaton.indexOf("(?:ab|cd){2,3}x?")));
+        assertFalse(automaton.match("abcdabcdx").get(automaton.indexOf("(?:ab|cd){2,3}x?")));
+    }
+
+    @Test
+    public void paths_with_supplementary_chars_should_be_left_to_java_regex() {
+        String nonBmpPath = "a\uD83D\uDE00b"; // a, grinning face emoji, b
+        RegexAutomaton automaton = new RegexAutomaton(List.of("a.b", "a[^/]b", "a..b"));
+        assertNull(automaton.match(nonBmpPath));
+        assertTrue(automaton.match("a.b").get(automaton.indexOf("a.b")));
+
+        Model emoji = Model.ofFile("emoji", "/extra-icons/emoji.svg", "Emoji").regex("/p/a.b");
+        NormalizedPath path = NormalizedPath.ofFullPath("/p/" + nonBmpPath);
+        path.attachRegexAutomaton(new RegexAutomaton(List.of("/p/a.b")));
+        assertNull(path.matchesRegex("/p/a.b"));
+        assertTrue("java.util.regex matches the emoji as one code point", Pattern.matches("/p/a.b", "/p/" + nonBmpPath));
+        assertTrue(emoji.check(path, Set.of(), ModelMatcherTest.PROJECT));
+        assertFalse(emoji.check(NormalizedPath.ofFullPath("/p/a..b"), Set.of(), ModelMatcherTest.PROJECT));
+    }
+
+    @Test
+    public void texts_needing_new_states_should_be_left_to_java_regex_once_cache_is_full() {
+        String regex = "(?:a|b)*a(?:a|b){12}"; // 13th char from the end is an 'a': 2^13 DFA states
+        RegexAutomaton automaton = new RegexAutomaton(List.of(regex));
+        Pattern pattern = Pattern.compile(regex);
+        Random random = new Random(42);
+        int nbUnknown = 0;
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 40; j++) {
+                text.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            BitSet matches = automaton.match(text);
+            if (matches == null) {
+                nbUnknown++;
+            } else {
+                assertEquals(text.toString(), pattern.matcher(text).matches(), matches.get(0));
+            }
+        }
+        assertTrue(nbUnknown > 0);
+        assertFalse("cached states are still used", automaton.match("b").get(0));
+    }
+
+    @Test
+    public void unsupported_regexes_should_be_left_to_java_regex() {
+        List<String> unsupportedRegexes = List.of(".^\\.?nodemon\\.json$", "\\bfoo", "(?i)foo", "a*+b", "(a)\\1", "[a-z&&[^x]]", "(?=a).*");
+        RegexAutomaton automaton = new RegexAutomaton(unsupportedRegexes);
+        assertTrue(automaton.isEmpty());
+        for (String regex : unsupportedRegexes) {
+            assertEquals(-1, automaton.indexOf(regex));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons.activity;
+
+import lermitage.intellij.extra.icons.UITypeIconsPreference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IconsRefreshStateTest {
+
+    private static final IconsRefreshState STATE = new IconsRefreshState(1.0, UITypeIconsPreference.BASED_ON_ACTIVE_UI_TYPE, 0);
+
+    @Test
+    public void unchanged_state_should_allow_incremental_refresh() {
+        assertFalse("first refresh", STATE.requiresFullRefresh(null));
+        assertFalse(STATE.requiresFullRefresh(new IconsRefreshState(1.0, UITypeIconsPreference.BASED_ON_ACTIVE_UI_TYPE, 0)));
+    }
+
+    @Test
+    public void icons_changed_without_their_model_should_require_full_refresh() {
+        assertTrue(new IconsRefreshState(1.0, UITypeIconsPreference.PREFER_OLD_UI_ICONS, 0).requiresFullRefresh(STATE));
+        assertTrue(new IconsRefreshState(1.5, UITypeIconsPreference.BASED_ON_ACTIVE_UI_TYPE, 0).requiresFullRefresh(STATE));
+    }
+
+    @Test
+    public void evicted_model_cache_entries_should_require_full_refresh() {
+        assertTrue(new IconsRefreshState(1.0, UITypeIconsPreference.BASED_ON_ACTIVE_UI_TYPE, 40_000).requiresFullRefresh(STATE));
+    }
+}
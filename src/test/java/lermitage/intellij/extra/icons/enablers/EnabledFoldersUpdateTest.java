@@ -0,0 +1,94 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons.enablers;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class EnabledFoldersUpdateTest {
+
+    private static final Path PROJECT = Path.of("/home/user/project");
+    private static final Path CHARTS = PROJECT.resolve("charts");
+    private static final Path APP = CHARTS.resolve("app");
+    private static final Path APP_SUB_CHART = APP.resolve("charts/db");
+    private static final Path LIB = CHARTS.resolve("lib");
+
+    @Test
+    public void no_event_should_keep_enabled_folders() {
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP, LIB));
+        assertFalse(update.isModified());
+        assertFalse(update.hasFoldersToCheck());
+        assertEquals(Set.of(APP, LIB), update.apply(folder -> true, null));
+    }
+
+    @Test
+    public void deleted_folder_should_disable_its_sub_folders() {
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP, APP_SUB_CHART, LIB));
+        update.delete(APP);
+        assertTrue(update.isModified());
+        assertFalse(update.hasFoldersToCheck());
+        assertEquals(Set.of(LIB), update.apply(folder -> true, null));
+    }
+
+    @Test
+    public void moved_folder_should_be_followed_by_its_sub_folders() {
+        Path movedApp = PROJECT.resolve("deploy/app");
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP, APP_SUB_CHART, LIB));
+        update.move(APP, movedApp);
+        assertTrue(update.isModified());
+        assertEquals(Set.of(movedApp, movedApp.resolve("charts/db"), LIB), update.apply(folder -> true, null));
+    }
+
+    @Test
+    public void moved_folder_without_enabled_folders_should_be_ignored() {
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP));
+        update.move(PROJECT.resolve("src"), PROJECT.resolve("sources"));
+        assertTrue("a state prepared meanwhile may still disagree", update.isModified());
+        assertEquals(Set.of(APP), update.apply(folder -> true, null));
+    }
+
+    @Test
+    public void events_should_be_applied_in_order() {
+        Path renamedApp = CHARTS.resolve("application");
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP, LIB));
+        update.move(APP, renamedApp);
+        update.delete(renamedApp);
+        update.move(LIB, APP);
+        assertEquals(Set.of(APP), update.apply(folder -> true, null));
+    }
+
+    @Test
+    public void checked_folders_should_be_enabled_or_disabled() {
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP, LIB));
+        update.check(LIB);
+        update.check(APP_SUB_CHART);
+        assertTrue(update.isModified());
+        assertTrue(update.hasFoldersToCheck());
+        assertEquals(Set.of(APP, APP_SUB_CHART), update.apply(APP_SUB_CHART::equals, null));
+    }
+
+    @Test
+    public void moved_folder_should_be_checked_at_its_new_location() {
+        Path movedLib = PROJECT.resolve("lib");
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP, LIB));
+        update.move(LIB, movedLib);
+        update.check(movedLib);
+        assertEquals(Set.of(APP), update.apply(folder -> false, null));
+    }
+
+    @Test
+    public void candidate_folders_should_limit_enabled_folders_to_their_level_1_sub_folders() {
+        EnabledFoldersUpdate update = new EnabledFoldersUpdate(Set.of(APP_SUB_CHART));
+        update.check(CHARTS);
+        update.check(APP);
+        update.check(APP_SUB_CHART);
+        assertEquals(Set.of(CHARTS), update.apply(folder -> true, Set.of(PROJECT)));
+    }
+}
@@ -0,0 +1,54 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons.enablers;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class FolderTrieTest {
+
+    private static final Set<Path> FOLDERS = Set.of(
+        Path.of("/home/user/project/charts/app"),
+        Path.of("/home/user/project/charts/lib"),
+        Path.of("/home/user/project/src/main"),
+        Path.of("/home/user/other"));
+
+    @Test
+    public void trie_should_give_the_same_results_as_path_lookups() {
+        FolderTrie trie = new FolderTrie(FOLDERS);
+        List<String> paths = List.of(
+            "/home/user/project/charts/app",
+            "/home/user/project/charts/app/",
+            "/home/user/project/charts/app/templates/deployment.yaml",
+            "/home/user/project/charts/application/values.yaml",
+            "/home/user/project/charts/ap",
+            "/home/user/project/charts",
+            "/home/user/project//src/main/java/Main.java",
+            "/home/user/project/src/mainx",
+            "/home/user/other",
+            "/home/user/other/x",
+            "/home/user",
+            "/",
+            "home/user/other/x",
+            "");
+        for (String path : paths) {
+            Path nioPath = Path.of(path);
+            assertEquals(path, FOLDERS.stream().anyMatch(nioPath::startsWith), trie.containsFolderOrParent(path));
+            assertEquals(path, FOLDERS.contains(nioPath), trie.containsFolder(path));
+        }
+    }
+
+    @Test
+    public void empty_trie_should_contain_nothing() {
+        FolderTrie trie = new FolderTrie(Set.of());
+        assertFalse(trie.containsFolderOrParent("/home/user/project"));
+        assertFalse(trie.containsFolder("/"));
+    }
+}
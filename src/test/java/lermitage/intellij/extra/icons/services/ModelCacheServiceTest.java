@@ -0,0 +1,222 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons.services;
+
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.testFramework.LightVirtualFile;
+import lermitage.intellij.extra.icons.FileHeader;
+import lermitage.intellij.extra.icons.Model;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class ModelCacheServiceTest {
+
+    private static final Model MARKDOWN = Model.ofFile("markdown", "/extra-icons/markdown.svg", "Markdown").end(".md");
+
+    @Test
+    public void editing_header_should_outdate_content_dependent_entries() throws IOException {
+        Model shellScript = Model.ofFile("shell_script", "/extra-icons/shell.svg", "Shell script").shebang("sh");
+        ModelCacheService modelCacheService = new ModelCacheService();
+        TestFile script = new TestFile(1, "/project/run", "#!/bin/sh\necho hello\n");
+        TestFile readme = new TestFile(2, "/project/readme.md", "# Readme\n");
+        assertTrue(header(script).matches("#!sh"));
+
+        long generation = modelCacheService.currentGeneration();
+        modelCacheService.put(script, generation, shellScript, true);
+        modelCacheService.put(readme, generation, null, false);
+
+        script.setContent(null, "#!/usr/bin/env python3\nprint('hello')\n", false);
+        readme.setContent(null, "# Another readme\n", false);
+        assertFalse(header(script).matches("#!sh"));
+        assertTrue(modelCacheService.invalidateContent(script));
+        assertFalse("the model of readme doesn't depend on its content", modelCacheService.invalidateContent(readme));
+
+        assertNull(modelCacheService.get(script));
+        assertNotNull(modelCacheService.get(readme));
+        List<ModelCacheService.Entry> outdatedEntries = modelCacheService.outdatedEntries();
+        assertEquals(1, outdatedEntries.size());
+        assertSame(script, outdatedEntries.get(0).getFile());
+        assertSame("the previous model is kept to detect an icon change", shellScript, outdatedEntries.get(0).getModel());
+    }
+
+    @Test
+    public void invalidating_cache_should_outdate_entries() {
+        ModelCacheService modelCacheService = new ModelCacheService();
+        TestFile readme = new TestFile(1, "/project/readme.md", "");
+        TestFile changelog = new TestFile(2, "/project/changelog.md", "");
+
+        long generation = modelCacheService.currentGeneration();
+        modelCacheService.put(readme, generation, MARKDOWN);
+        assertSame(MARKDOWN, modelCacheService.get(readme).getModel());
+        modelCacheService.invalidateAll();
+        modelCacheService.put(changelog, generation, MARKDOWN);
+        assertNull(modelCacheService.get(readme));
+        assertNull("resolved before the cache was invalidated", modelCacheService.get(changelog));
+        assertEquals(2, modelCacheService.outdatedEntries().size());
+
+        generation = modelCacheService.currentGeneration();
+        modelCacheService.put(readme, generation, MARKDOWN);
+        assertNotNull(modelCacheService.get(readme));
+        ModelCacheService.invalidateAllProjects();
+        assertNull(modelCacheService.get(readme));
+        assertEquals(2, modelCacheService.outdatedEntries().size());
+        assertEquals(2, modelCacheService.size());
+    }
+
+    @Test
+    public void invalidating_file_should_forget_it() {
+        ModelCacheService modelCacheService = new ModelCacheService();
+        TestFile readme = new TestFile(1, "/project/readme.md", "");
+        TestFile changelog = new TestFile(2, "/project/changelog.md", "");
+        long generation = modelCacheService.currentGeneration();
+        modelCacheService.put(readme, generation, MARKDOWN);
+        modelCacheService.put(changelog, generation, MARKDOWN);
+
+        modelCacheService.invalidate(readme);
+        assertNull(modelCacheService.get(readme));
+        assertNotNull(modelCacheService.get(changelog));
+        assertEquals(1, modelCacheService.size());
+        assertTrue(modelCacheService.outdatedEntries().isEmpty());
+
+        modelCacheService.invalidate(new TestFolder(3, "/project/docs"));
+        assertNull("the path of every child of a folder changes with it", modelCacheService.get(changelog));
+        assertEquals(1, modelCacheService.outdatedEntries().size());
+    }
+
+    @Test
+    public void invalidating_folder_should_forget_its_files() {
+        ModelCacheService modelCacheService = new ModelCacheService();
+        TestFile docs = new TestFile(1, "/project/docs", "");
+        TestFile readme = new TestFile(2, "/project/docs/readme.md", "");
+        TestFile guide = new TestFile(3, "/project/docs/guide/install.md", "");
+        TestFile docsV2 = new TestFile(4, "/project/docs-v2/readme.md", "");
+        TestFile changelog = new TestFile(5, "/project/changelog.md", "");
+        long generation = modelCacheService.currentGeneration();
+        for (TestFile file : List.of(docs, readme, guide, docsV2, changelog)) {
+            modelCacheService.put(file, generation, MARKDOWN);
+        }
+
+        modelCacheService.invalidateFolder("/project/docs");
+        assertNull(modelCacheService.get(docs));
+        assertNull(modelCacheService.get(readme));
+        assertNull(modelCacheService.get(guide));
+        assertNotNull("not in the folder, only sharing its name prefix", modelCacheService.get(docsV2));
+        assertNotNull(modelCacheService.get(changelog));
+        assertEquals(2, modelCacheService.size());
+        assertTrue(modelCacheService.outdatedEntries().isEmpty());
+    }
+
+    @Test
+    public void full_cache_should_evict_outdated_entries_first() {
+        ModelCacheService modelCacheService = new ModelCacheService(100);
+        long outdatedGeneration = modelCacheService.currentGeneration();
+        for (int id = 1; id <= 5; id++) {
+            modelCacheService.put(new TestFile(id, "/project/outdated" + id + ".md", ""), outdatedGeneration, MARKDOWN);
+        }
+        modelCacheService.invalidateAll();
+        long generation = modelCacheService.currentGeneration();
+        List<TestFile> files = new ArrayList<>();
+        for (int id = 6; id <= 100; id++) {
+            TestFile file = new TestFile(id, "/project/file" + id + ".md", "");
+            files.add(file);
+            modelCacheService.put(file, generation, MARKDOWN);
+        }
+        assertEquals(100, modelCacheService.size());
+        assertEquals(0, modelCacheService.getEvictions());
+
+        TestFile newFile = new TestFile(101, "/project/file101.md", "");
+        modelCacheService.put(newFile, generation, MARKDOWN);
+        assertEquals(5, modelCacheService.getEvictions());
+        assertEquals(96, modelCacheService.size());
+        assertTrue(modelCacheService.outdatedEntries().isEmpty());
+        for (TestFile file : files) {
+            assertNotNull("up-to-date entries are kept while outdated ones can be evicted", modelCacheService.get(file));
+        }
+    }
+
+    @Test
+    public void full_cache_of_up_to_date_entries_should_evict_a_tenth_of_them() {
+        ModelCacheService modelCacheService = new ModelCacheService(100);
+        long generation = modelCacheService.currentGeneration();
+        for (int id = 1; id <= 100; id++) {
+            modelCacheService.put(new TestFile(id, "/project/file" + id + ".md", ""), generation, MARKDOWN);
+        }
+
+        TestFile newFile = new TestFile(101, "/project/file101.md", "");
+        modelCacheService.put(newFile, generation, MARKDOWN);
+        assertEquals(10, modelCacheService.getEvictions());
+        assertEquals(91, modelCacheService.size());
+        assertNotNull("the new entry is stored after eviction", modelCacheService.get(newFile));
+    }
+
+    @Test
+    public void lookups_should_be_counted() {
+        ModelCacheService modelCacheService = new ModelCacheService(100);
+        TestFile readme = new TestFile(1, "/project/readme.md", "");
+        assertEquals("model cache size: 0/100, hits: 0 (0%), misses: 0, evictions: 0", modelCacheService.statsDescription());
+
+        assertNull(modelCacheService.get(readme));
+        modelCacheService.put(readme, modelCacheService.currentGeneration(), null);
+        assertNotNull("a file matching no model is cached too", modelCacheService.get(readme));
+        assertNotNull(modelCacheService.get(readme));
+        modelCacheService.invalidateAll();
+        assertNull(modelCacheService.get(readme));
+        assertNull("files without id are not cached", modelCacheService.get(new LightVirtualFile("notes.md")));
+
+        assertEquals(2, modelCacheService.getHits());
+        assertEquals(2, modelCacheService.getMisses());
+        assertEquals(0, modelCacheService.getEvictions());
+        assertEquals("model cache size: 1/100, hits: 2 (50%), misses: 2, evictions: 0", modelCacheService.statsDescription());
+    }
+
+    private static FileHeader header(TestFile file) throws IOException {
+        byte[] bytes = file.contentsToByteArray();
+        return FileHeader.parse(bytes, bytes.length, file.getModificationStamp());
+    }
+
+    private static class TestFile extends LightVirtualFile implements VirtualFileWithId {
+
+        private final int id;
+        private final String path;
+
+        TestFile(int id, String path, String content) {
+            super(path.substring(path.lastIndexOf('/') + 1), content);
+            this.id = id;
+            this.path = path;
+        }
+
+        @Override
+        public int getId() {
+            return this.id;
+        }
+
+        @Override
+        public @NotNull String getPath() {
+            return this.path;
+        }
+    }
+
+    private static class TestFolder extends TestFile {
+
+        TestFolder(int id, String path) {
+            super(id, path, "");
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return true;
+        }
+    }
+}
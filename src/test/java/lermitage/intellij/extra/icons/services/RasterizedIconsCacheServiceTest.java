@@ -0,0 +1,137 @@
+// SPDX-License-Identifier: MIT
+
+package lermitage.intellij.extra.icons.services;
+
+import com.intellij.util.JBHiDPIScaledImage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("HardCodedStringLiteral")
+public class RasterizedIconsCacheServiceTest {
+
+    private static final RasterizedIconsCacheService.Key ICON_KEY =
+        new RasterizedIconsCacheService.Key(RasterizedIconsCacheService.contentHash("aWNvbg=="), 1.0, 1, 0);
+    private static final RasterizedIconsCacheService.Key OTHER_ICON_KEY =
+        new RasterizedIconsCacheService.Key(RasterizedIconsCacheService.contentHash("b3RoZXI="), 2.0, 1, 1);
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void icons_should_be_reloaded_from_cache_file() throws IOException {
+        Path cacheFile = newCacheFile();
+        RasterizedIconsCacheService cache = new RasterizedIconsCacheService(cacheFile);
+        assertNull(cache.get(ICON_KEY));
+        BufferedImage icon = image(16, 16, 1);
+        BufferedImage otherIcon = image(8, 4, 2);
+        cache.put(ICON_KEY, icon);
+        cache.put(OTHER_ICON_KEY, otherIcon);
+        assertSamePixels(icon, cache.get(ICON_KEY));
+        cache.save(Set.of());
+
+        RasterizedIconsCacheService reloadedCache = new RasterizedIconsCacheService(cacheFile);
+        assertTrue("the saved file replaces the cache file on next start", Files.isRegularFile(cacheFile));
+        try (Stream<Path> files = Files.list(cacheFile.getParent())) {
+            assertEquals(1, files.count());
+        }
+        assertSamePixels(icon, reloadedCache.get(ICON_KEY));
+        assertSamePixels(otherIcon, reloadedCache.get(OTHER_ICON_KEY));
+        assertNull(reloadedCache.get(new RasterizedIconsCacheService.Key(ICON_KEY.getContentHash(), 3.0, 1, 0)));
+    }
+
+    @Test
+    public void hidpi_icons_should_be_stored_as_device_pixels() throws IOException {
+        Path cacheFile = newCacheFile();
+        RasterizedIconsCacheService cache = new RasterizedIconsCacheService(cacheFile);
+        BufferedImage devicePixels = image(32, 32, 3);
+        cache.put(ICON_KEY, new JBHiDPIScaledImage(devicePixels, 16, 16, BufferedImage.TYPE_INT_ARGB));
+        cache.save(Set.of());
+
+        Image reloaded = new RasterizedIconsCacheService(cacheFile).get(ICON_KEY);
+        assertNotNull(reloaded);
+        // tests run with a system scale of 1: the image is not wrapped again
+        assertSamePixels(devicePixels, reloaded instanceof JBHiDPIScaledImage hiDPIImage ? hiDPIImage.getDelegate() : reloaded);
+    }
+
+    @Test
+    public void corrupted_entry_should_be_dropped() throws IOException {
+        byte[] bytes = savedCacheFileBytes();
+        bytes[bytes.length - 1] ^= 0x01; // last pixel of the last entry
+        RasterizedIconsCacheService cache = new RasterizedIconsCacheService(writeCacheFile(bytes));
+        assertEquals(1, countMissing(cache));
+    }
+
+    @Test
+    public void truncated_entry_should_be_dropped() throws IOException {
+        byte[] bytes = savedCacheFileBytes();
+        RasterizedIconsCacheService cache = new RasterizedIconsCacheService(writeCacheFile(Arrays.copyOf(bytes, bytes.length - 10)));
+        assertEquals(1, countMissing(cache));
+    }
+
+    @Test
+    public void cache_file_of_unknown_format_should_be_ignored() throws IOException {
+        byte[] bytes = savedCacheFileBytes();
+        bytes[7]++; // format version
+        RasterizedIconsCacheService cache = new RasterizedIconsCacheService(writeCacheFile(bytes));
+        assertEquals(2, countMissing(cache));
+    }
+
+    private byte[] savedCacheFileBytes() throws IOException {
+        Path cacheFile = newCacheFile();
+        RasterizedIconsCacheService cache = new RasterizedIconsCacheService(cacheFile);
+        cache.put(ICON_KEY, image(16, 16, 1));
+        cache.put(OTHER_ICON_KEY, image(8, 4, 2));
+        cache.save(Set.of());
+        new RasterizedIconsCacheService(cacheFile); // promote the saved file
+        return Files.readAllBytes(cacheFile);
+    }
+
+    private Path writeCacheFile(byte[] bytes) throws IOException {
+        Path cacheFile = newCacheFile();
+        Files.write(cacheFile, bytes);
+        return cacheFile;
+    }
+
+    private Path newCacheFile() throws IOException {
+        return this.tmpFolder.newFolder().toPath().resolve("rasterized-icons.bin");
+    }
+
+    private static int countMissing(RasterizedIconsCacheService cache) {
+        return (cache.get(ICON_KEY) == null ? 1 : 0) + (cache.get(OTHER_ICON_KEY) == null ? 1 : 0);
+    }
+
+    private static BufferedImage image(int width, int height, int seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (seed * 0x01234567) ^ (x << 16) ^ (y << 8) | 0xff000000);
+            }
+        }
+        return image;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, Image actual) {
+        assertNotNull(actual);
+        BufferedImage actualImage = (BufferedImage) actual;
+        assertEquals(expected.getWidth(), actualImage.getWidth());
+        assertEquals(expected.getHeight(), actualImage.getHeight());
+        assertArrayEquals(expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth()),
+            actualImage.getRGB(0, 0, actualImage.getWidth(), actualImage.getHeight(), null, 0, actualImage.getWidth()));
+    }
+}